@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ast_nodes.Bindings;
+import batch.BatchEvaluator;
+import parser.PreparedExpression;
+
+/**
+ * One formula over a table of rows: per row through the tree or compiled code,
+ * against the column at a time BatchEvaluator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BatchBenchmark {
+
+    @Param({ "(x+1)*(y-2)/(r^2+1)-sqrt(x*x+y*y)", "-x^3+4*x^2-2*x+17", "((x<<2)|(y&255))%7" })
+    public String formula;
+
+    @Param({ "100000" })
+    public int rows;
+
+    private PreparedExpression expression;
+    private PreparedExpression compiled;
+    private Bindings bindings;
+    private BatchEvaluator evaluator;
+    private double[][] columns;
+    private double[] out;
+
+    @Setup
+    public void setup() {
+        expression = PreparedExpression.prepare(formula);
+        compiled = PreparedExpression.prepare(formula);
+        compiled.compile();
+        bindings = expression.newBindings();
+        evaluator = new BatchEvaluator(expression);
+
+        Random random = new Random(42);
+        columns = new double[expression.variables().size()][rows];
+        for (double[] column : columns) {
+            for (int row = 0; row < rows; row++) {
+                column[row] = random.nextDouble() * 100;
+            }
+        }
+        out = new double[rows];
+    }
+
+    @Benchmark
+    public double[] perRow() {
+        for (int row = 0; row < rows; row++) {
+            for (int slot = 0; slot < columns.length; slot++) {
+                bindings.set(slot, columns[slot][row]);
+            }
+            out[row] = expression.ast().evaluateDouble(bindings);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public double[] perRowCompiled() {
+        for (int row = 0; row < rows; row++) {
+            for (int slot = 0; slot < columns.length; slot++) {
+                bindings.set(slot, columns[slot][row]);
+            }
+            out[row] = compiled.evaluateDouble(bindings);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public double[] batch() {
+        evaluator.evaluate(columns, out);
+        return out;
+    }
+
+}
@@ -0,0 +1,24 @@
+package benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Entry point of the benchmarks jar. Runs JMH with the GC profiler enabled,
+ * so every result comes with its allocation rate (gc.alloc.rate.norm is
+ * bytes allocated per operation).
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("-prof")) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        String[] withGcProfiler = new String[args.length + 2];
+        withGcProfiler[0] = "-prof";
+        withGcProfiler[1] = "gc";
+        System.arraycopy(args, 0, withGcProfiler, 2, args.length);
+        org.openjdk.jmh.Main.main(withGcProfiler);
+    }
+
+}
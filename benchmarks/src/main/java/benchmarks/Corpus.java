@@ -0,0 +1,147 @@
+package benchmarks;
+
+import session.EvaluationContext;
+
+/**
+ * Fixed expression corpora shared by the benchmarks. Every expression is valid
+ * for a parser using the context from {@link #context()}.
+ */
+public final class Corpus {
+
+    public static final String[] SHORT = {
+        "1+2",
+        "2*pi*r",
+        "sqrt(x)",
+        "x^2+y^2",
+        "3E2",
+        "5!",
+        "1<<4",
+        "sin(x)*cos(y)",
+        "-x/2",
+        "10%3",
+    };
+
+    public static final String[] MEDIUM = {
+        "(x+1)*(y-2)/(r^2+1)-sqrt(x*x+y*y)",
+        "2*pi*r*h+2*pi*r^2",
+        "sin(x)^2+cos(x)^2",
+        "(1+r/12)^(12*5)*1000",
+        "((x<<2)|(y&255))%7",
+        "-x^3+4*x^2-2*x+17",
+        "tan(x/2)*(1-cos(y))/sin(y)",
+        "sqrt((x-y)^2+(r-w)^2)*e",
+        "(h*w)/(h+w)*2E3-ans",
+        "3!*4!/(2!*5)",
+    };
+
+    public static final String[] NESTED = {
+        nested(16),
+        nested(32),
+        nested(64),
+        flat(128),
+    };
+
+    public static final String[] REPEATED = {
+        repeated(4),
+        repeated(10),
+        repeated(40),
+    };
+
+    public static final String[] NUMERIC = {
+        numeric(8),
+        numeric(32),
+        numeric(128),
+    };
+
+    /**
+     * Trig and power chains, only two of which read h.
+     */
+    public static final String[] DASHBOARD = {
+        "sin(x)^2*cos(y)^3+tan(x*y)^2",
+        "(1+r/12)^(12*30)*hypot(w,x)^2",
+        "log(w^x+1,2)*ln(x+y)^2+sqrt(w)^3",
+        "sin(x*pi/4)^3+cos(y*pi/3)^3+sin(x)*cos(y)",
+        "max(sin(x),cos(y),tan(r))^2+w^1.5",
+        "(x^3+y^3)^(1/3)*sin(w)^2+h",
+        "gamma(w+1)*ncr(10,3)+sin(h)^2",
+        "hypot(sin(x),cos(y))^3*e^r",
+    };
+
+    private Corpus() {}
+
+    public static String[] named(String name) {
+        return switch (name) {
+            case "short" -> SHORT;
+            case "medium" -> MEDIUM;
+            case "nested" -> NESTED;
+            case "repeated" -> REPEATED;
+            case "numeric" -> NUMERIC;
+            case "dashboard" -> DASHBOARD;
+            default -> throw new IllegalArgumentException("Unknown corpus " + name);
+        };
+    }
+
+    /**
+     * A new context with the variables used by the corpora defined.
+     */
+    public static EvaluationContext context() {
+        EvaluationContext context = new EvaluationContext();
+        context.setVariable("x", 1.25);
+        context.setVariable("y", 0.5);
+        context.setVariable("r", 0.05);
+        context.setVariable("w", 3.0);
+        context.setVariable("h", 7.5);
+        return context;
+    }
+
+    /**
+     * (1+(x*(2-(y/(3+(...))))))
+     */
+    private static String nested(int depth) {
+        String[] operators = { "+", "*", "-", "/" };
+        String[] operands = { "1", "x", "2", "y", "3", "r" };
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append('(').append(operands[i % operands.length]).append(operators[i % operators.length]);
+        }
+        builder.append("w");
+        builder.append(")".repeat(depth));
+        return builder.toString();
+    }
+
+    /**
+     * x+1*y-2*r+3*x-...
+     */
+    private static String flat(int terms) {
+        String[] operands = { "x", "1", "y", "2", "r", "3" };
+        StringBuilder builder = new StringBuilder("x");
+        for (int i = 0; i < terms; i++) {
+            builder.append(i % 2 == 0 ? '+' : '-').append(operands[i % operands.length]).append('*').append(operands[(i + 1) % operands.length]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 1234.5678+0.0421*3E8+..., a row of a numeric table
+     */
+    private static String numeric(int terms) {
+        String[] literals = { "1234.5678", "0.0421", "3E8", "96485.33212", "6.02214076E23", "17", "0.000125", "1.602176634E-19", "299792458", "2.718281828459045" };
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            builder.append(i == 0 ? "" : i % 2 == 0 ? "+" : "*").append(literals[i % literals.length]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * sin(x*pi/180)*cos(y*pi/180)*1+sin(x*pi/180)*cos(y*pi/180)*2+..., like a generated formula
+     */
+    private static String repeated(int terms) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 1; i <= terms; i++) {
+            builder.append(i == 1 ? "" : "+").append("sin(x*pi/180)*cos(y*pi/180)*").append(i);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ast_nodes.Bindings;
+import parser.PreparedExpression;
+import session.EvaluationContext;
+
+/**
+ * Evaluates expressions that were prepared once up front, so only evaluation is measured.
+ * The evaluate benchmarks walk the tree, evaluateCompiled runs the generated bytecode.
+ * A slot is set before every evaluation, so shared subexpressions are not reused
+ * from the previous one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+
+    @Param({ "short", "medium", "nested", "repeated" })
+    public String corpus;
+
+    @Param({ "false", "true" })
+    public boolean optimize;
+
+    private PreparedExpression[] expressions;
+    private Bindings[] bindings;
+
+    @Setup
+    public void setup() {
+        EvaluationContext context = Corpus.context();
+        String[] inputs = Corpus.named(corpus);
+        expressions = new PreparedExpression[inputs.length];
+        bindings = new Bindings[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            expressions[i] = PreparedExpression.prepare(inputs[i], context);
+            if (optimize) {
+                expressions[i] = expressions[i].optimize();
+            }
+            expressions[i].compile();
+            bindings[i] = expressions[i].newBindings();
+        }
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        for (int i = 0; i < expressions.length; i++) {
+            blackhole.consume(expressions[i].ast().evaluate(rebind(i)));
+        }
+    }
+
+    @Benchmark
+    public void evaluateDouble(Blackhole blackhole) {
+        for (int i = 0; i < expressions.length; i++) {
+            blackhole.consume(expressions[i].ast().evaluateDouble(rebind(i)));
+        }
+    }
+
+    @Benchmark
+    public void evaluateCompiled(Blackhole blackhole) {
+        for (int i = 0; i < expressions.length; i++) {
+            blackhole.consume(expressions[i].evaluateDouble(rebind(i)));
+        }
+    }
+
+    private Bindings rebind(int i) {
+        Bindings binding = bindings[i];
+        if (binding.size() > 0) {
+            binding.set(0, binding.get(0));
+        }
+        return binding;
+    }
+
+}
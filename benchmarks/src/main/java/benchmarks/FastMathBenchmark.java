@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import functions.FastMath;
+
+/**
+ * The speed side of FastMathReport: each method applies a function to the same
+ * 1024 arguments, with Math as the operators use it by default and with
+ * FastMath as they use it with -Dcalculator.fastMath=true.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastMathBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final double[] radians = new double[SIZE];
+    private final double[] degrees = new double[SIZE];
+    private final double[] bases = new double[SIZE];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            radians[i] = (random.nextDouble() - 0.5) * 200;
+            degrees[i] = (random.nextDouble() - 0.5) * 7200;
+            bases[i] = 0.5 + random.nextDouble() * 1.5;
+        }
+    }
+
+    @Benchmark
+    public double sinMath() {
+        double sum = 0;
+        for (double x : radians) {
+            sum += Math.sin(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double sinFast() {
+        double sum = 0;
+        for (double x : radians) {
+            sum += FastMath.sin(x, ANGLE_MODE.RAD);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double sinDegreesMath() {
+        double sum = 0;
+        for (double x : degrees) {
+            sum += Math.sin(x * ANGLE_MODE.DEG.conversion);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double sinDegreesFast() {
+        double sum = 0;
+        for (double x : degrees) {
+            sum += FastMath.sin(x, ANGLE_MODE.DEG);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double tanMath() {
+        double sum = 0;
+        for (double x : radians) {
+            sum += Math.tan(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double tanFast() {
+        double sum = 0;
+        for (double x : radians) {
+            sum += FastMath.tan(x, ANGLE_MODE.RAD);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double cubeMath() {
+        double sum = 0;
+        for (double x : bases) {
+            sum += Math.pow(x, 3);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double cubeFast() {
+        double sum = 0;
+        for (double x : bases) {
+            sum += FastMath.pow(x, 3);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double power13Math() {
+        double sum = 0;
+        for (double x : bases) {
+            sum += Math.pow(x, 13);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double power13Fast() {
+        double sum = 0;
+        for (double x : bases) {
+            sum += FastMath.pow(x, 13);
+        }
+        return sum;
+    }
+
+}
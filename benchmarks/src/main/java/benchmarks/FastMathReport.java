@@ -0,0 +1,201 @@
+package benchmarks;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import functions.FastMath;
+
+/**
+ * Measures the error of FastMath, and of the Math expressions the operators use
+ * otherwise, against values computed exactly with BigDecimal. Errors are in ulps
+ * of the exact value. Exact zeros are left out of the ulp columns. The exact
+ * columns count instead how many of the multiples of a right angle (half a
+ * right angle for tan) give exactly 0, 1 or -1. Pair it with FastMathBenchmark for the speed of each.
+ *
+ *     java -cp benchmarks/target/benchmarks.jar benchmarks.FastMathReport
+ */
+public class FastMathReport {
+
+    private static final MathContext CONTEXT = new MathContext(60, RoundingMode.HALF_EVEN);
+    private static final BigDecimal PI = new BigDecimal(
+        "3.14159265358979323846264338327950288419716939937510582097494459230781640628620899862803482534211706798");
+    private static final BigDecimal HALF_PI = PI.divide(BigDecimal.valueOf(2), CONTEXT);
+
+    private static final int SAMPLES = 20_000;
+
+    private final Random random = new Random(42);
+
+    public static void main(String[] args) {
+        new FastMathReport().run();
+    }
+
+    private void run() {
+
+        System.out.printf("%-8s %-5s %-22s %10s %10s %10s %10s %11s %11s%n",
+            "function", "mode", "range", "Math max", "Math mean", "Fast max", "Fast mean", "Math exact", "Fast exact");
+
+        for (String function : new String[] { "sin", "cos", "tan" }) {
+            trig(function, ANGLE_MODE.RAD, "[-pi, pi]", -Math.PI, Math.PI, false);
+            trig(function, ANGLE_MODE.RAD, "[-1e4, 1e4]", -1e4, 1e4, false);
+            trig(function, ANGLE_MODE.RAD, "[-1e6, 1e6]", -1e6, 1e6, false);
+            trig(function, ANGLE_MODE.DEG, "[-720, 720]", -720, 720, false);
+            trig(function, ANGLE_MODE.DEG, "integers [-1e6, 1e6]", -1e6, 1e6, true);
+            trig(function, ANGLE_MODE.GRAD, "[-800, 800]", -800, 800, false);
+        }
+        for (int n : new int[] { 2, 3, 5, 8, 13, 16, -2, -16 }) {
+            pow(n);
+        }
+    }
+
+    private void trig(String function, ANGLE_MODE angleMode, String range, double from, double to, boolean integers) {
+
+        DoubleUnaryOperator math = switch (function) {
+            case "sin" -> x -> Math.sin(x * angleMode.conversion);
+            case "cos" -> x -> Math.cos(x * angleMode.conversion);
+            default -> x -> Math.tan(x * angleMode.conversion);
+        };
+        DoubleUnaryOperator fast = switch (function) {
+            case "sin" -> x -> FastMath.sin(x, angleMode);
+            case "cos" -> x -> FastMath.cos(x, angleMode);
+            default -> x -> FastMath.tan(x, angleMode);
+        };
+
+        Errors mathErrors = new Errors();
+        Errors fastErrors = new Errors();
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = from + random.nextDouble() * (to - from);
+            if (integers) {
+                x = Math.rint(x);
+            }
+            BigDecimal exact = exactTrig(function, x, angleMode);
+            if (exact == null) {
+                continue;
+            }
+            mathErrors.add(math.applyAsDouble(x), exact);
+            fastErrors.add(fast.applyAsDouble(x), exact);
+        }
+
+        // the angles where the exact result is 0, 1 or -1
+        String mathExactCount = "";
+        String fastExactCount = "";
+        if (angleMode != ANGLE_MODE.RAD) {
+            int mathExact = 0;
+            int fastExact = 0;
+            int count = 0;
+            double step = angleMode.quarterTurn / (function.equals("tan") ? 2 : 1);
+            for (int k = -40; k <= 40; k++) {
+                double x = k * step;
+                if (function.equals("tan") && k % 2 == 0 && k % 4 != 0) {
+                    // odd multiples of a right angle, where tan has a pole
+                    continue;
+                }
+                double expected = exactTrig(function, x, angleMode).doubleValue();
+                count++;
+                mathExact += math.applyAsDouble(x) == expected ? 1 : 0;
+                fastExact += fast.applyAsDouble(x) == expected ? 1 : 0;
+            }
+            mathExactCount = mathExact + "/" + count;
+            fastExactCount = fastExact + "/" + count;
+        }
+
+        System.out.printf("%-8s %-5s %-22s %10.2f %10.3f %10.2f %10.3f %11s %11s%n",
+            function, angleMode, range, mathErrors.max, mathErrors.mean(), fastErrors.max, fastErrors.mean(),
+            mathExactCount, fastExactCount);
+    }
+
+    private void pow(int n) {
+        Errors mathErrors = new Errors();
+        Errors fastErrors = new Errors();
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = 0.5 + random.nextDouble() * 1.5;
+            BigDecimal power = new BigDecimal(x).pow(Math.abs(n), CONTEXT);
+            BigDecimal exact = n >= 0 ? power : BigDecimal.ONE.divide(power, CONTEXT);
+            mathErrors.add(Math.pow(x, n), exact);
+            fastErrors.add(FastMath.pow(x, n), exact);
+        }
+        System.out.printf("%-8s %-5s %-22s %10.2f %10.3f %10.2f %10.3f%n",
+            "x^" + n, "", "x in [0.5, 2]", mathErrors.max, mathErrors.mean(), fastErrors.max, fastErrors.mean());
+    }
+
+    /**
+     * The function of x in the angle mode, to 60 digits, or null at a pole of tan.
+     */
+    private static BigDecimal exactTrig(String function, double x, ANGLE_MODE angleMode) {
+
+        BigDecimal radians;
+        if (angleMode == ANGLE_MODE.RAD) {
+            radians = new BigDecimal(x);
+        } else {
+            // reduce first, so the result stays exact at multiples of a right angle
+            BigDecimal quarterTurn = BigDecimal.valueOf(angleMode.quarterTurn);
+            BigDecimal reduced = new BigDecimal(x).remainder(quarterTurn.multiply(BigDecimal.valueOf(4)));
+            radians = reduced.multiply(HALF_PI, CONTEXT).divide(quarterTurn, CONTEXT);
+        }
+
+        BigDecimal quarters = radians.divide(HALF_PI, 0, RoundingMode.HALF_EVEN);
+        BigDecimal r = radians.subtract(quarters.multiply(HALF_PI, CONTEXT), CONTEXT);
+        int quadrant = quarters.remainder(BigDecimal.valueOf(4)).intValue() & 3;
+
+        BigDecimal sin = sinSeries(r);
+        BigDecimal cos = cosSeries(r);
+        BigDecimal[] bySin = { sin, cos, sin.negate(), cos.negate() };
+        if (function.equals("tan") && bySin[(quadrant + 1) & 3].signum() == 0) {
+            return null;
+        }
+        return switch (function) {
+            case "sin" -> bySin[quadrant];
+            case "cos" -> bySin[(quadrant + 1) & 3];
+            default -> bySin[quadrant].divide(bySin[(quadrant + 1) & 3], CONTEXT);
+        };
+    }
+
+    private static BigDecimal sinSeries(BigDecimal x) {
+        BigDecimal term = x;
+        BigDecimal sum = x;
+        BigDecimal xx = x.multiply(x, CONTEXT);
+        for (int n = 1; term.signum() != 0 && term.abs().compareTo(BigDecimal.ONE.movePointLeft(70)) > 0; n++) {
+            term = term.multiply(xx, CONTEXT).divide(BigDecimal.valueOf(-(2L * n) * (2L * n + 1)), CONTEXT);
+            sum = sum.add(term, CONTEXT);
+        }
+        return sum;
+    }
+
+    private static BigDecimal cosSeries(BigDecimal x) {
+        BigDecimal term = BigDecimal.ONE;
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal xx = x.multiply(x, CONTEXT);
+        for (int n = 1; term.signum() != 0 && term.abs().compareTo(BigDecimal.ONE.movePointLeft(70)) > 0; n++) {
+            term = term.multiply(xx, CONTEXT).divide(BigDecimal.valueOf(-(2L * n - 1) * (2L * n)), CONTEXT);
+            sum = sum.add(term, CONTEXT);
+        }
+        return sum;
+    }
+
+    private static final class Errors {
+
+        private double max;
+        private double sum;
+        private int count;
+
+        void add(double value, BigDecimal exact) {
+            double nearest = exact.doubleValue();
+            if (nearest == 0 || Double.isInfinite(nearest) || Double.isNaN(value)) {
+                return;
+            }
+            double ulps = new BigDecimal(value).subtract(exact).abs().doubleValue() / Math.ulp(nearest);
+            max = Math.max(max, ulps);
+            sum += ulps;
+            count++;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+    }
+
+}
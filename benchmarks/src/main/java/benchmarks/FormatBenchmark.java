@@ -0,0 +1,57 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ast_nodes.NumberNode;
+import ast_nodes.NumberNode.DECIMAL_MODE;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+
+    private static final Number[] VALUES = {
+        0.0, 1.0, -1.5, 3.141592653589793, 2.718281828459045, 1234567.891, -0.000123456,
+        6.02214076E23, 1.602176634E-19, 42, 120L, 1.0 / 3.0, 1e300, -7.25e-300,
+    };
+
+    @Param({ "REG", "SCI", "ENG" })
+    public DECIMAL_MODE mode;
+
+    private final StringBuilder out = new StringBuilder();
+
+    @Benchmark
+    public void format(Blackhole blackhole) {
+        for (Number value : VALUES) {
+            blackhole.consume(NumberNode.formatNumber(value, mode));
+        }
+    }
+
+    /**
+     * Appends into a reused StringBuilder, as batch mode does.
+     */
+    @Benchmark
+    public void formatInto(Blackhole blackhole) {
+        for (Number value : VALUES) {
+            out.setLength(0);
+            NumberNode.formatNumber(value, mode, out);
+            blackhole.consume(out);
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import lexer.Lexer;
+import lexer.Lexer.LEXER_MODE;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({ "short", "medium", "nested" })
+    public String corpus;
+
+    @Param({ "SCAN", "REGEX" })
+    public LEXER_MODE mode;
+
+    private String[] expressions;
+
+    @Setup
+    public void setup() {
+        expressions = Corpus.named(corpus);
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        for (String expression : expressions) {
+            Lexer lexer = new Lexer(expression, mode);
+            while (lexer.hasMoreTokens()) {
+                blackhole.consume(lexer.getNextToken());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import metrics.LatencyHistogram;
+import metrics.PhaseStats;
+import server.EvaluationLimits;
+import server.EvaluationServer;
+
+/**
+ * Drives an evaluation server with a number of concurrent sessions, each on its
+ * own virtual thread, and reports the throughput and the latency of each request.
+ *
+ * Each session defines the variables of the {@link Corpus} context, then sends
+ * the corpus over and over, pipeline requests at a time. Run it against a server
+ * started with --serve, or against one in the same process with --embedded:
+ *
+ *     java -cp benchmarks/target/benchmarks.jar benchmarks.LoadGenerator --embedded --connections 64 --pipeline 16
+ */
+public class LoadGenerator {
+
+    private String host = "localhost";
+    private int port = 7878;
+    private boolean embedded;
+    private int connections = 16;
+    private int requests = 100_000;
+    private int pipeline = 8;
+    private String corpus = "medium";
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--embedded" -> generator.embedded = true;
+                case "--host" -> generator.host = args[++i];
+                case "--port" -> generator.port = Integer.parseInt(args[++i]);
+                case "--connections" -> generator.connections = Integer.parseInt(args[++i]);
+                case "--requests" -> generator.requests = Integer.parseInt(args[++i]);
+                case "--pipeline" -> generator.pipeline = Integer.parseInt(args[++i]);
+                case "--corpus" -> generator.corpus = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        generator.run();
+    }
+
+    private void run() throws Exception {
+
+        EvaluationServer server = null;
+        if (embedded) {
+            server = new EvaluationServer(0, EvaluationLimits.fromProperties());
+            server.start();
+            host = "localhost";
+            port = server.port();
+        }
+
+        String[] expressions = Corpus.named(corpus);
+        int perConnection = requests / connections;
+
+        long start = System.nanoTime();
+        List<Thread> sessions = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            sessions.add(Thread.ofVirtual().start(() -> session(expressions, perConnection)));
+        }
+        for (Thread session : sessions) {
+            session.join();
+        }
+        long nanos = System.nanoTime() - start;
+
+        if (server != null) {
+            server.close();
+        }
+
+        long sent = latency.count();
+        System.out.printf("%d requests over %d connections, pipeline %d, in %.2f s: %.0f requests/s, %d errors%n",
+            sent, connections, pipeline, nanos / 1e9, sent / (nanos / 1e9), errors.sum());
+        System.out.println("latency: " + PhaseStats.of(latency));
+    }
+
+    private void session(String[] expressions, int count) {
+        try (Socket socket = new Socket(host, port);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+            socket.setTcpNoDelay(true);
+
+            for (Map.Entry<String, Number> variable : Corpus.context().variables().entrySet()) {
+                if (!variable.getKey().equals("ans")) {
+                    writer.write("var " + variable.getKey() + " = " + variable.getValue() + "\n");
+                    writer.flush();
+                    reader.readLine();
+                }
+            }
+
+            int next = 0;
+            for (int sent = 0; sent < count; sent += pipeline) {
+                int window = Math.min(pipeline, count - sent);
+                for (int i = 0; i < window; i++) {
+                    writer.write(expressions[next++ % expressions.length]);
+                    writer.write('\n');
+                }
+                long start = System.nanoTime();
+                writer.flush();
+                for (int i = 0; i < window; i++) {
+                    String reply = reader.readLine();
+                    if (reply == null) {
+                        throw new IOException("The server closed the connection.");
+                    }
+                    if (reply.startsWith("Error")) {
+                        errors.increment();
+                    }
+                    latency.record(System.nanoTime() - start);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
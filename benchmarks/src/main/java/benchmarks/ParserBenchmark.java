@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import parser.Parser;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({ "short", "medium", "nested", "numeric" })
+    public String corpus;
+
+    private String[] expressions;
+    private Parser parser;
+    private Parser cachedParser;
+
+    @Setup
+    public void setup() {
+        expressions = Corpus.named(corpus);
+        parser = new Parser(Corpus.context());
+        cachedParser = new Parser(Corpus.context(), expressions.length);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(parser.parse(expression));
+        }
+    }
+
+    @Benchmark
+    public void parseStreaming(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(parser.parse(new StringReader(expression)));
+        }
+    }
+
+    @Benchmark
+    public void parseCached(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(cachedParser.parse(expression));
+        }
+    }
+
+}
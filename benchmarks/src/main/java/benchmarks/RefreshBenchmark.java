@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import parser.Parser;
+
+/**
+ * Refreshes a dashboard: h is set to a new value, then every expression of the
+ * corpus is run again through a parser with a parse cache. With a result cache,
+ * subtrees that do not read h are answered from it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefreshBenchmark {
+
+    @Param({ "dashboard", "medium" })
+    public String corpus;
+
+    @Param({ "0", "1024" })
+    public int resultCacheSize;
+
+    private String[] expressions;
+    private Parser parser;
+    private int tick;
+
+    @Setup
+    public void setup() {
+        expressions = Corpus.named(corpus);
+        parser = new Parser(Corpus.context(), expressions.length);
+        parser.context().setResultCacheSize(resultCacheSize);
+    }
+
+    @Benchmark
+    public void refresh(Blackhole blackhole) {
+        parser.context().setVariable("h", 7.5 + (tick++ & 63));
+        for (String expression : expressions) {
+            blackhole.consume(parser.parse(expression));
+        }
+    }
+
+}
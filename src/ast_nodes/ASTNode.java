@@ -1,8 +1,124 @@
 package ast_nodes;
 
-// TODO: implement function node with arbitrary argument list length
+import java.util.List;
+
 public interface ASTNode {
 
-    Number evaluate();
+    /**
+     * Evaluates this node without boxing, reading any variable slots from the given bindings.
+     */
+    double evaluateDouble(Bindings bindings);
+
+    /**
+     * Evaluates this node as a long without boxing. Integral nodes compute the
+     * value in long arithmetic, every other node truncates its double.
+     * @throws ArithmeticException if an integral result anywhere in the subtree
+     *                             overflows a long, or is the factorial of a number
+     *                             that is not whole. Neither evaluateLong nor
+     *                             evaluateDouble catch it: it reaches the root, which
+     *                             computes the whole tree again with
+     *                             {@link #evaluateOverflowed}.
+     */
+    default long evaluateLong(Bindings bindings) {
+        return (long) evaluateDouble(bindings);
+    }
+
+    /**
+     * Evaluates this node in double arithmetic throughout, for a tree in which an
+     * integral result overflowed a long. Bitwise operators truncate their operands
+     * to longs. Nodes with children override this to call it on their children.
+     */
+    default double evaluateOverflowed(Bindings bindings) {
+        return evaluateDouble(bindings);
+    }
+
+    /**
+     * Evaluates this node as the root of a tree: like evaluateDouble, except that
+     * if an integral result overflows anywhere in the tree, the whole tree is
+     * computed once more with {@link #evaluateOverflowed}.
+     */
+    default double evaluateRoot(Bindings bindings) {
+        try {
+            return evaluateDouble(bindings);
+        } catch (ArithmeticException e) {
+            bindings.startEvaluation();
+            return evaluateOverflowed(bindings);
+        }
+    }
+
+    /**
+     * The type of Number that {@link #evaluate(Bindings)} returns.
+     */
+    RESULT_TYPE resultType();
+
+    /**
+     * Evaluates this node, reading any variable slots from the given bindings.
+     * If an integral result overflows a long anywhere in the tree, the whole tree
+     * is computed with {@link #evaluateOverflowed} and the result is a Double.
+     */
+    default Number evaluate(Bindings bindings) {
+        try {
+            return evaluateExact(bindings);
+        } catch (ArithmeticException e) {
+            bindings.startEvaluation();
+            return evaluateOverflowed(bindings);
+        }
+    }
+
+    /**
+     * Like {@link #evaluate(Bindings)}, but throws where an integral result
+     * overflows. Constant folding uses it, so a folded subtree never hides an
+     * overflow from the tree around it.
+     * @throws ArithmeticException see {@link #evaluateLong}.
+     */
+    default Number evaluateExact(Bindings bindings) {
+        RESULT_TYPE resultType = resultType();
+        if (resultType.isIntegral()) {
+            return resultType.box(evaluateLong(bindings));
+        }
+        return resultType.box(evaluateDouble(bindings));
+    }
+
+    default Number evaluate() {
+        return evaluate(Bindings.EMPTY);
+    }
+
+    default double evaluateDouble() {
+        return evaluateDouble(Bindings.EMPTY);
+    }
+
+    default List<ASTNode> children() {
+        return List.of();
+    }
+
+    public enum RESULT_TYPE {
+        INT, LONG, DOUBLE;
+
+        public Number box(double value) {
+            return switch (this) {
+                case INT -> (int) value;
+                case LONG -> (long) value;
+                case DOUBLE -> value;
+            };
+        }
+
+        public Number box(long value) {
+            return switch (this) {
+                case INT -> (int) value;
+                case LONG -> value;
+                case DOUBLE -> (double) value;
+            };
+        }
+
+        public boolean isIntegral() {
+            return this != DOUBLE;
+        }
+
+        public static RESULT_TYPE of(Number number) {
+            if (number instanceof Integer) return INT;
+            if (number instanceof Long) return LONG;
+            return DOUBLE;
+        }
+    }
     
 }
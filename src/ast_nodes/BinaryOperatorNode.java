@@ -1,11 +1,27 @@
 package ast_nodes;
 
-import java.util.function.BinaryOperator;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
 
+import functions.FastMath;
+
+/**
+ * The result type is inferred from the operands when the node is built. Bitwise
+ * operators are always integral, and +, - and * are integral when both operands
+ * are. Integral nodes are evaluated with 64 bit long arithmetic (see
+ * {@link #evaluateLong}) and only widened to a double where a floating point
+ * operator or the caller needs one. Integral +, - and * do not wrap on overflow:
+ * they throw, and the root of the tree computes the whole tree in double
+ * arithmetic instead (see {@link ASTNode#evaluateOverflowed}), so an overflow
+ * costs one exception and one more pass whatever the depth it happens at.
+ */
 public class BinaryOperatorNode implements ASTNode {
 
     private String opToken;
-    private BinaryOperator<Number> operator;
+    private DoubleBinaryOperator operator;
+    private LongBinaryOperator longOperator;
+    private RESULT_TYPE resultType;
     private ASTNode left;
     private ASTNode right;
 
@@ -16,35 +32,94 @@ public class BinaryOperatorNode implements ASTNode {
         }
 
         this.opToken = opToken;
+        this.resultType = RESULT_TYPE.DOUBLE;
+
+        boolean integral = left.resultType().isIntegral() && right.resultType().isIntegral();
 
         switch(opToken) {
-            case "+":   this.operator = (x,y) -> x.doubleValue() + y.doubleValue();                 break;
-            case "-":   this.operator = (x,y) -> x.doubleValue() - y.doubleValue();                 break;
-            case "*":   this.operator = (x,y) -> x.doubleValue() * y.doubleValue();                 break;
-            case "/":   this.operator = (x,y) -> x.doubleValue() / y.doubleValue();                 break;
-            case "^":   this.operator = (x,y) -> Math.pow(x.doubleValue(), y.doubleValue());        break;
-            case "<<":  this.operator = (x,y) -> x.intValue() << y.intValue();                      break;
-            case ">>":  this.operator = (x,y) -> x.intValue() >> y.intValue();                      break;
-            case "&":   this.operator = (x,y) -> x.intValue() & y.intValue();                       break;
-            case "|":   this.operator = (x,y) -> x.intValue() | y.intValue();                       break;
-            case "%":   this.operator = (x,y) -> x.doubleValue() % y.doubleValue();                 break;
-            case "E":   this.operator = (x,y) -> x.doubleValue() * Math.pow(10, y.doubleValue()); break;
+            case "+":   this.operator = (x,y) -> x + y;                 if (integral) this.longOperator = Math::addExact;               break;
+            case "-":   this.operator = (x,y) -> x - y;                 if (integral) this.longOperator = Math::subtractExact;          break;
+            case "*":   this.operator = (x,y) -> x * y;                 if (integral) this.longOperator = Math::multiplyExact;          break;
+            case "/":   this.operator = (x,y) -> x / y;                                                                                 break;
+            case "^":   this.operator = FastMath.ENABLED ? FastMath::pow : Math::pow;                                                   break;
+            case "<<":  this.longOperator = (x,y) -> x << y;                                                                            break;
+            case ">>":  this.longOperator = (x,y) -> x >> y;                                                                            break;
+            case "&":   this.longOperator = (x,y) -> x & y;                                                                             break;
+            case "|":   this.longOperator = (x,y) -> x | y;                                                                             break;
+            case "%":   this.operator = (x,y) -> x % y;                                                                                 break;
+            case "E":   this.operator = BinaryOperatorNode::scientific;                                                                 break;
             default:
                 throw new IllegalArgumentException("Binary operator " + opToken + " not supported.");
         }
 
+        if (longOperator != null) {
+            this.resultType = RESULT_TYPE.LONG;
+        }
+
         this.left = left;
         this.right = right;
     }
 
     @Override
-    public Number evaluate() {
-        return operator.apply(left.evaluate(), right.evaluate());
+    public double evaluateDouble(Bindings bindings) {
+        if (longOperator != null) {
+            return evaluateLong(bindings);
+        }
+        return operator.applyAsDouble(left.evaluateDouble(bindings), right.evaluateDouble(bindings));
     }
-    
+
+    @Override
+    public long evaluateLong(Bindings bindings) {
+        if (longOperator == null) {
+            return (long) evaluateDouble(bindings);
+        }
+        return longOperator.applyAsLong(left.evaluateLong(bindings), right.evaluateLong(bindings));
+    }
+
+    @Override
+    public double evaluateOverflowed(Bindings bindings) {
+        if (operator == null) {
+            // bitwise operators truncate their operands, like any other double
+            return longOperator.applyAsLong((long) left.evaluateOverflowed(bindings), (long) right.evaluateOverflowed(bindings));
+        }
+        return operator.applyAsDouble(left.evaluateOverflowed(bindings), right.evaluateOverflowed(bindings));
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return resultType;
+    }
+
+    @Override
+    public List<ASTNode> children() {
+        return List.of(left, right);
+    }
+
+    public String opToken() {
+        return opToken;
+    }
+
+    public ASTNode left() {
+        return left;
+    }
+
+    public ASTNode right() {
+        return right;
+    }
+
+    /**
+     * x * 10^y. Integer exponents read the power from a table of Math.pow(10, y),
+     * so the result is the same either way. Also called by compiled and batch
+     * evaluation.
+     */
+    public static double scientific(double x, double y) {
+        int exponent = (int) y;
+        return exponent == y ? x * NumberFormatter.pow10(exponent) : x * Math.pow(10, y);
+    }
+
     @Override
     public String toString() {
         return opToken + "\n\tLeft: " + left + "\n\tRight: " + right;
     }
-    
+
 }
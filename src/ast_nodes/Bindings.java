@@ -0,0 +1,215 @@
+package ast_nodes;
+
+import java.util.Arrays;
+
+import parser.SyntaxException;
+
+/**
+ * Values for the variable slots of a prepared expression, filled in before each evaluation.
+ * A Bindings instance can be reused across evaluations but not shared between threads.
+ * 
+ * The value of each shared subtree is computed once per evaluation, and the
+ * argument arrays of function calls are reused between calls.
+ */
+public class Bindings {
+
+    public static final Bindings EMPTY = new Bindings(new String[0]);
+
+    private final String[] names;
+    private final double[] values;
+    private final boolean[] bound;
+    // the shared subtrees computed in the current evaluation, by index, with their long value or double bits
+    private boolean[] computed;
+    private long[] sharedValues;
+    private int sharedCount;
+    // indexed by how deeply the call is nested, then by its number of arguments
+    private double[][][] callArguments;
+    private int callDepth;
+
+    /**
+     * @param names The variable name of each slot, indexed by slot.
+     */
+    public Bindings(String[] names) {
+        this.names = names;
+        this.values = new double[names.length];
+        this.bound = new boolean[names.length];
+    }
+
+    public Bindings set(int slot, double value) {
+        values[slot] = value;
+        bound[slot] = true;
+        return this;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression has no variable with this name.
+     */
+    public Bindings set(String name, double value) {
+        return set(slotOf(name), value);
+    }
+
+    public Bindings set(String name, Number value) {
+        return set(slotOf(name), value.doubleValue());
+    }
+
+    /**
+     * @throws SyntaxException if nothing has been bound to the slot.
+     */
+    public double get(int slot) {
+        if (!bound[slot]) {
+            throw new SyntaxException("The variable " + names[slot] + " is undefined.");
+        }
+        return values[slot];
+    }
+
+    /**
+     * The slot values backing these bindings, indexed by slot.
+     * @throws SyntaxException if any slot has not been bound.
+     */
+    public double[] boundValues() {
+        for (int slot = 0; slot < bound.length; slot++) {
+            if (!bound[slot]) {
+                throw new SyntaxException("The variable " + names[slot] + " is undefined.");
+            }
+        }
+        return values;
+    }
+
+    public boolean isBound(int slot) {
+        return bound[slot];
+    }
+
+    public void clear() {
+        Arrays.fill(bound, false);
+    }
+
+    /**
+     * Forgets the values of the shared subtrees, before the bindings are used for
+     * the next top level evaluation.
+     */
+    public void startEvaluation() {
+        if (sharedCount > 0) {
+            Arrays.fill(computed, 0, sharedCount, false);
+            sharedCount = 0;
+        }
+    }
+
+    /**
+     * Evaluates a shared subtree, or returns its value if it has already been
+     * computed since startEvaluation.
+     */
+    public double evaluateShared(int index, ASTNode node) {
+
+        if (this == EMPTY) {
+            // shared by every thread
+            return node.evaluateDouble(this);
+        }
+
+        if (isComputed(index)) {
+            return Double.longBitsToDouble(sharedValues[index]);
+        }
+
+        double value = node.evaluateDouble(this);
+        remember(index, Double.doubleToRawLongBits(value));
+        return value;
+    }
+
+    /**
+     * Like {@link #evaluateShared} for an integral subtree, whose long value may not be exact as a double.
+     */
+    public long evaluateSharedLong(int index, ASTNode node) {
+
+        if (this == EMPTY) {
+            return node.evaluateLong(this);
+        }
+
+        if (isComputed(index)) {
+            return sharedValues[index];
+        }
+
+        long value = node.evaluateLong(this);
+        remember(index, value);
+        return value;
+    }
+
+    /**
+     * Like {@link #evaluateShared} for the pass that computes a tree in which an
+     * integer overflowed (see {@link ASTNode#evaluateOverflowed}). The root starts
+     * a new evaluation before the pass, so no value of the first pass is reused.
+     */
+    public double evaluateSharedOverflowed(int index, ASTNode node) {
+
+        if (this == EMPTY) {
+            return node.evaluateOverflowed(this);
+        }
+
+        if (isComputed(index)) {
+            return Double.longBitsToDouble(sharedValues[index]);
+        }
+
+        double value = node.evaluateOverflowed(this);
+        remember(index, Double.doubleToRawLongBits(value));
+        return value;
+    }
+
+    private boolean isComputed(int index) {
+        return computed != null && index < computed.length && computed[index];
+    }
+
+    private void remember(int index, long value) {
+        if (computed == null || index >= computed.length) {
+            // the shared nodes of an expression are numbered from 0, so this is as long as the largest expression needs
+            int length = Math.max(index + 1, computed == null ? 8 : computed.length * 2);
+            computed = computed == null ? new boolean[length] : Arrays.copyOf(computed, length);
+            sharedValues = sharedValues == null ? new long[length] : Arrays.copyOf(sharedValues, length);
+        }
+        computed[index] = true;
+        sharedValues[index] = value;
+        sharedCount = Math.max(sharedCount, index + 1);
+    }
+
+    /**
+     * An array for the arguments of a call, which is valid until the matching
+     * exitCall. Calls nested inside its arguments get arrays of their own.
+     */
+    public double[] enterCall(int count) {
+
+        if (this == EMPTY) {
+            return new double[count];
+        }
+
+        if (callArguments == null || callDepth >= callArguments.length) {
+            callArguments = callArguments == null ? new double[4][][] : Arrays.copyOf(callArguments, callArguments.length * 2);
+        }
+        double[][] arrays = callArguments[callDepth];
+        if (arrays == null || count >= arrays.length) {
+            arrays = arrays == null ? new double[count + 1][] : Arrays.copyOf(arrays, count + 1);
+            callArguments[callDepth] = arrays;
+        }
+        if (arrays[count] == null) {
+            arrays[count] = new double[count];
+        }
+        callDepth++;
+        return arrays[count];
+    }
+
+    public void exitCall() {
+        if (this != EMPTY) {
+            callDepth--;
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public int slotOf(String name) {
+        for (int slot = 0; slot < names.length; slot++) {
+            if (names[slot].equals(name)) {
+                return slot;
+            }
+        }
+        throw new IllegalArgumentException("The expression has no variable " + name + ".");
+    }
+
+}
@@ -2,28 +2,39 @@ package ast_nodes;
 
 import ast_nodes.NumberNode.DECIMAL_MODE;
 import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import session.EvaluationContext;
+import session.EvaluationContext.ASSIGNMENT_MODE;
 
 public class CommandNode implements ASTNode {
 
-    public CommandNode(String command) {
+    /**
+     * Runs the command, changing the modes of the given context.
+     */
+    public CommandNode(String command, EvaluationContext context) {
         switch (command) {
             case "rad":
-                UnaryOperatorNode.angleMode = ANGLE_MODE.RAD;
+                context.setAngleMode(ANGLE_MODE.RAD);
                 break;
             case "deg":
-                UnaryOperatorNode.angleMode = ANGLE_MODE.DEG;
+                context.setAngleMode(ANGLE_MODE.DEG);
                 break;
             case "grad":
-                UnaryOperatorNode.angleMode = ANGLE_MODE.GRAD;
+                context.setAngleMode(ANGLE_MODE.GRAD);
                 break;
             case "reg":
-                NumberNode.decimalMode = DECIMAL_MODE.REG;
+                context.setDecimalMode(DECIMAL_MODE.REG);
                 break;
             case "sci":
-                NumberNode.decimalMode = DECIMAL_MODE.SCI;
+                context.setDecimalMode(DECIMAL_MODE.SCI);
                 break;
             case "eng":
-                NumberNode.decimalMode = DECIMAL_MODE.ENG;
+                context.setDecimalMode(DECIMAL_MODE.ENG);
+                break;
+            case "reactive":
+                context.setAssignmentMode(ASSIGNMENT_MODE.REACTIVE);
+                break;
+            case "snapshot":
+                context.setAssignmentMode(ASSIGNMENT_MODE.SNAPSHOT);
                 break;
             case "cls":
             case "clear":
@@ -38,8 +49,18 @@ public class CommandNode implements ASTNode {
     }
 
     @Override
-    public Number evaluate() {
+    public Number evaluate(Bindings bindings) {
         return 0;
     }
+
+    @Override
+    public double evaluateDouble(Bindings bindings) {
+        return 0;
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return RESULT_TYPE.INT;
+    }
     
 }
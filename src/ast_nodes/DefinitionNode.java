@@ -0,0 +1,35 @@
+package ast_nodes;
+
+import functions.MathFunction;
+
+/**
+ * The result of defining a function with def, which has no value.
+ */
+public class DefinitionNode implements ASTNode {
+
+    private final MathFunction function;
+
+    public DefinitionNode(MathFunction function) {
+        this.function = function;
+    }
+
+    @Override
+    public Number evaluate(Bindings bindings) {
+        return null;
+    }
+
+    @Override
+    public double evaluateDouble(Bindings bindings) {
+        return Double.NaN;
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return RESULT_TYPE.DOUBLE;
+    }
+
+    public MathFunction function() {
+        return function;
+    }
+
+}
@@ -0,0 +1,67 @@
+package ast_nodes;
+
+import java.util.List;
+
+import functions.Cancellation;
+import functions.MathFunction;
+import parser.SyntaxException;
+
+public class FunctionNode implements ASTNode {
+
+    private final MathFunction function;
+    private final ASTNode[] arguments;
+
+    /**
+     * @throws SyntaxException if the function does not take this many arguments.
+     */
+    public FunctionNode(MathFunction function, List<ASTNode> arguments) {
+        if (!function.acceptsArity(arguments.size())) {
+            throw new SyntaxException(function.arityError(arguments.size()));
+        }
+        this.function = function;
+        this.arguments = arguments.toArray(new ASTNode[0]);
+    }
+
+    @Override
+    public double evaluateDouble(Bindings bindings) {
+        return call(bindings, false);
+    }
+
+    @Override
+    public double evaluateOverflowed(Bindings bindings) {
+        return call(bindings, true);
+    }
+
+    private double call(Bindings bindings, boolean overflowed) {
+        Cancellation.check();
+        double[] values = bindings.enterCall(arguments.length);
+        try {
+            for (int i = 0; i < arguments.length; i++) {
+                values[i] = overflowed ? arguments[i].evaluateOverflowed(bindings) : arguments[i].evaluateDouble(bindings);
+            }
+            return function.apply(values);
+        } finally {
+            bindings.exitCall();
+        }
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return RESULT_TYPE.DOUBLE;
+    }
+
+    @Override
+    public List<ASTNode> children() {
+        return List.of(arguments);
+    }
+
+    public MathFunction function() {
+        return function;
+    }
+
+    @Override
+    public String toString() {
+        return function.name() + "\n\tArguments: " + List.of(arguments);
+    }
+
+}
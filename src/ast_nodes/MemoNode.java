@@ -0,0 +1,100 @@
+package ast_nodes;
+
+import java.util.List;
+
+/**
+ * An expensive pure subtree whose result is kept in a {@link ResultCache} across
+ * evaluations, and reused until one of the slots it reads is bound to a
+ * different value. The angle mode is part of the subtree, since trig keeps the
+ * mode it was prepared with.
+ */
+public class MemoNode implements ASTNode {
+
+    private static int nextSeed;
+
+    private final ASTNode node;
+    private final int[] slots;
+    private final ResultCache cache;
+    private final int seed;
+
+    // approximate if evaluated on several threads
+    int hits;
+    int misses;
+
+    /**
+     * @param slots The slots the subtree reads, in increasing order.
+     */
+    public MemoNode(ASTNode node, int[] slots, ResultCache cache) {
+        this.node = node;
+        this.slots = slots;
+        this.cache = cache;
+        this.seed = nextSeed() * 0x61C88647;
+    }
+
+    @Override
+    public double evaluateDouble(Bindings bindings) {
+        if (node.resultType().isIntegral()) {
+            return cache.evaluateLong(this, bindings);
+        }
+        return cache.evaluateDouble(this, bindings);
+    }
+
+    @Override
+    public long evaluateLong(Bindings bindings) {
+        if (node.resultType().isIntegral()) {
+            return cache.evaluateLong(this, bindings);
+        }
+        return (long) cache.evaluateDouble(this, bindings);
+    }
+
+    /**
+     * An overflow is not cached, and the subtree is computed as a double every time.
+     */
+    @Override
+    public double evaluateOverflowed(Bindings bindings) {
+        return node.evaluateOverflowed(bindings);
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return node.resultType();
+    }
+
+    @Override
+    public List<ASTNode> children() {
+        return List.of(node);
+    }
+
+    public ASTNode node() {
+        return node;
+    }
+
+    int[] slots() {
+        return slots;
+    }
+
+    int seed() {
+        return seed;
+    }
+
+    /**
+     * How many evaluations were answered from the cache.
+     */
+    public int hits() {
+        return hits;
+    }
+
+    public int misses() {
+        return misses;
+    }
+
+    private static synchronized int nextSeed() {
+        return ++nextSeed;
+    }
+
+    @Override
+    public String toString() {
+        return "memo " + node;
+    }
+
+}
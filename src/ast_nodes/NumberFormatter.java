@@ -0,0 +1,164 @@
+package ast_nodes;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Writes numbers in the same form as String.format("%w.pf") without creating a
+ * Formatter, straight into the caller's StringBuilder.
+ *
+ * The digits come from StringBuilder.append(double), which gives the shortest
+ * decimal that rounds to the double (the same digits Formatter starts from),
+ * and are then rounded half up to the requested number of decimal places.
+ */
+final class NumberFormatter {
+
+    // the powers of ten that fit in a long, enough for the 17 significant digits of a double
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    private static final int MIN_EXPONENT = -330;
+    private static final int MAX_EXPONENT = 310;
+    // Math.pow(10, e), which is not always the closest double to 10^e
+    private static final double[] POW_10 = new double[MAX_EXPONENT - MIN_EXPONENT + 1];
+
+    /**
+     * Formatter uses the digits and decimal separator of the default locale, so
+     * only locales that write numbers like the root locale are handled here.
+     */
+    static final boolean SUPPORTED_LOCALE = isPlainLocale(Locale.getDefault(Locale.Category.FORMAT));
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+        for (int e = MIN_EXPONENT; e <= MAX_EXPONENT; e++) {
+            POW_10[e - MIN_EXPONENT] = Math.pow(10, e);
+        }
+    }
+
+    private NumberFormatter() {}
+
+    /**
+     * Appends the value like String.format("%" + width + "." + decimals + "f", value).
+     * @param width The minimum length, padded with spaces on the left. 0 for no padding.
+     */
+    static void appendFixed(StringBuilder out, double value, int decimals, int width) {
+
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            String special = Double.isNaN(value) ? "NaN" : value > 0 ? "Infinity" : "-Infinity";
+            pad(out, width - special.length());
+            out.append(special);
+            return;
+        }
+
+        boolean negative = Double.compare(value, 0.0) < 0;
+        double magnitude = Math.abs(value);
+
+        // the shortest digits, as a whole number, and the power of ten of the last one
+        int start = out.length();
+        out.append(magnitude);
+        long digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (int i = start; i < out.length(); i++) {
+            char c = out.charAt(i);
+            if (c == '.') {
+                fraction = true;
+            } else if (c == 'E') {
+                exponent += Integer.parseInt(out, i + 1, out.length(), 10);
+                break;
+            } else {
+                digits = digits * 10 + (c - '0');
+                if (fraction) {
+                    exponent--;
+                }
+            }
+        }
+        out.setLength(start);
+
+        // the value times 10^decimals, as units followed by trailingZeros zeros
+        long units;
+        int trailingZeros;
+        int shift = exponent + decimals;
+        if (shift >= 0) {
+            units = digits;
+            trailingZeros = shift;
+        } else if (-shift < POWERS_OF_TEN.length) {
+            long divisor = POWERS_OF_TEN[-shift];
+            // half up, on the first digit dropped
+            units = digits / divisor;
+            if (digits % divisor * 2 >= divisor) {
+                units++;
+            }
+            trailingZeros = 0;
+        } else {
+            units = 0;
+            trailingZeros = 0;
+        }
+
+        int length = (units == 0 ? 0 : stringSize(units)) + trailingZeros;
+        // at least one digit before the point
+        int leadingZeros = Math.max(0, decimals + 1 - length);
+        int total = (negative ? 1 : 0) + leadingZeros + length + (decimals > 0 ? 1 : 0);
+
+        pad(out, width - total);
+        if (negative) {
+            out.append('-');
+        }
+        for (int i = 0; i < leadingZeros; i++) {
+            out.append('0');
+        }
+        if (units != 0) {
+            out.append(units);
+        }
+        for (int i = 0; i < trailingZeros; i++) {
+            out.append('0');
+        }
+        if (decimals > 0) {
+            out.insert(out.length() - decimals, '.');
+        }
+    }
+
+    /**
+     * Appends like String.format("%+03d", value).
+     */
+    static void appendSignedExponent(StringBuilder out, int value) {
+        long magnitude = Math.abs((long) value);
+        out.append(value < 0 ? '-' : '+');
+        if (magnitude < 10) {
+            out.append('0');
+        }
+        out.append(magnitude);
+    }
+
+    /**
+     * Math.pow(10, exponent), from a table for the exponents a double can reach.
+     */
+    static double pow10(int exponent) {
+        if (exponent < MIN_EXPONENT || exponent > MAX_EXPONENT) {
+            return Math.pow(10, exponent);
+        }
+        return POW_10[exponent - MIN_EXPONENT];
+    }
+
+    private static void pad(StringBuilder out, int spaces) {
+        for (int i = 0; i < spaces; i++) {
+            out.append(' ');
+        }
+    }
+
+    private static int stringSize(long value) {
+        int size = 1;
+        while (size < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[size]) {
+            size++;
+        }
+        return size;
+    }
+
+    private static boolean isPlainLocale(Locale locale) {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        return symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.' && symbols.getMinusSign() == '-';
+    }
+
+}
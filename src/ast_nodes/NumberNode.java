@@ -3,9 +3,11 @@ package ast_nodes;
 public class NumberNode implements ASTNode {
 
     private Number value;
+    private double doubleValue;
 
     public NumberNode(Number value) {
         this.value = value;
+        this.doubleValue = value.doubleValue();
     }
 
     public NumberNode(String value) throws NumberFormatException {
@@ -13,39 +15,105 @@ public class NumberNode implements ASTNode {
         this.value = switch (value) {
             case "e" -> Math.E;
             case "pi" -> Math.PI;
-            case "ans" -> VariableNode.variables.get("ans");
             default -> Double.parseDouble(value);
         };
+        this.doubleValue = this.value.doubleValue();
 
     }
 
     @Override
-    public Number evaluate() {
+    public Number evaluate(Bindings bindings) {
         return value;
     }
 
-    public static DECIMAL_MODE decimalMode = DECIMAL_MODE.REG;
+    @Override
+    public double evaluateDouble(Bindings bindings) {
+        return doubleValue;
+    }
 
-    public static String formatNumber(Number number) {
-        return switch(decimalMode) {
-            case DECIMAL_MODE.REG -> number.toString();
-            case DECIMAL_MODE.SCI -> String.format("%6.3f e", number.doubleValue());
-            case DECIMAL_MODE.ENG -> engNotation(number);
-            default -> number.toString();
-        };
+    @Override
+    public long evaluateLong(Bindings bindings) {
+        return value.longValue();
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return RESULT_TYPE.of(value);
+    }
+
+    public Number value() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value.toString();
+    }
+
+    public static String formatNumber(Number number, DECIMAL_MODE decimalMode) {
+        if (decimalMode == DECIMAL_MODE.REG) {
+            return number.toString();
+        }
+        StringBuilder out = new StringBuilder(24);
+        formatNumber(number, decimalMode, out);
+        return out.toString();
+    }
+
+    /**
+     * Appends the formatted number to out without creating a String or a Formatter.
+     */
+    public static void formatNumber(Number number, DECIMAL_MODE decimalMode, StringBuilder out) {
+        if (decimalMode != DECIMAL_MODE.REG && !NumberFormatter.SUPPORTED_LOCALE) {
+            out.append(decimalMode == DECIMAL_MODE.SCI ? String.format("%6.3f e", number.doubleValue()) : formatEng(number));
+            return;
+        }
+        switch (decimalMode) {
+            case REG -> appendPlain(number, out);
+            case SCI -> {
+                NumberFormatter.appendFixed(out, number.doubleValue(), 3, 6);
+                out.append(" e");
+            }
+            case ENG -> appendEng(number, out);
+        }
     }
 
     public enum DECIMAL_MODE {
         REG, SCI, ENG;
     }
 
-    private static String engNotation(Number number) {
+    private static void appendPlain(Number number, StringBuilder out) {
+        if (number instanceof Double value) {
+            out.append(value.doubleValue());
+        } else if (number instanceof Integer || number instanceof Long) {
+            out.append(number.longValue());
+        } else {
+            out.append(number);
+        }
+    }
+
+    private static void appendEng(Number number, StringBuilder out) {
+        if (number.doubleValue() == 0.0) {
+            out.append("0.000 E0");
+            return;
+        }
+        int exponent = engExponent(number);
+        double mantissa = number.doubleValue() / NumberFormatter.pow10(exponent);
+        NumberFormatter.appendFixed(out, mantissa, 3, 0);
+        out.append(" E");
+        NumberFormatter.appendSignedExponent(out, exponent);
+    }
+
+    private static String formatEng(Number number) {
         if (number.doubleValue() == 0.0) {
             return "0.000 E0";
         }
-        int exponent = (int)(Math.floor(Math.log10(Math.abs(number.doubleValue())) / 3) * 3);
+        int exponent = engExponent(number);
         double mantissa = number.doubleValue() / Math.pow(10, exponent);
         return String.format("%.3f E%+03d", mantissa, exponent);
     }
 
+    private static int engExponent(Number number) {
+        return (int)(Math.floor(Math.log10(Math.abs(number.doubleValue())) / 3) * 3);
+    }
+
 }
@@ -0,0 +1,146 @@
+package ast_nodes;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the results of {@link MemoNode}s, keyed on the node and the
+ * exact bits of the slot values it reads, so a result is reused across
+ * evaluations until one of the variables it depends on changes.
+ *
+ * Like the memo cache of user functions it is direct mapped: a lookup is a
+ * single table read, and a new result evicts whatever was in its slot. The
+ * table is final and its entries are immutable, so threads evaluating the same
+ * prepared expressions can share a cache without locking, and the counters are
+ * LongAdders.
+ */
+public final class ResultCache {
+
+    /**
+     * The capacity of the cache of a new context, set with -Dcalculator.resultCacheSize.
+     * 0, the default, leaves memoization off until EvaluationContext.setResultCacheSize.
+     */
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("calculator.resultCacheSize", 0);
+
+    private final int capacity;
+    private final Entry[] entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity Rounded up to a power of two.
+     */
+    public ResultCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The cache capacity must be positive.");
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.entries = new Entry[this.capacity];
+    }
+
+    double evaluateDouble(MemoNode memo, Bindings bindings) {
+        int index = index(memo, bindings);
+        Entry entry = entries[index];
+        if (entry != null && entry.node() == memo && entry.matches(memo.slots(), bindings)) {
+            hit(memo);
+            return Double.longBitsToDouble(entry.result());
+        }
+        miss(memo);
+        double value = memo.node().evaluateDouble(bindings);
+        store(index, memo, bindings, Double.doubleToRawLongBits(value));
+        return value;
+    }
+
+    long evaluateLong(MemoNode memo, Bindings bindings) {
+        int index = index(memo, bindings);
+        Entry entry = entries[index];
+        if (entry != null && entry.node() == memo && entry.matches(memo.slots(), bindings)) {
+            hit(memo);
+            return entry.result();
+        }
+        miss(memo);
+        long value = memo.node().evaluateLong(bindings);
+        store(index, memo, bindings, value);
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(entries, null);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Stats stats() {
+        int size = 0;
+        for (Entry entry : entries) {
+            if (entry != null) {
+                size++;
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size, capacity);
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size, int capacity) {
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+    }
+
+    private void hit(MemoNode memo) {
+        hits.increment();
+        memo.hits++;
+    }
+
+    private void miss(MemoNode memo) {
+        misses.increment();
+        memo.misses++;
+    }
+
+    private void store(int index, MemoNode memo, Bindings bindings, long result) {
+
+        int[] slots = memo.slots();
+        double[] inputs = new double[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            inputs[i] = bindings.get(slots[i]);
+        }
+
+        if (entries[index] != null) {
+            evictions.increment();
+        }
+        entries[index] = new Entry(memo, inputs, result);
+    }
+
+    private int index(MemoNode memo, Bindings bindings) {
+        long hash = memo.seed();
+        for (int slot : memo.slots()) {
+            // short values only differ in their high bits, which a multiply does not carry down
+            long bits = Double.doubleToLongBits(bindings.get(slot));
+            hash = (hash ^ bits ^ (bits >>> 32)) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+    }
+
+    /**
+     * @param result The long result, or the bits of the double result.
+     */
+    private record Entry(MemoNode node, double[] inputs, long result) {
+
+        boolean matches(int[] slots, Bindings bindings) {
+            for (int i = 0; i < slots.length; i++) {
+                if (Double.doubleToLongBits(inputs[i]) != Double.doubleToLongBits(bindings.get(slots[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
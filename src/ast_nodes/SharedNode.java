@@ -0,0 +1,67 @@
+package ast_nodes;
+
+import java.util.List;
+
+/**
+ * A pure subtree that occurs more than once in an expression. Every occurrence
+ * refers to the same SharedNode, whose value is computed once per evaluation
+ * (see {@link Bindings#evaluateShared}).
+ */
+public class SharedNode implements ASTNode {
+
+    private final int index;
+    private final ASTNode node;
+
+    /**
+     * @param index Distinct for each shared node in an expression, counting from 0.
+     */
+    public SharedNode(int index, ASTNode node) {
+        this.index = index;
+        this.node = node;
+    }
+
+    @Override
+    public double evaluateDouble(Bindings bindings) {
+        if (node.resultType().isIntegral()) {
+            return bindings.evaluateSharedLong(index, node);
+        }
+        return bindings.evaluateShared(index, node);
+    }
+
+    @Override
+    public long evaluateLong(Bindings bindings) {
+        if (node.resultType().isIntegral()) {
+            return bindings.evaluateSharedLong(index, node);
+        }
+        return (long) bindings.evaluateShared(index, node);
+    }
+
+    @Override
+    public double evaluateOverflowed(Bindings bindings) {
+        return bindings.evaluateSharedOverflowed(index, node);
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return node.resultType();
+    }
+
+    @Override
+    public List<ASTNode> children() {
+        return List.of(node);
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public ASTNode node() {
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + index + " " + node;
+    }
+
+}
@@ -0,0 +1,50 @@
+package ast_nodes;
+
+/**
+ * A variable whose value is looked up in the bindings every time it is evaluated,
+ * unlike VariableNode which captures the value when it is parsed.
+ */
+public class SlotNode implements ASTNode {
+
+    private final String name;
+    private final int slot;
+    private final RESULT_TYPE resultType;
+
+    public SlotNode(String name, int slot) {
+        this(name, slot, RESULT_TYPE.DOUBLE);
+    }
+
+    /**
+     * @param resultType The type of Number the bound value is boxed as. Bindings
+     *                   only hold doubles, so the value must be exact as a double.
+     */
+    public SlotNode(String name, int slot, RESULT_TYPE resultType) {
+        this.name = name;
+        this.slot = slot;
+        this.resultType = resultType;
+    }
+
+    @Override
+    public double evaluateDouble(Bindings bindings) {
+        return bindings.get(slot);
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return resultType;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int slot() {
+        return slot;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -1,48 +1,159 @@
 package ast_nodes;
 
-import java.util.function.UnaryOperator;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongUnaryOperator;
 
-public class UnaryOperatorNode implements ASTNode {
+import functions.Factorials;
+import functions.FastMath;
 
-    public static ANGLE_MODE angleMode = ANGLE_MODE.RAD;
+public class UnaryOperatorNode implements ASTNode {
 
     private String opToken;
-    private UnaryOperator<Number> operator;
+    private DoubleUnaryOperator operator;
+    private LongUnaryOperator longOperator;
+    private RESULT_TYPE resultType;
     private ASTNode operand;
+    private ANGLE_MODE angleMode;
+    private boolean decimalFactorial;
 
+    /**
+     * Trig operators created this way use radians.
+     */
     public UnaryOperatorNode(String opToken, ASTNode operand) {
+        this(opToken, operand, ANGLE_MODE.RAD);
+    }
+
+    /**
+     * @param angleMode The angle mode trig operators use, ignored by other operators.
+     */
+    public UnaryOperatorNode(String opToken, ASTNode operand, ANGLE_MODE angleMode) {
 
         if (operand == null) {
             throw new IllegalArgumentException();
         }
 
         this.opToken = opToken;
+        this.angleMode = isTrigonometric(opToken) ? angleMode : null;
+        this.resultType = RESULT_TYPE.DOUBLE;
+
+        boolean integral = operand.resultType().isIntegral();
 
         switch (opToken) {
-            case "-":       this.operator = x -> -x.doubleValue();                                      break;
-            case "sqrt":    this.operator = x -> Math.sqrt(x.doubleValue());                            break;
-            case "~":       this.operator = x -> ~x.intValue();                                         break;
-            case "!":       this.operator = x -> factorial(x.longValue());                              break;
-            case "sin":     this.operator = x -> Math.sin(x.doubleValue() * angleMode.conversion);      break;
-            case "cos":     this.operator = x -> Math.cos(x.doubleValue() * angleMode.conversion);      break;
-            case "tan":     this.operator = x -> Math.tan(x.doubleValue() * angleMode.conversion);      break;
+            case "-":       this.operator = x -> -x;                if (integral) this.longOperator = Math::negateExact;            break;
+            case "sqrt":    this.operator = x -> Math.sqrt(x);                                                                      break;
+            case "~":       this.longOperator = x -> ~x;                                                                            break;
+            case "!":       this.operator = Factorials::factorial; this.longOperator = Factorials::factorial;                          break;
+            case "sin":     this.operator = FastMath.ENABLED ? x -> FastMath.sin(x, angleMode) : x -> Math.sin(toRadians(x));     break;
+            case "cos":     this.operator = FastMath.ENABLED ? x -> FastMath.cos(x, angleMode) : x -> Math.cos(toRadians(x));     break;
+            case "tan":     this.operator = FastMath.ENABLED ? x -> FastMath.tan(x, angleMode) : x -> Math.tan(toRadians(x));     break;
             default:
                 throw new IllegalArgumentException("Unary operator " + opToken + " not supported.");
         }
 
+        if (longOperator != null) {
+            this.resultType = RESULT_TYPE.LONG;
+        }
+        this.decimalFactorial = opToken.equals("!") && !integral;
+
         this.operand = operand;
     }
 
     @Override
-    public Number evaluate() {
-        return operator.apply(operand.evaluate());
+    public double evaluateDouble(Bindings bindings) {
+        if (longOperator != null && !decimalFactorial) {
+            return evaluateLong(bindings);
+        }
+        return operator.applyAsDouble(operand.evaluateDouble(bindings));
+    }
+
+    @Override
+    public long evaluateLong(Bindings bindings) {
+        if (longOperator == null) {
+            return (long) evaluateDouble(bindings);
+        }
+        if (decimalFactorial) {
+            return Factorials.factorialExact(operand.evaluateDouble(bindings));
+        }
+        return longOperator.applyAsLong(operand.evaluateLong(bindings));
+    }
+
+    @Override
+    public double evaluateOverflowed(Bindings bindings) {
+        if (operator == null) {
+            return longOperator.applyAsLong((long) operand.evaluateOverflowed(bindings));
+        }
+        return operator.applyAsDouble(operand.evaluateOverflowed(bindings));
+    }
+
+    /**
+     * The factorial of a decimal is a Long for whole numbers up to 20 and a Double
+     * otherwise, found without going through the exception from evaluateLong.
+     * Only at the root: evaluateExact still throws, since a parent reading it
+     * as a long would compute the whole tree in double arithmetic.
+     */
+    @Override
+    public Number evaluate(Bindings bindings) {
+        if (!decimalFactorial) {
+            return ASTNode.super.evaluate(bindings);
+        }
+        double x;
+        try {
+            x = operand.evaluateDouble(bindings);
+        } catch (ArithmeticException e) {
+            bindings.startEvaluation();
+            return evaluateOverflowed(bindings);
+        }
+        if (x == Math.rint(x) && x <= Factorials.MAX_LONG_FACTORIAL) {
+            return Factorials.factorial((long) x);
+        }
+        return Factorials.factorial(x);
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return resultType;
+    }
+
+    @Override
+    public List<ASTNode> children() {
+        return List.of(operand);
+    }
+
+    public String opToken() {
+        return opToken;
+    }
+
+    public ASTNode operand() {
+        return operand;
+    }
+
+    /**
+     * The angle mode of a trig operator, null for other operators.
+     */
+    public ANGLE_MODE angleMode() {
+        return angleMode;
+    }
+
+    /**
+     * Whether this is the factorial of an operand that is not integral, which is
+     * integral itself only when the operand is a whole number, and is computed
+     * with gamma otherwise.
+     */
+    public boolean isDecimalFactorial() {
+        return decimalFactorial;
+    }
+
+    public boolean isTrigonometric() {
+        return isTrigonometric(opToken);
+    }
+
+    private static boolean isTrigonometric(String opToken) {
+        return opToken.equals("sin") || opToken.equals("cos") || opToken.equals("tan");
     }
 
-    private static long factorial(long n) {
-        if (n < 0) throw new IllegalArgumentException();
-        if (n == 0) return 1;
-        if (n == 1) return 1;
-        return n * factorial(n-1);
+    private double toRadians(double x) {
+        return x * angleMode.conversion;
     }
 
     @Override
@@ -50,11 +161,17 @@ public class UnaryOperatorNode implements ASTNode {
         return opToken + "\n\tOperand: " + operand;
     }
 
+    /**
+     * conversion is the size of the unit in radians, and quarterTurn the size of a
+     * right angle in the unit, or 0 for radians, where it is not a whole number.
+     */
     public enum ANGLE_MODE {
-        RAD(1), DEG(Math.PI / 180), GRAD(Math.PI / 200);
+        RAD(1, 0), DEG(Math.PI / 180, 90), GRAD(Math.PI / 200, 100);
         public final double conversion;
-        private ANGLE_MODE(double conversion) {
+        public final double quarterTurn;
+        private ANGLE_MODE(double conversion, double quarterTurn) {
             this.conversion = conversion;
+            this.quarterTurn = quarterTurn;
         }
     }
 
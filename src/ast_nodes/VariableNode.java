@@ -1,41 +1,52 @@
 package ast_nodes;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import parser.SyntaxException;
-
+/**
+ * A variable whose value was read from the evaluation context when it was parsed.
+ */
 public class VariableNode implements ASTNode {
 
-    public static final Map<String, Number> variables = new HashMap<>(Map.of("ans", 0));
-
+    private String name;
     private Number value;
+    private double doubleValue;
 
     /**
-     * Assigns the variable name to a value.
      * @param name The name of the variable.
      * @param value The value this variable holds.
      */
     public VariableNode(String name, Number value) {
+        this.name = name;
         this.value = value;
-        variables.put(name, value);
+        this.doubleValue = value.doubleValue();
     }
 
-    /**
-     * Retrieves the value of this variable.
-     * @param name The name of the variable.
-     * @throws SyntaxException if the variable has not been defined.
-     */
-    public VariableNode(String name) {
-        if (variables.containsKey(name)) {
-            this.value = variables.get(name);
-        } else {
-            throw new SyntaxException("The variable " + name + " is undefined.");
-        }
+    @Override
+    public Number evaluate(Bindings bindings) {
+        return value;
+    }
+
+    @Override
+    public double evaluateDouble(Bindings bindings) {
+        return doubleValue;
     }
 
     @Override
-    public Number evaluate() {
+    public long evaluateLong(Bindings bindings) {
+        return value.longValue();
+    }
+
+    @Override
+    public RESULT_TYPE resultType() {
+        return RESULT_TYPE.of(value);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * The value captured when this node was parsed.
+     */
+    public Number value() {
         return value;
     }
     
@@ -0,0 +1,413 @@
+package batch;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ast_nodes.ASTNode;
+import ast_nodes.BinaryOperatorNode;
+import ast_nodes.Bindings;
+import ast_nodes.FunctionNode;
+import ast_nodes.NumberNode;
+import ast_nodes.SharedNode;
+import ast_nodes.SlotNode;
+import ast_nodes.UnaryOperatorNode;
+import ast_nodes.VariableNode;
+import metrics.Metrics;
+import metrics.Metrics.PHASE;
+import parser.PreparedExpression;
+
+/**
+ * Evaluates a prepared expression over many rows at once. Each variable is given
+ * as a column of values, and each operator node is applied to a whole block of
+ * rows in a tight loop rather than walking the tree once per row.
+ * 
+ * The loops use the jdk.incubator.vector API when the JVM is started with
+ * --add-modules jdk.incubator.vector, and plain scalar loops otherwise. Either
+ * way the results are identical to calling evaluateDouble once per row.
+ * 
+ * Integral subtrees are evaluated into long columns with the long kernels, and
+ * only widened to doubles where a floating point operator reads them. A block
+ * in which an integer overflows is evaluated again a row at a time, from the
+ * root, like the tree does.
+ * 
+ * A BatchEvaluator reuses its buffers between calls, so it must not be shared between threads.
+ */
+public class BatchEvaluator {
+
+    static final int BLOCK_SIZE = 1024;
+
+    private static final ScalarKernels KERNELS = loadKernels();
+
+    private final PreparedExpression expression;
+    private final Deque<double[]> buffers = new ArrayDeque<>();
+    private final Deque<long[]> longBuffers = new ArrayDeque<>();
+    // the values of shared nodes for the current block
+    private final Map<SharedNode, double[]> sharedBlocks = new IdentityHashMap<>();
+    private final Map<SharedNode, long[]> sharedLongBlocks = new IdentityHashMap<>();
+
+    private double[][] columns;
+    private Bindings rowBindings;
+
+    public BatchEvaluator(PreparedExpression expression) {
+        this.expression = expression;
+    }
+
+    public static boolean isVectorized() {
+        return KERNELS instanceof VectorKernels;
+    }
+
+    /**
+     * @param columns The values of each variable, indexed by slot then row.
+     * @param out     Receives the result of each row, its length is the number of rows.
+     * @throws IllegalArgumentException if a column is missing or shorter than out.
+     */
+    public void evaluate(double[][] columns, double[] out) {
+
+        int variables = expression.variables().size();
+        if (columns.length != variables) {
+            throw new IllegalArgumentException("Expected " + variables + " columns, one per variable.");
+        }
+        for (int slot = 0; slot < variables; slot++) {
+            if (columns[slot] == null || columns[slot].length < out.length) {
+                throw new IllegalArgumentException("The column for " + expression.variables().get(slot) + " is shorter than the output.");
+            }
+        }
+
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        this.columns = columns;
+        try {
+            for (int row = 0; row < out.length; row += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, out.length - row);
+                double[] result;
+                try {
+                    result = evaluate(expression.ast(), row, length);
+                } catch (ArithmeticException e) {
+                    // an integer overflowed in a long kernel, so the rows of the block are walked from the root
+                    releaseShared();
+                    result = evaluateRoots(row, length);
+                }
+                System.arraycopy(result, 0, out, row, length);
+                release(result);
+                releaseShared();
+            }
+        } finally {
+            this.columns = null;
+            releaseShared();
+            if (Metrics.ENABLED) {
+                Metrics.record(PHASE.EVALUATE, start, null);
+            }
+        }
+    }
+
+    public static double[] evaluate(PreparedExpression expression, double[][] columns) {
+        double[] out = new double[columns.length == 0 ? 0 : columns[0].length];
+        new BatchEvaluator(expression).evaluate(columns, out);
+        return out;
+    }
+
+    private double[] evaluate(ASTNode node, int row, int length) {
+
+        if (node instanceof SlotNode slot) {
+            double[] buffer = acquire();
+            System.arraycopy(columns[slot.slot()], row, buffer, 0, length);
+            return buffer;
+        }
+
+        if (node instanceof NumberNode || node instanceof VariableNode) {
+            double[] buffer = acquire();
+            Arrays.fill(buffer, 0, length, node.evaluateDouble());
+            return buffer;
+        }
+
+        if (node instanceof UnaryOperatorNode unary && unary.isDecimalFactorial()) {
+            double[] values = evaluate(unary.operand(), row, length);
+            KERNELS.factorial(values, length);
+            return values;
+        }
+
+        if (node.resultType().isIntegral()) {
+            long[] values = evaluateLong(node, row, length);
+            double[] buffer = acquire();
+            KERNELS.toDouble(values, buffer, length);
+            release(values);
+            return buffer;
+        }
+
+        if (node instanceof BinaryOperatorNode binary) {
+            return evaluateBinary(binary, row, length);
+        }
+
+        if (node instanceof UnaryOperatorNode unary) {
+            return evaluateUnary(unary, row, length);
+        }
+
+        if (node instanceof FunctionNode call) {
+            return evaluateCall(call, row, length);
+        }
+
+        if (node instanceof SharedNode shared) {
+            // kernels work in place, so each use gets a copy
+            double[] values = sharedBlocks.get(shared);
+            if (values == null) {
+                values = evaluate(shared.node(), row, length);
+                sharedBlocks.put(shared, values);
+            }
+            double[] buffer = acquire();
+            System.arraycopy(values, 0, buffer, 0, length);
+            return buffer;
+        }
+
+        return evaluateRows(node, row, length);
+    }
+
+    private double[] evaluateBinary(BinaryOperatorNode node, int row, int length) {
+
+        double[] a = evaluate(node.left(), row, length);
+        double[] b = evaluate(node.right(), row, length);
+
+        switch (node.opToken()) {
+            case "+":   KERNELS.add(a, b, length);                                                          break;
+            case "-":   KERNELS.subtract(a, b, length);                                                     break;
+            case "*":   KERNELS.multiply(a, b, length);                                                     break;
+            case "/":   KERNELS.divide(a, b, length);                                                       break;
+            case "%":   KERNELS.remainder(a, b, length);                                                    break;
+            case "^":   KERNELS.pow(a, b, length);                                                          break;
+            case "E":   KERNELS.scientific(a, b, length);                                                   break;
+            default:
+                release(b);
+                release(a);
+                return evaluateRows(node, row, length);
+        }
+
+        release(b);
+        return a;
+    }
+
+    private double[] evaluateUnary(UnaryOperatorNode node, int row, int length) {
+
+        double[] a = evaluate(node.operand(), row, length);
+
+        switch (node.opToken()) {
+            case "-":       KERNELS.negate(a, length);                                  break;
+            case "sqrt":    KERNELS.sqrt(a, length);                                    break;
+            case "sin":     KERNELS.sin(a, length, node.angleMode());                   break;
+            case "cos":     KERNELS.cos(a, length, node.angleMode());                   break;
+            case "tan":     KERNELS.tan(a, length, node.angleMode());                   break;
+            default:
+                release(a);
+                return evaluateRows(node, row, length);
+        }
+
+        return a;
+    }
+
+    /**
+     * Evaluates a block of the node as longs, the way evaluateLong does.
+     */
+    private long[] evaluateLong(ASTNode node, int row, int length) {
+
+        if (!node.resultType().isIntegral() || node instanceof SlotNode) {
+            double[] values = evaluate(node, row, length);
+            long[] buffer = acquireLong();
+            KERNELS.toLong(values, buffer, length);
+            release(values);
+            return buffer;
+        }
+
+        if (node instanceof NumberNode || node instanceof VariableNode) {
+            long[] buffer = acquireLong();
+            Arrays.fill(buffer, 0, length, node.evaluateLong(Bindings.EMPTY));
+            return buffer;
+        }
+
+        if (node instanceof BinaryOperatorNode binary) {
+            return evaluateBinaryLong(binary, row, length);
+        }
+
+        if (node instanceof UnaryOperatorNode unary) {
+            return evaluateUnaryLong(unary, row, length);
+        }
+
+        if (node instanceof SharedNode shared) {
+            long[] values = sharedLongBlocks.get(shared);
+            if (values == null) {
+                values = evaluateLong(shared.node(), row, length);
+                sharedLongBlocks.put(shared, values);
+            }
+            long[] buffer = acquireLong();
+            System.arraycopy(values, 0, buffer, 0, length);
+            return buffer;
+        }
+
+        return evaluateRowsLong(node, row, length);
+    }
+
+    private long[] evaluateBinaryLong(BinaryOperatorNode node, int row, int length) {
+
+        long[] a = evaluateLong(node.left(), row, length);
+        long[] b = evaluateLong(node.right(), row, length);
+
+        switch (node.opToken()) {
+            case "+":   KERNELS.add(a, b, length);          break;
+            case "-":   KERNELS.subtract(a, b, length);     break;
+            case "*":   KERNELS.multiply(a, b, length);     break;
+            case "<<":  KERNELS.shiftLeft(a, b, length);    break;
+            case ">>":  KERNELS.shiftRight(a, b, length);   break;
+            case "&":   KERNELS.and(a, b, length);          break;
+            case "|":   KERNELS.or(a, b, length);           break;
+            default:
+                release(b);
+                release(a);
+                return evaluateRowsLong(node, row, length);
+        }
+
+        release(b);
+        return a;
+    }
+
+    private long[] evaluateUnaryLong(UnaryOperatorNode node, int row, int length) {
+
+        if (node.isDecimalFactorial()) {
+            double[] values = evaluate(node.operand(), row, length);
+            long[] buffer = acquireLong();
+            KERNELS.factorialExact(values, buffer, length);
+            release(values);
+            return buffer;
+        }
+
+        long[] a = evaluateLong(node.operand(), row, length);
+
+        switch (node.opToken()) {
+            case "-":   KERNELS.negate(a, length);      break;
+            case "~":   KERNELS.not(a, length);         break;
+            case "!":   KERNELS.factorial(a, length);   break;
+            default:
+                release(a);
+                return evaluateRowsLong(node, row, length);
+        }
+
+        return a;
+    }
+
+    /**
+     * The arguments are evaluated a block at a time, then the function is applied once per row.
+     */
+    private double[] evaluateCall(FunctionNode node, int row, int length) {
+
+        List<ASTNode> argumentNodes = node.children();
+        double[][] arguments = new double[argumentNodes.size()][];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = evaluate(argumentNodes.get(i), row, length);
+        }
+
+        double[] buffer = acquire();
+        double[] values = new double[arguments.length];
+        for (int i = 0; i < length; i++) {
+            for (int argument = 0; argument < arguments.length; argument++) {
+                values[argument] = arguments[argument][i];
+            }
+            buffer[i] = node.function().apply(values);
+        }
+
+        for (double[] argument : arguments) {
+            release(argument);
+        }
+        return buffer;
+    }
+
+    /**
+     * Fallback for nodes without a kernel: walks the node once per row.
+     */
+    private double[] evaluateRows(ASTNode node, int row, int length) {
+        bindRows();
+        double[] buffer = acquire();
+        for (int i = 0; i < length; i++) {
+            bindRow(row + i);
+            buffer[i] = node.evaluateDouble(rowBindings);
+        }
+        return buffer;
+    }
+
+    /**
+     * Walks the whole tree once per row with {@link ASTNode#evaluateRoot}, which
+     * computes a row in which an integer overflows in double arithmetic.
+     */
+    private double[] evaluateRoots(int row, int length) {
+        bindRows();
+        ASTNode root = expression.ast();
+        double[] buffer = acquire();
+        for (int i = 0; i < length; i++) {
+            bindRow(row + i);
+            buffer[i] = root.evaluateRoot(rowBindings);
+        }
+        return buffer;
+    }
+
+    private void bindRows() {
+        if (rowBindings == null) {
+            rowBindings = new Bindings(expression.variables().toArray(new String[0]));
+        }
+    }
+
+    private void bindRow(int row) {
+        for (int slot = 0; slot < columns.length; slot++) {
+            rowBindings.set(slot, columns[slot][row]);
+        }
+        rowBindings.startEvaluation();
+    }
+
+    private long[] evaluateRowsLong(ASTNode node, int row, int length) {
+        bindRows();
+        long[] buffer = acquireLong();
+        for (int i = 0; i < length; i++) {
+            bindRow(row + i);
+            buffer[i] = node.evaluateLong(rowBindings);
+        }
+        return buffer;
+    }
+
+    private void releaseShared() {
+        for (double[] values : sharedBlocks.values()) {
+            release(values);
+        }
+        sharedBlocks.clear();
+        for (long[] values : sharedLongBlocks.values()) {
+            release(values);
+        }
+        sharedLongBlocks.clear();
+    }
+
+    private double[] acquire() {
+        double[] buffer = buffers.poll();
+        return buffer != null ? buffer : new double[BLOCK_SIZE];
+    }
+
+    private void release(double[] buffer) {
+        buffers.push(buffer);
+    }
+
+    private long[] acquireLong() {
+        long[] buffer = longBuffers.poll();
+        return buffer != null ? buffer : new long[BLOCK_SIZE];
+    }
+
+    private void release(long[] buffer) {
+        longBuffers.push(buffer);
+    }
+
+    private static ScalarKernels loadKernels() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (ScalarKernels) Class.forName("batch.VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // fall back to the scalar loops
+            }
+        }
+        return new ScalarKernels();
+    }
+
+}
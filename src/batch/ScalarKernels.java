@@ -0,0 +1,142 @@
+package batch;
+
+import ast_nodes.BinaryOperatorNode;
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import functions.Factorials;
+import functions.FastMath;
+
+/**
+ * Column kernels for each operator. Binary kernels write their result over the
+ * left column and unary kernels over their operand. Every kernel performs the same
+ * double or long operations as the tree walk, so results are identical to
+ * evaluateDouble and evaluateLong. Like evaluateLong, the long +, -, * and
+ * factorial kernels throw ArithmeticException where the result is not a long,
+ * and the block is evaluated again by walking the tree from the root, which
+ * computes a row that overflows in double arithmetic.
+ */
+class ScalarKernels {
+
+    void add(double[] a, double[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = a[i] + b[i];
+    }
+
+    void subtract(double[] a, double[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = a[i] - b[i];
+    }
+
+    void multiply(double[] a, double[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = a[i] * b[i];
+    }
+
+    void divide(double[] a, double[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = a[i] / b[i];
+    }
+
+    void remainder(double[] a, double[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = a[i] % b[i];
+    }
+
+    void pow(double[] a, double[] b, int length) {
+        if (FastMath.ENABLED) {
+            for (int i = 0; i < length; i++) a[i] = FastMath.pow(a[i], b[i]);
+            return;
+        }
+        for (int i = 0; i < length; i++) a[i] = Math.pow(a[i], b[i]);
+    }
+
+    void scientific(double[] a, double[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = BinaryOperatorNode.scientific(a[i], b[i]);
+    }
+
+    void negate(double[] a, int length) {
+        for (int i = 0; i < length; i++) a[i] = -a[i];
+    }
+
+    void factorial(double[] a, int length) {
+        for (int i = 0; i < length; i++) a[i] = Factorials.factorial(a[i]);
+    }
+
+    void sqrt(double[] a, int length) {
+        for (int i = 0; i < length; i++) a[i] = Math.sqrt(a[i]);
+    }
+
+    void sin(double[] a, int length, ANGLE_MODE angleMode) {
+        if (FastMath.ENABLED) {
+            for (int i = 0; i < length; i++) a[i] = FastMath.sin(a[i], angleMode);
+            return;
+        }
+        double conversion = angleMode.conversion;
+        for (int i = 0; i < length; i++) a[i] = Math.sin(a[i] * conversion);
+    }
+
+    void cos(double[] a, int length, ANGLE_MODE angleMode) {
+        if (FastMath.ENABLED) {
+            for (int i = 0; i < length; i++) a[i] = FastMath.cos(a[i], angleMode);
+            return;
+        }
+        double conversion = angleMode.conversion;
+        for (int i = 0; i < length; i++) a[i] = Math.cos(a[i] * conversion);
+    }
+
+    void tan(double[] a, int length, ANGLE_MODE angleMode) {
+        if (FastMath.ENABLED) {
+            for (int i = 0; i < length; i++) a[i] = FastMath.tan(a[i], angleMode);
+            return;
+        }
+        double conversion = angleMode.conversion;
+        for (int i = 0; i < length; i++) a[i] = Math.tan(a[i] * conversion);
+    }
+
+    void add(long[] a, long[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = Math.addExact(a[i], b[i]);
+    }
+
+    void subtract(long[] a, long[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = Math.subtractExact(a[i], b[i]);
+    }
+
+    void multiply(long[] a, long[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = Math.multiplyExact(a[i], b[i]);
+    }
+
+    void shiftLeft(long[] a, long[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = a[i] << b[i];
+    }
+
+    void shiftRight(long[] a, long[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = a[i] >> b[i];
+    }
+
+    void and(long[] a, long[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = a[i] & b[i];
+    }
+
+    void or(long[] a, long[] b, int length) {
+        for (int i = 0; i < length; i++) a[i] = a[i] | b[i];
+    }
+
+    void negate(long[] a, int length) {
+        for (int i = 0; i < length; i++) a[i] = Math.negateExact(a[i]);
+    }
+
+    void not(long[] a, int length) {
+        for (int i = 0; i < length; i++) a[i] = ~a[i];
+    }
+
+    void factorial(long[] a, int length) {
+        for (int i = 0; i < length; i++) a[i] = Factorials.factorial(a[i]);
+    }
+
+    void factorialExact(double[] from, long[] to, int length) {
+        for (int i = 0; i < length; i++) to[i] = Factorials.factorialExact(from[i]);
+    }
+
+    void toLong(double[] from, long[] to, int length) {
+        for (int i = 0; i < length; i++) to[i] = (long) from[i];
+    }
+
+    void toDouble(long[] from, double[] to, int length) {
+        for (int i = 0; i < length; i++) to[i] = from[i];
+    }
+
+}
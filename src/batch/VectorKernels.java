@@ -0,0 +1,117 @@
+package batch;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vectorizes the kernels whose lanewise operations are exactly rounded, and so
+ * give the same results as the scalar loops. The rest fall back to ScalarKernels.
+ * Only loaded when the jdk.incubator.vector module is available.
+ */
+class VectorKernels extends ScalarKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONG_SPECIES = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    void add(double[] a, double[] b, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = a[i] + b[i];
+    }
+
+    @Override
+    void subtract(double[] a, double[] b, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = a[i] - b[i];
+    }
+
+    @Override
+    void multiply(double[] a, double[] b, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = a[i] * b[i];
+    }
+
+    @Override
+    void divide(double[] a, double[] b, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).div(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = a[i] / b[i];
+    }
+
+    @Override
+    void negate(double[] a, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).neg().intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = -a[i];
+    }
+
+    @Override
+    void sqrt(double[] a, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).sqrt().intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = Math.sqrt(a[i]);
+    }
+
+    @Override
+    void shiftLeft(long[] a, long[] b, int length) {
+        int i = 0;
+        for (int bound = LONG_SPECIES.loopBound(length); i < bound; i += LONG_SPECIES.length()) {
+            LongVector.fromArray(LONG_SPECIES, a, i).lanewise(VectorOperators.LSHL, LongVector.fromArray(LONG_SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = a[i] << b[i];
+    }
+
+    @Override
+    void shiftRight(long[] a, long[] b, int length) {
+        int i = 0;
+        for (int bound = LONG_SPECIES.loopBound(length); i < bound; i += LONG_SPECIES.length()) {
+            LongVector.fromArray(LONG_SPECIES, a, i).lanewise(VectorOperators.ASHR, LongVector.fromArray(LONG_SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = a[i] >> b[i];
+    }
+
+    @Override
+    void and(long[] a, long[] b, int length) {
+        int i = 0;
+        for (int bound = LONG_SPECIES.loopBound(length); i < bound; i += LONG_SPECIES.length()) {
+            LongVector.fromArray(LONG_SPECIES, a, i).and(LongVector.fromArray(LONG_SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = a[i] & b[i];
+    }
+
+    @Override
+    void or(long[] a, long[] b, int length) {
+        int i = 0;
+        for (int bound = LONG_SPECIES.loopBound(length); i < bound; i += LONG_SPECIES.length()) {
+            LongVector.fromArray(LONG_SPECIES, a, i).or(LongVector.fromArray(LONG_SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = a[i] | b[i];
+    }
+
+    @Override
+    void not(long[] a, int length) {
+        int i = 0;
+        for (int bound = LONG_SPECIES.loopBound(length); i < bound; i += LONG_SPECIES.length()) {
+            LongVector.fromArray(LONG_SPECIES, a, i).not().intoArray(a, i);
+        }
+        for (; i < length; i++) a[i] = ~a[i];
+    }
+
+}
@@ -0,0 +1,275 @@
+package compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Just enough of the class file format to write a final class with a no-arg
+ * constructor that implements the methods of an interface. The generated code
+ * never branches, so no StackMapTable is needed.
+ */
+class ClassWriter {
+
+    static final int ICONST_0 = 0x03;
+    static final int LCONST_0 = 0x09;
+    static final int LCONST_1 = 0x0a;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int LLOAD = 0x16;
+    static final int DLOAD = 0x18;
+    static final int ALOAD_0 = 0x2a;
+    static final int ALOAD_1 = 0x2b;
+    static final int DALOAD = 0x31;
+    static final int LSTORE = 0x37;
+    static final int DSTORE = 0x39;
+    static final int DUP2 = 0x5c;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DREM = 0x73;
+    static final int DNEG = 0x77;
+    static final int LSHL = 0x79;
+    static final int LSHR = 0x7b;
+    static final int LAND = 0x7f;
+    static final int LOR = 0x81;
+    static final int LXOR = 0x83;
+    static final int L2I = 0x88;
+    static final int L2D = 0x8a;
+    static final int D2L = 0x8f;
+    static final int LRETURN = 0xad;
+    static final int DRETURN = 0xaf;
+    static final int RETURN = 0xb1;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int WIDE = 0xc4;
+
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private static final int JAVA_21 = 65;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantPoolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int interfaceClass;
+
+    ClassWriter(String className, String interfaceName) {
+        this.thisClass = classConstant(className);
+        this.superClass = classConstant("java/lang/Object");
+        this.interfaceClass = classConstant(interfaceName);
+    }
+
+    /**
+     * Writes the class file, with a constructor and the given public methods.
+     */
+    byte[] toByteArray(Method... methods) {
+        try {
+            Code constructor = new Code();
+            constructor.op(ALOAD_0, 1);
+            constructor.op(INVOKESPECIAL, -1);
+            constructor.u2(methodConstant("java/lang/Object", "<init>", "()V"));
+            constructor.op(RETURN, 0);
+
+            int constructorName = utf8("<init>");
+            int constructorDescriptor = utf8("()V");
+            int[] names = new int[methods.length];
+            int[] descriptors = new int[methods.length];
+            for (int i = 0; i < methods.length; i++) {
+                names[i] = utf8(methods[i].name());
+                descriptors[i] = utf8(methods[i].descriptor());
+            }
+            int codeAttribute = utf8("Code");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(JAVA_21);
+            out.writeShort(constantPoolCount);
+            constantPoolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0); // fields
+            out.writeShort(1 + methods.length);
+            writeMethod(out, constructorName, constructorDescriptor, codeAttribute, constructor, 1);
+            for (int i = 0; i < methods.length; i++) {
+                writeMethod(out, names[i], descriptors[i], codeAttribute, methods[i].code(), 2);
+            }
+            out.writeShort(0); // attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int doubleConstant(double value) {
+        return constant("D:" + Double.doubleToRawLongBits(value), out -> {
+            out.writeByte(6);
+            out.writeDouble(value);
+        }, 2);
+    }
+
+    int longConstant(long value) {
+        return constant("J:" + value, out -> {
+            out.writeByte(5);
+            out.writeLong(value);
+        }, 2);
+    }
+
+    int intConstant(int value) {
+        return constant("I:" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        }, 1);
+    }
+
+    int methodConstant(String owner, String name, String descriptor) {
+        int ownerIndex = classConstant(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return constant("M:" + owner + "." + name + descriptor, out -> {
+            out.writeByte(10);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private int classConstant(String internalName) {
+        int name = utf8(internalName);
+        return constant("C:" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        }, 1);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return constant("NT:" + name + ":" + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        }, 1);
+    }
+
+    private int utf8(String value) {
+        return constant("U:" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        }, 1);
+    }
+
+    private int constant(String key, ConstantWriter writer, int slots) {
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            writer.write(constantPool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int newIndex = constantPoolCount;
+        constantPoolCount += slots;
+        if (constantPoolCount > 0xFFFF) {
+            throw new UnsupportedOperationException("Too many constants to compile.");
+        }
+        constants.put(key, newIndex);
+        return newIndex;
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute, Code code, int maxLocals) throws IOException {
+        byte[] bytecode = code.bytes.toByteArray();
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + bytecode.length);
+        out.writeShort(code.maxStack);
+        out.writeShort(Math.max(maxLocals, code.maxLocals));
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    /**
+     * A public method taking `this` and one reference argument.
+     */
+    record Method(String name, String descriptor, Code code) {}
+
+    @FunctionalInterface
+    private interface ConstantWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * The body of a method, tracking the operand stack depth as instructions are added.
+     */
+    static class Code {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+
+        /**
+         * @param stackChange How many words the instruction pushes (or pops, if negative).
+         */
+        void op(int opcode, int stackChange) {
+            bytes.write(opcode);
+            stack += stackChange;
+            maxStack = Math.max(maxStack, stack);
+            if (bytes.size() > MAX_CODE_LENGTH || maxStack > 0xFFFF) {
+                throw new UnsupportedOperationException("Expression too large to compile.");
+            }
+        }
+
+        /**
+         * A load or store of the double or long in the given local and the one after it.
+         */
+        void local(int opcode, int local, int stackChange) {
+            if (local + 2 > 0xFFFF) {
+                throw new UnsupportedOperationException("Expression too large to compile.");
+            }
+            if (local > 0xFF) {
+                op(WIDE, 0);
+                op(opcode, stackChange);
+                u2(local);
+            } else {
+                op(opcode, stackChange);
+                u1(local);
+            }
+            maxLocals = Math.max(maxLocals, local + 2);
+        }
+
+        void u1(int value) {
+            bytes.write(value);
+        }
+
+        void u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+    }
+
+}
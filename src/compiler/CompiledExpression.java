@@ -0,0 +1,21 @@
+package compiler;
+
+/**
+ * An expression compiled to bytecode by {@link ExpressionCompiler}.
+ */
+@FunctionalInterface
+public interface CompiledExpression {
+
+    /**
+     * @param vars The value of each variable slot, indexed by slot.
+     */
+    double eval(double[] vars);
+
+    /**
+     * The value of an integral expression, computed without rounding to a double.
+     */
+    default long evalLong(double[] vars) {
+        return (long) eval(vars);
+    }
+
+}
@@ -0,0 +1,315 @@
+package compiler;
+
+import static compiler.ClassWriter.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+import ast_nodes.ASTNode;
+import ast_nodes.BinaryOperatorNode;
+import ast_nodes.Bindings;
+import ast_nodes.NumberNode;
+import ast_nodes.SharedNode;
+import ast_nodes.SlotNode;
+import ast_nodes.UnaryOperatorNode;
+import ast_nodes.VariableNode;
+import functions.FastMath;
+
+/**
+ * Compiles a tree into a hidden class whose eval method computes the same
+ * double as {@link ASTNode#evaluateDouble}, as straight line bytecode with no
+ * virtual calls. A shared subtree is computed the first time it is used and
+ * kept in a local variable for the rest. Integral subtrees are computed with
+ * long instructions, and an integral expression also gets an evalLong method
+ * whose result is not rounded to a double. Integral +, - and * throw
+ * ArithmeticException on overflow, like the tree does, and the caller computes
+ * the whole tree with {@link ASTNode#evaluateOverflowed} instead. Hidden classes are not strongly
+ * reachable from their class loader, so a compiled expression is unloaded once
+ * it is no longer referenced.
+ */
+public class ExpressionCompiler {
+
+    private static final String CLASS_NAME = "compiler/GeneratedExpression";
+    private static final String INTERFACE_NAME = "compiler/CompiledExpression";
+    private static final String BINARY_OPERATOR_NODE = "ast_nodes/BinaryOperatorNode";
+    private static final String FACTORIALS = "functions/Factorials";
+    private static final String FAST_MATH = "functions/FastMath";
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final ClassWriter writer;
+    private final ClassWriter.Code code;
+    // shared node -> the local holding its value, after `this` and the slot array
+    private final Map<SharedNode, Integer> locals = new HashMap<>();
+    private int nextLocal = 2;
+
+    private ExpressionCompiler(ClassWriter writer) {
+        this.writer = writer;
+        this.code = new ClassWriter.Code();
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the tree contains a node that cannot be
+     *                                       compiled, is too large for a single method,
+     *                                       or the class cannot be defined in this package.
+     */
+    public static CompiledExpression compile(ASTNode ast) throws UnsupportedOperationException {
+
+        ClassWriter writer = new ClassWriter(CLASS_NAME, INTERFACE_NAME);
+
+        ExpressionCompiler eval = new ExpressionCompiler(writer);
+        eval.emit(ast);
+        eval.code.op(DRETURN, -2);
+        ClassWriter.Method evalMethod = new ClassWriter.Method("eval", "([D)D", eval.code);
+
+        byte[] bytes;
+        if (ast.resultType().isIntegral()) {
+            ExpressionCompiler evalLong = new ExpressionCompiler(writer);
+            evalLong.emitLong(ast);
+            evalLong.code.op(LRETURN, -2);
+            bytes = writer.toByteArray(evalMethod, new ClassWriter.Method("evalLong", "([D)J", evalLong.code));
+        } else {
+            bytes = writer.toByteArray(evalMethod);
+        }
+
+        MethodHandles.Lookup lookup;
+        try {
+            lookup = LOOKUP.defineHiddenClass(bytes, true);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Cannot define the compiled class.", e);
+        }
+        try {
+            return (CompiledExpression) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            // the class was generated with a public no argument constructor
+            throw new IllegalStateException("Could not construct the compiled expression.", e);
+        }
+    }
+
+    private void emit(ASTNode node) {
+        if (node instanceof NumberNode || node instanceof VariableNode) {
+            pushDouble(node.evaluateDouble());
+        } else if (node instanceof SlotNode slot) {
+            code.op(ALOAD_1, 1);
+            pushInt(slot.slot());
+            code.op(DALOAD, 0);
+        } else if (node instanceof UnaryOperatorNode unary && unary.isDecimalFactorial()) {
+            emit(unary.operand());
+            invokeStatic(FACTORIALS, "factorial", "(D)D", 0);
+        } else if (node.resultType().isIntegral()) {
+            emitLong(node);
+            code.op(L2D, 0);
+        } else if (node instanceof BinaryOperatorNode binary) {
+            emitBinary(binary);
+        } else if (node instanceof UnaryOperatorNode unary) {
+            emitUnary(unary);
+        } else if (node instanceof SharedNode shared) {
+            emitShared(shared);
+        } else {
+            throw new UnsupportedOperationException("Cannot compile " + node.getClass().getSimpleName() + ".");
+        }
+    }
+
+    /**
+     * Pushes the node's value as a long, computed the way {@link ASTNode#evaluateLong} does.
+     */
+    private void emitLong(ASTNode node) {
+        if (!node.resultType().isIntegral()) {
+            emit(node);
+            code.op(D2L, 0);
+        } else if (node instanceof NumberNode || node instanceof VariableNode) {
+            pushLong(node.evaluateLong(Bindings.EMPTY));
+        } else if (node instanceof SlotNode) {
+            emit(node);
+            code.op(D2L, 0);
+        } else if (node instanceof BinaryOperatorNode binary) {
+            emitBinaryLong(binary);
+        } else if (node instanceof UnaryOperatorNode unary) {
+            emitUnaryLong(unary);
+        } else if (node instanceof SharedNode shared) {
+            emitSharedLong(shared);
+        } else {
+            throw new UnsupportedOperationException("Cannot compile " + node.getClass().getSimpleName() + ".");
+        }
+    }
+
+    private void emitSharedLong(SharedNode node) {
+        Integer local = locals.get(node);
+        if (local != null) {
+            code.local(LLOAD, local, 2);
+            return;
+        }
+        emitLong(node.node());
+        code.op(DUP2, 2);
+        code.local(LSTORE, nextLocal, -2);
+        locals.put(node, nextLocal);
+        nextLocal += 2;
+    }
+
+    private void emitShared(SharedNode node) {
+        Integer local = locals.get(node);
+        if (local != null) {
+            code.local(DLOAD, local, 2);
+            return;
+        }
+        emit(node.node());
+        code.op(DUP2, 2);
+        code.local(DSTORE, nextLocal, -2);
+        locals.put(node, nextLocal);
+        nextLocal += 2;
+    }
+
+    private void emitBinary(BinaryOperatorNode node) {
+        switch (node.opToken()) {
+            case "+":   emitArithmetic(node, DADD);     break;
+            case "-":   emitArithmetic(node, DSUB);     break;
+            case "*":   emitArithmetic(node, DMUL);     break;
+            case "/":   emitArithmetic(node, DDIV);     break;
+            case "%":   emitArithmetic(node, DREM);     break;
+            case "^":
+                emit(node.left());
+                emit(node.right());
+                if (FastMath.ENABLED) {
+                    invokeStatic(FAST_MATH, "pow", "(DD)D", -2);
+                } else {
+                    invokeMath("pow", "(DD)D", -2);
+                }
+                break;
+            case "E":
+                emit(node.left());
+                emit(node.right());
+                invokeStatic(BINARY_OPERATOR_NODE, "scientific", "(DD)D", -2);
+                break;
+            default:
+                throw new UnsupportedOperationException("Cannot compile binary operator " + node.opToken() + ".");
+        }
+    }
+
+    private void emitUnary(UnaryOperatorNode node) {
+        switch (node.opToken()) {
+            case "-":
+                emit(node.operand());
+                code.op(DNEG, 0);
+                break;
+            case "sqrt":
+                emit(node.operand());
+                invokeMath("sqrt", "(D)D", 0);
+                break;
+            case "sin":
+            case "cos":
+            case "tan":
+                emit(node.operand());
+                if (FastMath.ENABLED) {
+                    pushDouble(node.angleMode().quarterTurn);
+                    emitAngleConversion(node);
+                    invokeStatic(FAST_MATH, node.opToken(), "(DDD)D", -4);
+                    break;
+                }
+                emitAngleConversion(node);
+                code.op(DMUL, -2);
+                invokeMath(node.opToken(), "(D)D", 0);
+                break;
+            default:
+                throw new UnsupportedOperationException("Cannot compile unary operator " + node.opToken() + ".");
+        }
+    }
+
+    private void emitArithmetic(BinaryOperatorNode node, int opcode) {
+        emit(node.left());
+        emit(node.right());
+        code.op(opcode, -2);
+    }
+
+    private void emitBinaryLong(BinaryOperatorNode node) {
+        emitLong(node.left());
+        emitLong(node.right());
+        switch (node.opToken()) {
+            case "+":   invokeMath("addExact", "(JJ)J", -2);                            break;
+            case "-":   invokeMath("subtractExact", "(JJ)J", -2);                       break;
+            case "*":   invokeMath("multiplyExact", "(JJ)J", -2);                       break;
+            case "&":   code.op(LAND, -2);                                              break;
+            case "|":   code.op(LOR, -2);                                               break;
+            case "<<":
+                code.op(L2I, -1);
+                code.op(LSHL, -1);
+                break;
+            case ">>":
+                code.op(L2I, -1);
+                code.op(LSHR, -1);
+                break;
+            default:
+                throw new UnsupportedOperationException("Cannot compile binary operator " + node.opToken() + ".");
+        }
+    }
+
+    private void emitUnaryLong(UnaryOperatorNode node) {
+        if (node.isDecimalFactorial()) {
+            emit(node.operand());
+            invokeStatic(FACTORIALS, "factorialExact", "(D)J", 0);
+            return;
+        }
+        emitLong(node.operand());
+        switch (node.opToken()) {
+            case "-":   invokeMath("negateExact", "(J)J", 0);                           break;
+            case "!":   invokeStatic(FACTORIALS, "factorial", "(J)J", 0);                break;
+            case "~":
+                pushLong(-1);
+                code.op(LXOR, -2);
+                break;
+            default:
+                throw new UnsupportedOperationException("Cannot compile unary operator " + node.opToken() + ".");
+        }
+    }
+
+    private void emitAngleConversion(UnaryOperatorNode node) {
+        pushDouble(node.angleMode().conversion);
+    }
+
+    private void invokeMath(String name, String descriptor, int stackChange) {
+        invokeStatic("java/lang/Math", name, descriptor, stackChange);
+    }
+
+    private void invokeStatic(String owner, String name, String descriptor, int stackChange) {
+        code.op(INVOKESTATIC, stackChange);
+        code.u2(writer.methodConstant(owner, name, descriptor));
+    }
+
+    private void pushDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if (bits == 0L) {
+            code.op(DCONST_0, 2);
+        } else if (value == 1.0) {
+            code.op(DCONST_1, 2);
+        } else {
+            code.op(LDC2_W, 2);
+            code.u2(writer.doubleConstant(value));
+        }
+    }
+
+    private void pushLong(long value) {
+        if (value == 0L || value == 1L) {
+            code.op(LCONST_0 + (int) value, 2);
+        } else {
+            code.op(LDC2_W, 2);
+            code.u2(writer.longConstant(value));
+        }
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.op(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.op(BIPUSH, 1);
+            code.u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.op(SIPUSH, 1);
+            code.u2(value);
+        } else {
+            code.op(LDC_W, 1);
+            code.u2(writer.intConstant(value));
+        }
+    }
+
+}
@@ -0,0 +1,12 @@
+package functions;
+
+import java.util.function.ToDoubleFunction;
+
+public record BuiltInFunction(String name, int minArity, int maxArity, boolean isPure, ToDoubleFunction<double[]> body) implements MathFunction {
+
+    @Override
+    public double apply(double[] arguments) {
+        return body.applyAsDouble(arguments);
+    }
+
+}
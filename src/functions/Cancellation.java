@@ -0,0 +1,24 @@
+package functions;
+
+import parser.SyntaxException;
+
+/**
+ * Evaluation checks whether its thread has been interrupted at each step that
+ * can add up to a long time: reducing an operator while parsing, calling a
+ * function, multiplying out a large factorial and recomputing a formula. This is
+ * how the evaluation server stops a line that runs out of time.
+ */
+public final class Cancellation {
+
+    private Cancellation() {}
+
+    /**
+     * @throws SyntaxException if the current thread has been interrupted.
+     */
+    public static void check() throws SyntaxException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new SyntaxException("The evaluation was interrupted.");
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+package functions;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+
+import parser.SyntaxException;
+
+/**
+ * Factorials, binomial coefficients and the gamma function.
+ *
+ * Every factorial that fits in a long is precomputed, as is Pascal's triangle
+ * up to n = 66, the last row that fits in a long. Larger factorials are computed
+ * exactly as BigIntegers by binary splitting, and remembered up to MEMO_LIMIT.
+ * Gamma uses the Lanczos approximation, which is accurate to about 14
+ * significant digits, and is exact for the integers whose factorial fits in a long.
+ * The factorial of a double is exact, then correctly rounded, for whole numbers,
+ * and gamma(x + 1) for the rest.
+ */
+public final class Factorials {
+
+    /**
+     * 20! is the largest factorial that fits in a long.
+     */
+    public static final int MAX_LONG_FACTORIAL = 20;
+
+    private static final long[] FACTORIALS = new long[MAX_LONG_FACTORIAL + 1];
+
+    private static final int PASCAL_ROWS = 67;
+    // row n starts at n * (n + 1) / 2
+    private static final long[] PASCAL = new long[PASCAL_ROWS * (PASCAL_ROWS + 1) / 2];
+
+    // 171! is larger than Double.MAX_VALUE
+    private static final int MAX_DOUBLE_FACTORIAL = 170;
+
+    private static final int MEMO_LIMIT = 4096;
+    private static final ConcurrentHashMap<Integer, BigInteger> BIG_FACTORIALS = new ConcurrentHashMap<>();
+
+    // past this many terms a binomial coefficient is computed from lnGamma instead of exactly
+    private static final int EXACT_CHOOSE_LIMIT = 2048;
+
+    private static final double LANCZOS_G = 7;
+    private static final double[] LANCZOS = {
+        0.99999999999980993,
+        676.5203681218851,
+        -1259.1392167224028,
+        771.32342877765313,
+        -176.61502916214059,
+        12.507343278686905,
+        -0.13857109526572012,
+        9.9843695780195716e-6,
+        1.5056327351493116e-7
+    };
+    private static final double HALF_LOG_TWO_PI = 0.5 * Math.log(2 * Math.PI);
+
+    static {
+        FACTORIALS[0] = 1;
+        for (int n = 1; n <= MAX_LONG_FACTORIAL; n++) {
+            FACTORIALS[n] = FACTORIALS[n - 1] * n;
+        }
+        for (int n = 0; n < PASCAL_ROWS; n++) {
+            int row = n * (n + 1) / 2;
+            PASCAL[row] = PASCAL[row + n] = 1;
+            for (int k = 1; k < n; k++) {
+                int above = row - n;
+                PASCAL[row + k] = PASCAL[above + k - 1] + PASCAL[above + k];
+            }
+        }
+    }
+
+    private Factorials() {}
+
+    /**
+     * @throws SyntaxException     if n is negative.
+     * @throws ArithmeticException if n! does not fit in a long, see {@link #factorial(double)}.
+     */
+    public static long factorial(long n) throws SyntaxException {
+        if (n < 0) {
+            throw undefined(n);
+        }
+        if (n > MAX_LONG_FACTORIAL) {
+            throw new ArithmeticException("long overflow");
+        }
+        return FACTORIALS[(int) n];
+    }
+
+    /**
+     * x! as a long.
+     * @throws SyntaxException     if x is a negative whole number.
+     * @throws ArithmeticException if x is not a whole number, or x! does not fit in a long.
+     */
+    public static long factorialExact(double x) throws SyntaxException {
+        if (x != Math.rint(x)) {
+            throw new ArithmeticException("not a whole number");
+        }
+        return factorial((long) x);
+    }
+
+    /**
+     * x!, which is n! rounded to the nearest double for whole numbers, infinite
+     * past 170!, and gamma(x + 1) for the rest.
+     * @throws SyntaxException if x is a negative whole number.
+     */
+    public static double factorial(double x) throws SyntaxException {
+        if (x != Math.rint(x)) {
+            return gamma(x + 1);
+        }
+        if (x < 0) {
+            throw undefined((long) x);
+        }
+        if (x <= MAX_LONG_FACTORIAL) {
+            return FACTORIALS[(int) x];
+        }
+        if (x > MAX_DOUBLE_FACTORIAL) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return bigFactorial((int) x).doubleValue();
+    }
+
+    /**
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public static BigInteger bigFactorial(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("The factorial of " + n + " is undefined.");
+        }
+        if (n <= MAX_LONG_FACTORIAL) {
+            return BigInteger.valueOf(FACTORIALS[n]);
+        }
+        if (n > MEMO_LIMIT) {
+            return product(1, n);
+        }
+        return BIG_FACTORIALS.computeIfAbsent(n, key -> product(1, key));
+    }
+
+    /**
+     * The number of ways to choose k of n items. Exact while the result fits in a
+     * double's 53 bit mantissa, correctly rounded for larger exact results, and
+     * approximate past EXACT_CHOOSE_LIMIT terms.
+     * @return NaN if n or k is not a whole number, 0 if k is negative or greater than n.
+     */
+    public static double choose(double n, double k) {
+        if (n != Math.rint(n) || k != Math.rint(k) || n < 0) {
+            return Double.NaN;
+        }
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        if (n < PASCAL_ROWS) {
+            int row = (int) n;
+            return PASCAL[row * (row + 1) / 2 + (int) k];
+        }
+        k = Math.min(k, n - k);
+
+        if (n > Integer.MAX_VALUE) {
+            return chooseBig(n, k);
+        }
+
+        // C(n, i) = C(n, i - 1) * (n - k + i) / i is always a whole number
+        long result = 1;
+        long start = (long) (n - k);
+        for (long i = 1; i <= k; i++) {
+            if (result > Long.MAX_VALUE / (start + i)) {
+                return chooseBig(n, k);
+            }
+            result = result * (start + i) / i;
+        }
+        return result;
+    }
+
+    /**
+     * The number of ordered arrangements of k of n items, with the same accuracy as {@link #choose}.
+     */
+    public static double permutations(double n, double k) {
+        if (n != Math.rint(n) || k != Math.rint(k) || n < 0) {
+            return Double.NaN;
+        }
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        if (k > EXACT_CHOOSE_LIMIT || n > Integer.MAX_VALUE) {
+            return Math.exp(lnGamma(n + 1) - lnGamma(n - k + 1));
+        }
+        return product((int) (n - k) + 1, (int) n).doubleValue();
+    }
+
+    /**
+     * The gamma function, (x - 1)! for whole numbers. Poles at 0 and the negative
+     * integers are NaN.
+     */
+    public static double gamma(double x) {
+        if (x == Math.rint(x)) {
+            if (x <= 0) {
+                return Double.NaN;
+            }
+            if (x <= MAX_LONG_FACTORIAL + 1) {
+                return FACTORIALS[(int) x - 1];
+            }
+        }
+        if (x < 0.5) {
+            // reflection: gamma(x) gamma(1 - x) = pi / sin(pi x)
+            return Math.PI / (Math.sin(Math.PI * x) * gamma(1 - x));
+        }
+        if (x > 171.62) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = x + LANCZOS_G - 0.5;
+        // the power is split so it does not overflow before the exponential underflows
+        double power = Math.pow(t, (x - 0.5) / 2);
+        return Math.sqrt(2 * Math.PI) * power * (lanczosSum(x) * Math.exp(-t)) * power;
+    }
+
+    /**
+     * The natural log of the absolute value of gamma, which stays finite long after gamma overflows.
+     */
+    public static double lnGamma(double x) {
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - lnGamma(1 - x);
+        }
+        double t = x + LANCZOS_G - 0.5;
+        return HALF_LOG_TWO_PI + (x - 0.5) * Math.log(t) - t + Math.log(lanczosSum(x));
+    }
+
+    private static double lanczosSum(double x) {
+        double sum = LANCZOS[0];
+        for (int i = 1; i < LANCZOS.length; i++) {
+            sum += LANCZOS[i] / (x - 1 + i);
+        }
+        return sum;
+    }
+
+    private static SyntaxException undefined(long n) {
+        return new SyntaxException("The factorial of " + n + " is undefined.");
+    }
+
+    private static double chooseBig(double n, double k) {
+        if (k > EXACT_CHOOSE_LIMIT || n > Integer.MAX_VALUE) {
+            return Math.exp(lnGamma(n + 1) - lnGamma(k + 1) - lnGamma(n - k + 1));
+        }
+        int terms = (int) k;
+        return product((int) (n - k) + 1, (int) n).divide(bigFactorial(terms)).doubleValue();
+    }
+
+    /**
+     * from * (from + 1) * ... * to, splitting the range in half so the operands of
+     * each multiplication are of similar size.
+     */
+    private static BigInteger product(int from, int to) {
+        if (from > to) {
+            return BigInteger.ONE;
+        }
+        if (to - from < 16) {
+            Cancellation.check();
+            long product = 1;
+            BigInteger result = BigInteger.ONE;
+            for (long i = from; i <= to; i++) {
+                if (product > Long.MAX_VALUE / i) {
+                    result = result.multiply(BigInteger.valueOf(product));
+                    product = 1;
+                }
+                product *= i;
+            }
+            return result.multiply(BigInteger.valueOf(product));
+        }
+        int middle = (from + to) >>> 1;
+        return product(from, middle).multiply(product(middle + 1, to));
+    }
+
+}
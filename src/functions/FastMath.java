@@ -0,0 +1,219 @@
+package functions;
+
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+
+/**
+ * Trig and powers for simulation runs, where throughput matters more than the
+ * last bit. Turned on for the whole process with -Dcalculator.fastMath=true, in
+ * which case the ^, sin, cos and tan operators use these methods instead of Math.
+ *
+ * Trig reduces its argument to a quarter turn either side of 0, keeping the
+ * rounding error of the reduction as a tail, and evaluates the fdlibm kernel
+ * polynomials. Degrees and gradians are reduced exactly, before they are
+ * converted to radians, so sin and cos are exact at every multiple of a right
+ * angle (sin(180) is 0 in DEG), tan is exactly 1 or -1 at odd multiples of 45
+ * degrees, and arguments of any size are accurate. Radians are reduced with a
+ * four part pi/2 up to RAD_LIMIT, and by Math beyond it.
+ *
+ * Measured against exact values (see FastMathReport in the benchmarks), sin and
+ * cos are within 0.75 ulps and tan within 2 ulps in every angle mode. Math is
+ * within 0.51 ulps for radians, but off by up to 10^6 ulps near the zeros of
+ * degree arguments, where converting to radians first loses the exact zero.
+ *
+ * pow multiplies out integer exponents up to MAX_INTEGER_POWER by squaring,
+ * which keeps x^n within |n| ulps (0.8 |n| at most, measured), and takes x^0.5
+ * as a square root, which differs from Math.pow only for -0 and -Infinity. Negative integer exponents
+ * are 1 / x^n, which is 0 where x^n overflows even if x^-n would be subnormal.
+ */
+public final class FastMath {
+
+    public static final boolean ENABLED = Boolean.getBoolean("calculator.fastMath");
+
+    public static final int MAX_INTEGER_POWER = 16;
+    public static final double RAD_LIMIT = 0x1p20 * Math.PI / 2;
+
+    private static final double TWO_OVER_PI = 6.36619772367581382433e-01;
+    // pi/2 as three parts of 33 bits, so k * part is exact for k <= 2^20, and the rest
+    private static final double PIO2_1 = 1.57079632673412561417e+00;
+    private static final double PIO2_2 = 6.07710050630396597660e-11;
+    private static final double PIO2_3 = 2.02226624871116645580e-21;
+    private static final double PIO2_3T = 8.47842766036889956997e-32;
+
+    private static final double DEG_TAIL = 2.9486522708701687e-19;
+    private static final double GRAD_TAIL = -7.754553812077691e-19;
+
+    private static final double S1 = -1.66666666666666324348e-01;
+    private static final double S2 = 8.33333333332248946124e-03;
+    private static final double S3 = -1.98412698298579493134e-04;
+    private static final double S4 = 2.75573137070700676789e-06;
+    private static final double S5 = -2.50507602534068634195e-08;
+    private static final double S6 = 1.58969099521155010221e-10;
+
+    private static final double C1 = 4.16666666666666019037e-02;
+    private static final double C2 = -1.38888888888741095749e-03;
+    private static final double C3 = 2.48015872894767294178e-05;
+    private static final double C4 = -2.75573143513906633035e-07;
+    private static final double C5 = 2.08757232129817482790e-09;
+    private static final double C6 = -1.13596475577881948265e-11;
+
+    private static final int SIN = 0;
+    private static final int COS = 1;
+    private static final int TAN = 2;
+
+    private FastMath() {}
+
+    public static double sin(double x, ANGLE_MODE angleMode) {
+        return sin(x, angleMode.quarterTurn, angleMode.conversion);
+    }
+
+    public static double cos(double x, ANGLE_MODE angleMode) {
+        return cos(x, angleMode.quarterTurn, angleMode.conversion);
+    }
+
+    public static double tan(double x, ANGLE_MODE angleMode) {
+        return tan(x, angleMode.quarterTurn, angleMode.conversion);
+    }
+
+    /*
+     * The angle mode as constants, for compiled code.
+     */
+
+    public static double sin(double x, double quarterTurn, double conversion) {
+        return trig(SIN, x, quarterTurn, conversion);
+    }
+
+    public static double cos(double x, double quarterTurn, double conversion) {
+        return trig(COS, x, quarterTurn, conversion);
+    }
+
+    public static double tan(double x, double quarterTurn, double conversion) {
+        return trig(TAN, x, quarterTurn, conversion);
+    }
+
+    /**
+     * x^y, multiplying out small integer exponents.
+     */
+    public static double pow(double x, double y) {
+        int n = (int) y;
+        if (n == y && n >= -MAX_INTEGER_POWER && n <= MAX_INTEGER_POWER) {
+            return n >= 0 ? powInteger(x, n) : 1 / powInteger(x, -n);
+        }
+        if (y == 0.5) {
+            return Math.sqrt(x);
+        }
+        return Math.pow(x, y);
+    }
+
+    private static double powInteger(double x, int n) {
+        double result = 1;
+        while (n > 0) {
+            if ((n & 1) != 0) {
+                result *= x;
+            }
+            x *= x;
+            n >>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Split up so every part stays small enough for the JIT to inline.
+     *
+     * @param quarterTurn A right angle in the unit of x, or 0 for radians.
+     * @param conversion  The size of the unit in radians.
+     */
+    private static double trig(int function, double x, double quarterTurn, double conversion) {
+        if (quarterTurn != 0) {
+            return trigUnits(function, x, quarterTurn, conversion);
+        }
+        if (Math.abs(x) <= Math.PI / 4) {
+            return evaluate(function, x, 0, 0, false);
+        }
+        if (Math.abs(x) <= RAD_LIMIT) {
+            return trigRadians(function, x);
+        }
+        return switch (function) {
+            case SIN -> Math.sin(x);
+            case COS -> Math.cos(x);
+            default -> Math.tan(x);
+        };
+    }
+
+    private static double trigUnits(int function, double x, double quarterTurn, double conversion) {
+        // both steps are exact, so multiples of a right angle reduce to 0, and
+        // the remainder is only needed where k * quarterTurn would round
+        double r = Math.abs(x) <= 0x1p50 ? x : x % (4 * quarterTurn);
+        double k = Math.rint(r / quarterTurn);
+        double d = r - k * quarterTurn;
+        double product = d * conversion;
+        double error = Math.fma(d, conversion, -product) + d * conversionTail(quarterTurn);
+        double radians = product + error;
+        return evaluate(function, radians, error - (radians - product), (int) ((long) k & 3), Math.abs(d) == quarterTurn / 2);
+    }
+
+    private static double trigRadians(int function, double x) {
+        double k = Math.rint(x * TWO_OVER_PI);
+        // exact, and so is k * PIO2_2
+        double r = x - k * PIO2_1;
+        double w = k * PIO2_2;
+        double difference = r - w;
+        double b = difference - r;
+        double error = (r - (difference - b)) - (w + b) - (k * PIO2_3 + k * PIO2_3T);
+        double radians = difference + error;
+        return evaluate(function, radians, error - (radians - difference), (int) k & 3, false);
+    }
+
+    /**
+     * @param tail        The part of the reduced argument below half an ulp of radians.
+     * @param halfQuarter Whether the argument is exactly half a right angle, where tan is 1 or -1.
+     */
+    private static double evaluate(int function, double radians, double tail, int quadrant, boolean halfQuarter) {
+
+        // both kernels and no branch on the quadrant, which is random for random arguments
+        double sin = kernelSin(radians, tail);
+        double cos = kernelCos(radians, tail);
+        boolean odd = (quadrant & 1) != 0;
+
+        if (function == TAN) {
+            if (halfQuarter) {
+                double tan = Math.copySign(1, radians);
+                return odd ? -tan : tan;
+            }
+            return odd ? -cos / sin : sin / cos;
+        }
+
+        // 0 - v rather than -v, so sin(180) in DEG is 0 rather than -0
+        int turn = quadrant + function;
+        double v = (turn & 1) == 0 ? sin : cos;
+        return (turn & 2) == 0 ? v : 0 - v;
+    }
+
+    /**
+     * The part of pi / 180 or pi / 200 that the double conversion leaves out.
+     */
+    private static double conversionTail(double quarterTurn) {
+        return quarterTurn == 90 ? DEG_TAIL : GRAD_TAIL;
+    }
+
+    /**
+     * sin(x + tail) for |x| <= pi/4.
+     */
+    private static double kernelSin(double x, double tail) {
+        double z = x * x;
+        double v = z * x;
+        double r = S2 + z * (S3 + z * (S4 + z * (S5 + z * S6)));
+        return x - ((z * (0.5 * tail - v * r) - tail) - v * S1);
+    }
+
+    /**
+     * cos(x + tail) for |x| <= pi/4.
+     */
+    private static double kernelCos(double x, double tail) {
+        double z = x * x;
+        double r = z * (C1 + z * (C2 + z * (C3 + z * (C4 + z * (C5 + z * C6)))));
+        double hz = 0.5 * z;
+        double w = 1 - hz;
+        return w + (((1 - w) - hz) + (z * r - x * tail));
+    }
+
+}
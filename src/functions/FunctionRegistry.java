@@ -0,0 +1,102 @@
+package functions;
+
+import static functions.MathFunction.VARIADIC;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The functions an expression can call, by name. A registry starts out with the
+ * built in functions, and def adds user functions to it, replacing any function
+ * with the same name.
+ */
+public class FunctionRegistry {
+
+    private static final Map<String, MathFunction> BUILT_INS = builtIns(
+        new BuiltInFunction("max", 1, VARIADIC, true, args -> {
+            double max = args[0];
+            for (double arg : args) {
+                max = Math.max(max, arg);
+            }
+            return max;
+        }),
+        new BuiltInFunction("min", 1, VARIADIC, true, args -> {
+            double min = args[0];
+            for (double arg : args) {
+                min = Math.min(min, arg);
+            }
+            return min;
+        }),
+        new BuiltInFunction("hypot", 2, 2, true, args -> Math.hypot(args[0], args[1])),
+        new BuiltInFunction("log", 1, 2, true, args -> args.length == 1 ? Math.log10(args[0]) : Math.log(args[0]) / Math.log(args[1])),
+        new BuiltInFunction("ln", 1, 1, true, args -> Math.log(args[0])),
+        new BuiltInFunction("abs", 1, 1, true, args -> Math.abs(args[0])),
+        new BuiltInFunction("gamma", 1, 1, true, args -> Factorials.gamma(args[0])),
+        new BuiltInFunction("ncr", 2, 2, true, args -> Factorials.choose(args[0], args[1])),
+        new BuiltInFunction("npr", 2, 2, true, args -> Factorials.permutations(args[0], args[1])),
+        new BuiltInFunction("rand", 0, 0, false, args -> ThreadLocalRandom.current().nextDouble())
+    );
+
+    private final Map<String, MathFunction> functions;
+
+    public FunctionRegistry() {
+        this.functions = new HashMap<>(BUILT_INS);
+    }
+
+    private FunctionRegistry(FunctionRegistry registry) {
+        this.functions = new HashMap<>(registry.functions);
+    }
+
+    /**
+     * @return the function with this name, or null if there is none.
+     */
+    public MathFunction get(String name) {
+        return functions.get(name);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no built in function with this name.
+     */
+    public static MathFunction builtIn(String name) {
+        MathFunction function = BUILT_INS.get(name);
+        if (function == null) {
+            throw new IllegalArgumentException("There is no built in function " + name + ".");
+        }
+        return function;
+    }
+
+    public void define(MathFunction function) {
+        functions.put(function.name(), function);
+    }
+
+    /**
+     * Removes the function with this name, if there is one.
+     */
+    public void remove(String name) {
+        functions.remove(name);
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(functions.keySet());
+    }
+
+    /**
+     * An independent copy of this registry. The functions themselves are shared.
+     */
+    public FunctionRegistry copy() {
+        return new FunctionRegistry(this);
+    }
+
+    private static Map<String, MathFunction> builtIns(MathFunction... functions) {
+        Map<String, MathFunction> builtIns = new HashMap<>();
+        for (MathFunction function : List.of(functions)) {
+            builtIns.put(function.name(), function);
+        }
+        return Map.copyOf(builtIns);
+    }
+
+}
@@ -0,0 +1,46 @@
+package functions;
+
+/**
+ * A function that can be called from an expression by name, e.g. max(1, 2, 3).
+ */
+public interface MathFunction {
+
+    /**
+     * The maxArity of a function that takes any number of arguments.
+     */
+    int VARIADIC = Integer.MAX_VALUE;
+
+    String name();
+
+    int minArity();
+
+    int maxArity();
+
+    /**
+     * A pure function always returns the same result for the same arguments and
+     * has no side effects, so calls to it can be folded and memoized.
+     */
+    boolean isPure();
+
+    /**
+     * @param arguments Only valid during the call, callers may reuse the array.
+     */
+    double apply(double[] arguments);
+
+    default boolean acceptsArity(int arity) {
+        return arity >= minArity() && arity <= maxArity();
+    }
+
+    default String arityError(int arity) {
+        String expected;
+        if (minArity() == maxArity()) {
+            expected = String.valueOf(minArity());
+        } else if (maxArity() == VARIADIC) {
+            expected = "at least " + minArity();
+        } else {
+            expected = minArity() + " to " + maxArity();
+        }
+        return "The function " + name() + " takes " + expected + " argument(s), not " + arity + ".";
+    }
+
+}
@@ -0,0 +1,48 @@
+package functions;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A bounded cache of results keyed on the exact bits of the arguments. It is direct
+ * mapped, so a lookup is a single table read, and a new result replaces whatever
+ * was in its slot. Entries are immutable, so threads share a cache without locking.
+ */
+final class MemoCache {
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * @param capacity Rounded up to a power of two.
+     */
+    MemoCache(int capacity) {
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    double apply(double[] arguments, ToDoubleFunction<double[]> function) {
+
+        int index = hash(arguments) & mask;
+        Entry entry = entries[index];
+        if (entry != null && Arrays.equals(entry.arguments(), arguments)) {
+            return entry.result();
+        }
+
+        double result = function.applyAsDouble(arguments);
+        entries[index] = new Entry(arguments.clone(), result);
+        return result;
+    }
+
+    private static int hash(double[] arguments) {
+        long hash = 0;
+        for (double argument : arguments) {
+            hash = (hash ^ Double.doubleToLongBits(argument)) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private record Entry(double[] arguments, double result) {}
+
+}
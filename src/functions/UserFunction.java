@@ -0,0 +1,112 @@
+package functions;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import ast_nodes.ASTNode;
+import ast_nodes.Bindings;
+import ast_nodes.FunctionNode;
+
+/**
+ * A function defined with def f(x, y) = ..., whose body reads its parameters from slots.
+ * 
+ * A user function is pure unless its body calls an impure function. Results of
+ * pure functions are memoized in a cache of MEMO_SIZE entries.
+ * 
+ * Each thread evaluates the body with bindings of its own, which are reused
+ * between calls. A body can only call functions defined before it, so a call
+ * never runs while another call to the same function is running on its thread.
+ * 
+ * A call on an interrupted thread throws (see {@link Cancellation}).
+ */
+public class UserFunction implements MathFunction {
+
+    /**
+     * Set with -Dcalculator.memoSize, 0 turns memoization off.
+     */
+    public static final int MEMO_SIZE = Integer.getInteger("calculator.memoSize", 1024);
+
+    private final String name;
+    private final String[] parameters;
+    private final ASTNode body;
+    private final boolean pure;
+    private final MemoCache memo;
+    private final ToDoubleFunction<double[]> evaluator = this::evaluate;
+    private final ThreadLocal<Bindings> bindings;
+
+    public UserFunction(String name, List<String> parameters, ASTNode body) {
+        this(name, parameters, body, MEMO_SIZE);
+    }
+
+    /**
+     * @param body The body, with the parameters as slots in order.
+     */
+    public UserFunction(String name, List<String> parameters, ASTNode body, int memoSize) {
+        this.name = name;
+        this.parameters = parameters.toArray(new String[0]);
+        this.body = body;
+        this.pure = isPure(body);
+        this.memo = pure && memoSize > 0 ? new MemoCache(memoSize) : null;
+        String[] slots = this.parameters;
+        this.bindings = ThreadLocal.withInitial(() -> new Bindings(slots));
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int minArity() {
+        return parameters.length;
+    }
+
+    @Override
+    public int maxArity() {
+        return parameters.length;
+    }
+
+    @Override
+    public boolean isPure() {
+        return pure;
+    }
+
+    public List<String> parameters() {
+        return List.of(parameters);
+    }
+
+    public ASTNode body() {
+        return body;
+    }
+
+    public boolean isMemoized() {
+        return memo != null;
+    }
+
+    @Override
+    public double apply(double[] arguments) {
+        return memo != null ? memo.apply(arguments, evaluator) : evaluate(arguments);
+    }
+
+    private double evaluate(double[] arguments) {
+        Cancellation.check();
+        Bindings parameterBindings = bindings.get();
+        for (int slot = 0; slot < arguments.length; slot++) {
+            parameterBindings.set(slot, arguments[slot]);
+        }
+        return body.evaluateRoot(parameterBindings);
+    }
+
+    private static boolean isPure(ASTNode node) {
+        if (node instanceof FunctionNode call && !call.function().isPure()) {
+            return false;
+        }
+        for (ASTNode child : node.children()) {
+            if (!isPure(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
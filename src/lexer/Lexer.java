@@ -1,43 +1,82 @@
 package lexer;
 
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import parser.SyntaxException;
 
-public class Lexer {
+public class Lexer implements TokenStream {
 
     private final String input;
+    private final LEXER_MODE mode;
     private int cursor;
 
     public Lexer(String input) {
-        this.input = input.replaceAll("\\s+","");
+        this(input, LEXER_MODE.SCAN);
+    }
+
+    public Lexer(String input, LEXER_MODE mode) {
+        this.mode = mode;
         this.cursor = 0;
+        if (mode == LEXER_MODE.REGEX) {
+            this.input = input.replaceAll("\\s+","");
+        } else {
+            this.input = stripWhitespace(input);
+        }
     }
 
+    @Override
     public boolean hasMoreTokens() {
         return cursor < input.length();
     }
 
+    @Override
     public Token getNextToken() throws SyntaxException {
 
         if (!hasMoreTokens()) {
             return null;
         }
 
-        String tokenValue = "";
+        return switch (mode) {
+            case SCAN -> scanToken();
+            case REGEX -> matchToken();
+        };
+    }
+
+    @Override
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Single pass scanner, tokens are slices of the original input.
+     */
+    private Token scanToken() {
+
+        long match = TokenScanner.scan(input, cursor, input.length());
+
+        if (match == TokenScanner.NO_MATCH) {
+            throw new SyntaxException("Unexpected token at index " + cursor + ": " + input.charAt(cursor));
+        }
+
+        Token token = new Token(TokenScanner.type(match), input, cursor, TokenScanner.length(match));
+        cursor += token.length();
+        return token;
+    }
+
+    /**
+     * Reference implementation, tries the regex of every token type in order.
+     */
+    private Token matchToken() {
 
         for (TokenType tokenType : TokenType.values()) {
 
-            Pattern pattern = Pattern.compile(tokenType.regex());
-            String substring = input.substring(cursor);
-            Matcher matcher = pattern.matcher(substring);
+            Matcher matcher = tokenType.pattern().matcher(input).region(cursor, input.length());
 
-            if (matcher.find()) {
-                // System.out.println("match found in " + substring + " for regex " + tokenType.regex() + ": " + matcher.group());
-                tokenValue = matcher.group();
-                cursor += tokenValue.length();
-                return new Token(tokenType, tokenValue);
+            if (matcher.lookingAt()) {
+                // System.out.println("match found in " + input.substring(cursor) + " for regex " + tokenType.regex() + ": " + matcher.group());
+                Token token = new Token(tokenType, input, cursor, matcher.end() - cursor);
+                cursor = matcher.end();
+                return token;
             }
 
         }
@@ -45,8 +84,36 @@ public class Lexer {
         throw new SyntaxException("Unexpected token at index " + cursor + ": " + input.charAt(cursor));
     }
 
-    public int getCursor() {
-        return cursor;
+    /**
+     * Whitespace is not a separator, "1 000" is the number 1000, so it is removed
+     * before lexing. Input without whitespace is lexed as it is, without a copy.
+     */
+    private static String stripWhitespace(String input) {
+
+        int first = 0;
+        while (first < input.length() && !TokenScanner.isWhitespace(input.charAt(first))) {
+            first++;
+        }
+        if (first == input.length()) {
+            return input;
+        }
+
+        StringBuilder stripped = new StringBuilder(input.length()).append(input, 0, first);
+        for (int i = first + 1; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (!TokenScanner.isWhitespace(c)) {
+                stripped.append(c);
+            }
+        }
+        return stripped.toString();
     }
-    
+
+    /**
+     * SCAN is the default lexer. REGEX is the original regex based lexer, kept as
+     * a reference for differential testing. Both remove all whitespace first.
+     */
+    public enum LEXER_MODE {
+        SCAN, REGEX;
+    }
+
 }
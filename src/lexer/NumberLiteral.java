@@ -0,0 +1,234 @@
+package lexer;
+
+import java.math.BigInteger;
+
+/**
+ * Converts NUMBER tokens to doubles straight from the lexer's input, without
+ * copying the digits into a String first.
+ *
+ * Literals are digits[.digits][E[-]digits]. The digits are read into a long and
+ * a power of ten, which is then converted with one of:
+ * - Clinger's fast path, when both fit exactly in a double (at most 2^53 and
+ *   10^22), so a single multiplication or division is correctly rounded.
+ * - The Eisel-Lemire algorithm, which multiplies by a 128 bit approximation of
+ *   the power of five and is correctly rounded for up to 19 significant digits.
+ * Literals with more than 19 significant digits fall back to Double.parseDouble,
+ * so the result is always the same as Double.parseDouble would give.
+ */
+public final class NumberLiteral {
+
+    private static final int MAX_DIGITS = 19;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int MAX_EXACT_POWER = 22;
+    // the exponent is clamped here while it is read, far past where every double is 0 or infinite
+    private static final int MAX_EXPONENT = 100_000;
+
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_POWER; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private NumberLiteral() {}
+
+    public static double parse(CharSequence input) {
+        return parse(input, 0, input.length());
+    }
+
+    /**
+     * Parses the literal input[offset, offset + length).
+     * @throws NumberFormatException if the text is not a number literal.
+     */
+    public static double parse(CharSequence input, int offset, int length) {
+
+        int end = offset + length;
+        int i = offset;
+
+        // the value is mantissa * 10^exponent
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean truncated = false;
+        boolean seenDigit = false;
+
+        for (; i < end && isDigit(input.charAt(i)); i++) {
+            int digit = input.charAt(i) - '0';
+            seenDigit = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                // leading zeros are not significant
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                truncated |= digit != 0;
+            }
+        }
+
+        if (i < end && input.charAt(i) == '.') {
+            i++;
+            for (; i < end && isDigit(input.charAt(i)); i++) {
+                int digit = input.charAt(i) - '0';
+                seenDigit = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    exponent--;
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                } else {
+                    truncated |= digit != 0;
+                }
+            }
+        }
+
+        if (!seenDigit) {
+            throw invalid(input, offset, end);
+        }
+
+        if (i < end && input.charAt(i) == 'E') {
+            i++;
+            boolean negative = i < end && input.charAt(i) == '-';
+            if (negative) {
+                i++;
+            }
+            if (i == end) {
+                throw invalid(input, offset, end);
+            }
+            int power = 0;
+            for (; i < end && isDigit(input.charAt(i)); i++) {
+                power = Math.min(power * 10 + input.charAt(i) - '0', MAX_EXPONENT);
+            }
+            exponent += negative ? -power : power;
+        }
+
+        if (i != end) {
+            throw invalid(input, offset, end);
+        }
+
+        if (truncated) {
+            return Double.parseDouble(input.subSequence(offset, end).toString());
+        }
+
+        if (mantissa == 0) {
+            return 0.0;
+        }
+
+        if (mantissa >= 0 && mantissa <= MAX_EXACT_MANTISSA && exponent >= -MAX_EXACT_POWER && exponent <= MAX_EXACT_POWER) {
+            return exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        }
+
+        return eiselLemire(mantissa, exponent);
+    }
+
+    /**
+     * The double closest to mantissa * 10^power, where mantissa is a non zero
+     * unsigned long. This follows fast_float's compute_float, which Mushtak and
+     * Lemire showed never needs a slow path for mantissas below 10^19.
+     */
+    private static double eiselLemire(long mantissa, int power) {
+
+        if (power < PowersOfFive.MIN_POWER) {
+            return 0.0;
+        }
+        if (power > PowersOfFive.MAX_POWER) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+        long w = mantissa << leadingZeros;
+
+        // the top bits of w * 5^power, with a second multiplication by the low half
+        // of the power of five only when the first leaves the rounding undecided
+        int index = power - PowersOfFive.MIN_POWER;
+        long high = Math.unsignedMultiplyHigh(w, PowersOfFive.HIGH[index]);
+        long low = w * PowersOfFive.HIGH[index];
+        if ((high & 0x1FF) == 0x1FF) {
+            long carry = Math.unsignedMultiplyHigh(w, PowersOfFive.LOW[index]);
+            low += carry;
+            if (Long.compareUnsigned(carry, low) > 0) {
+                high++;
+            }
+        }
+
+        int upperBit = (int) (high >>> 63);
+        int shift = upperBit + 9;
+        long bits = high >>> shift;
+        // floor(log2(10^power)) + 63, the binary exponent of the product, biased
+        int exponent = (int) ((((152170L + 65536L) * power) >> 16) + 63) + upperBit - leadingZeros + 1023;
+
+        if (exponent <= 0) {
+            // subnormal, or rounds up to the smallest normal
+            if (1 - exponent >= 64) {
+                return 0.0;
+            }
+            bits >>>= 1 - exponent;
+            bits += bits & 1;
+            bits >>>= 1;
+            exponent = bits < (1L << 52) ? 0 : 1;
+            return Double.longBitsToDouble(bits | (long) exponent << 52);
+        }
+
+        // exactly halfway between two doubles, which can only happen for small powers: round to even
+        if (Long.compareUnsigned(low, 1) <= 0 && power >= -4 && power <= 23 && (bits & 3) == 1 && bits << shift == high) {
+            bits &= ~1L;
+        }
+
+        bits += bits & 1;
+        bits >>>= 1;
+        if (bits >= (2L << 52)) {
+            bits = 1L << 52;
+            exponent++;
+        }
+        if (exponent >= 0x7FF) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Double.longBitsToDouble((bits & ~(1L << 52)) | (long) exponent << 52);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static NumberFormatException invalid(CharSequence input, int offset, int end) {
+        return new NumberFormatException("Invalid number literal " + input.subSequence(offset, end));
+    }
+
+    /**
+     * 5^q for q in [MIN_POWER, MAX_POWER], normalized so the top bit is set and
+     * split into two longs. Positive powers are truncated, negative powers are
+     * rounded up. Built on first use, since short literals never need it.
+     */
+    private static final class PowersOfFive {
+
+        static final int MIN_POWER = -342;
+        static final int MAX_POWER = 308;
+
+        static final long[] HIGH = new long[MAX_POWER - MIN_POWER + 1];
+        static final long[] LOW = new long[MAX_POWER - MIN_POWER + 1];
+
+        static {
+            BigInteger five = BigInteger.valueOf(5);
+            for (int q = MIN_POWER; q <= MAX_POWER; q++) {
+                BigInteger value;
+                if (q < 0) {
+                    BigInteger power = five.pow(-q);
+                    int z = power.bitLength();
+                    int b = q >= -27 ? z + 127 : 2 * z + 128;
+                    value = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+                } else {
+                    value = five.pow(q);
+                }
+                value = value.bitLength() > 128 ? value.shiftRight(value.bitLength() - 128) : value.shiftLeft(128 - value.bitLength());
+                HIGH[q - MIN_POWER] = value.shiftRight(64).longValue();
+                LOW[q - MIN_POWER] = value.longValue();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,182 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+import parser.SyntaxException;
+
+/**
+ * Lexes input as it is read, through a fixed size window of characters, so the
+ * input is never held in memory as a whole. Recognises the same tokens as the
+ * SCAN mode of {@link Lexer}, and like it drops whitespace, here as the input is
+ * read, so indices count the characters that are not whitespace.
+ * 
+ * Input is either read from a Reader or decoded from a ByteBuffer, such as a
+ * memory mapped file. A single token cannot be longer than the window.
+ */
+public class StreamingLexer implements TokenStream {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 13;
+
+    /**
+     * How far past the end of a token the scanner may look, e.g. a word is only
+     * lexed as the constant e once it is known not to be the command exit.
+     */
+    private static final int LOOKAHEAD = 8;
+
+    private final Reader reader;
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder;
+
+    private final char[] window;
+    private final CharBuffer chars;
+    private int pos;
+    private int end;
+    private long windowOffset;
+    private boolean endOfInput;
+    private boolean flushed;
+
+    public StreamingLexer(Reader reader) {
+        this(reader, null, null, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param bytes   The encoded input, read from its position to its limit.
+     * @param charset The charset to decode the input with.
+     */
+    public StreamingLexer(ByteBuffer bytes, Charset charset) {
+        this(null, bytes, charset.newDecoder(), DEFAULT_WINDOW_SIZE);
+    }
+
+    StreamingLexer(Reader reader, ByteBuffer bytes, CharsetDecoder decoder, int windowSize) {
+        if (windowSize <= LOOKAHEAD) {
+            throw new IllegalArgumentException("The window must be larger than " + LOOKAHEAD + " characters.");
+        }
+        this.reader = reader;
+        this.bytes = bytes;
+        this.decoder = decoder;
+        this.window = new char[windowSize];
+        this.chars = CharBuffer.wrap(window);
+    }
+
+    @Override
+    public boolean hasMoreTokens() {
+        if (pos == end && !endOfInput) {
+            fill();
+        }
+        return pos < end;
+    }
+
+    @Override
+    public Token getNextToken() throws SyntaxException {
+
+        if (!hasMoreTokens()) {
+            return null;
+        }
+
+        while (true) {
+
+            long match = TokenScanner.scan(chars, pos, end);
+            int length = match == TokenScanner.NO_MATCH ? 0 : TokenScanner.length(match);
+
+            // the token may carry on past the window, so scan it again with more input
+            if (!endOfInput && end - (pos + length) < LOOKAHEAD) {
+                if (fill() || endOfInput) {
+                    continue;
+                }
+                throw new SyntaxException("Token at index " + getCursor() + " is longer than " + (window.length - LOOKAHEAD) + " characters.");
+            }
+
+            if (match == TokenScanner.NO_MATCH) {
+                throw new SyntaxException("Unexpected token at index " + getCursor() + ": " + window[pos]);
+            }
+
+            Token token = new Token(TokenScanner.type(match), new String(window, pos, length));
+            pos += length;
+            return token;
+        }
+    }
+
+    @Override
+    public long getCursor() {
+        return windowOffset + pos;
+    }
+
+    /**
+     * Moves the unlexed characters to the start of the window and reads more after
+     * them, leaving out whitespace.
+     * @return false if no more characters could be read.
+     */
+    private boolean fill() {
+
+        if (pos > 0) {
+            System.arraycopy(window, pos, window, 0, end - pos);
+            windowOffset += pos;
+            end -= pos;
+            pos = 0;
+        }
+
+        int read = 0;
+        try {
+            while (end < window.length && !endOfInput) {
+                int n = read(end, window.length - end);
+                if (n < 0) {
+                    endOfInput = true;
+                } else {
+                    int kept = dropWhitespace(end, n);
+                    end += kept;
+                    read += kept;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return read > 0;
+    }
+
+    /**
+     * Compacts the length characters at offset in the window.
+     * @return how many of them are not whitespace.
+     */
+    private int dropWhitespace(int offset, int length) {
+        int kept = offset;
+        for (int i = offset; i < offset + length; i++) {
+            if (!TokenScanner.isWhitespace(window[i])) {
+                window[kept++] = window[i];
+            }
+        }
+        return kept - offset;
+    }
+
+    /**
+     * @return how many characters were read into the window, or -1 at the end of the input.
+     */
+    private int read(int offset, int length) throws IOException {
+
+        if (reader != null) {
+            return reader.read(window, offset, length);
+        }
+
+        if (flushed) {
+            return -1;
+        }
+
+        CharBuffer out = CharBuffer.wrap(window, offset, length);
+        CoderResult result = decoder.decode(bytes, out, true);
+        if (result.isError()) {
+            result.throwException();
+        }
+        // all of the bytes have been decoded
+        if (result.isUnderflow()) {
+            flushed = decoder.flush(out).isUnderflow();
+        }
+        return out.position() - offset;
+    }
+
+}
@@ -1,10 +1,22 @@
 package lexer;
 
-public record Token(TokenType tokenType, String value) {
+/**
+ * A token is a slice of the lexer's input: the text is only copied out
+ * of the source when {@link #value()} is called.
+ */
+public record Token(TokenType tokenType, String source, int offset, int length) {
+
+    public Token(TokenType tokenType, String value) {
+        this(tokenType, value, 0, value.length());
+    }
+
+    public String value() {
+        return source.substring(offset, offset + length);
+    }
 
     @Override
     public final String toString() {
-        return "type: " + tokenType.name() + ", value: " + value;
+        return "type: " + tokenType.name() + ", value: " + value();
     }
 
 }
@@ -0,0 +1,187 @@
+package lexer;
+
+/**
+ * Hand written scanner that recognises the same tokens as the {@link TokenType}
+ * regular expressions in a single pass over the input.
+ *
+ * Tokens are tried in the same order as the enum declares them, so where two
+ * token types could match (e.g. "sin" as PREFIX_OPERATOR or VARIABLE) the one
+ * declared first wins, exactly like the regex lexer.
+ */
+final class TokenScanner {
+
+    static final long NO_MATCH = -1;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private static final String[] COMMANDS = { "rad", "deg", "grad", "reg", "sci", "eng", "reactive", "snapshot", "clear", "cls", "exit" };
+    private static final String[] PREFIX_OPERATORS = { "sqrt", "sin", "cos", "tan" };
+    private static final String[] CONSTANTS = { "e", "pi", "ans" };
+    private static final String ASSIGNMENT = "var";
+    private static final String DEFINITION = "def";
+
+    private TokenScanner() {}
+
+    /**
+     * Scans the token starting at pos.
+     * @return the packed token type and length (see {@link #type(long)} and {@link #length(long)}),
+     *         or {@link #NO_MATCH} if no token starts at pos.
+     */
+    static long scan(CharSequence input, int pos, int end) {
+
+        char c = input.charAt(pos);
+
+        switch (c) {
+            case '+':   return pack(TokenType.PLUS, 1);
+            case '-':   return pack(TokenType.MINUS, 1);
+            case '^':   return pack(TokenType.EXPONENT, 1);
+            case '~':   return pack(TokenType.PREFIX_OPERATOR, 1);
+            case '&':
+            case '%':
+            case 'E':
+            case '|':
+            case '*':
+            case '/':   return pack(TokenType.INFIX_OPERATOR, 1);
+            case '<':
+            case '>':   return pos + 1 < end && input.charAt(pos + 1) == c ? pack(TokenType.INFIX_OPERATOR, 2) : NO_MATCH;
+            case '!':   return pack(TokenType.POSTFIX_OPERATOR, 1);
+            case '(':   return pack(TokenType.OPEN_BRACKET, 1);
+            case ')':   return pack(TokenType.CLOSE_BRACKET, 1);
+            case '=':   return pack(TokenType.EQUALS, 1);
+            case ',':   return pack(TokenType.COMMA, 1);
+            default:    break;
+        }
+
+        if (isDigit(c) || c == '.') {
+            return scanNumber(input, pos, end);
+        }
+
+        if (isWordChar(c)) {
+            return scanWord(input, pos, end);
+        }
+
+        return NO_MATCH;
+    }
+
+    static TokenType type(long match) {
+        return TOKEN_TYPES[(int) (match >>> 32)];
+    }
+
+    static int length(long match) {
+        return (int) match;
+    }
+
+    static boolean isWhitespace(char c) {
+        // the same characters as \s in java.util.regex
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /*
+     * Number
+     * : \d*\.?\d+(E-?\d+(?![\d.]))?
+     * The regex backtracks, so "1." is the number 1 followed by an unmatched '.',
+     * and "2E", "2E-x" or "2E1.5" is the number 2 followed by the E operator.
+     */
+    private static long scanNumber(CharSequence input, int pos, int end) {
+
+        int i = pos;
+        while (i < end && isDigit(input.charAt(i))) {
+            i++;
+        }
+
+        if (i + 1 < end && input.charAt(i) == '.' && isDigit(input.charAt(i + 1))) {
+            i += 2;
+            while (i < end && isDigit(input.charAt(i))) {
+                i++;
+            }
+        }
+
+        if (i == pos) {
+            return NO_MATCH;
+        }
+
+        if (i < end && input.charAt(i) == 'E') {
+            int digits = i + 1 < end && input.charAt(i + 1) == '-' ? i + 2 : i + 1;
+            if (digits < end && isDigit(input.charAt(digits))) {
+                int j = digits + 1;
+                while (j < end && isDigit(input.charAt(j))) {
+                    j++;
+                }
+                // a fractional power is left to the E operator
+                if (j == end || input.charAt(j) != '.') {
+                    i = j;
+                }
+            }
+        }
+
+        return pack(TokenType.NUMBER, i - pos);
+    }
+
+    private static long scanWord(CharSequence input, int pos, int end) {
+
+        int length;
+
+        if ((length = matchAny(input, pos, end, COMMANDS)) > 0) {
+            return pack(TokenType.COMMAND, length);
+        }
+
+        if ((length = matchAny(input, pos, end, PREFIX_OPERATORS)) > 0) {
+            return pack(TokenType.PREFIX_OPERATOR, length);
+        }
+
+        if ((length = matchAny(input, pos, end, CONSTANTS)) > 0) {
+            return pack(TokenType.CONSTANT, length);
+        }
+
+        if (matches(input, pos, end, ASSIGNMENT)) {
+            return pack(TokenType.ASSIGNMENT, ASSIGNMENT.length());
+        }
+
+        if (matches(input, pos, end, DEFINITION)) {
+            return pack(TokenType.DEFINITION, DEFINITION.length());
+        }
+
+        int i = pos;
+        while (i < end && isWordChar(input.charAt(i))) {
+            i++;
+        }
+        return pack(TokenType.VARIABLE, i - pos);
+    }
+
+    /**
+     * Mirrors regex alternation: the first alternative that matches is taken, not the longest.
+     */
+    private static int matchAny(CharSequence input, int pos, int end, String[] words) {
+        for (String word : words) {
+            if (matches(input, pos, end, word)) {
+                return word.length();
+            }
+        }
+        return 0;
+    }
+
+    private static boolean matches(CharSequence input, int pos, int end, String word) {
+        if (end - pos < word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (input.charAt(pos + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || c == '_';
+    }
+
+    private static long pack(TokenType tokenType, int length) {
+        return ((long) tokenType.ordinal() << 32) | length;
+    }
+
+}
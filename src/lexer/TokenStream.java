@@ -0,0 +1,24 @@
+package lexer;
+
+import parser.SyntaxException;
+
+/**
+ * A source of tokens for the parser, either lexed from a string held in memory
+ * ({@link Lexer}) or from input that is read as it is lexed ({@link StreamingLexer}).
+ */
+public interface TokenStream {
+
+    /**
+     * @return the next token, or null at the end of the input.
+     * @throws SyntaxException if no token starts at the cursor.
+     */
+    Token getNextToken() throws SyntaxException;
+
+    boolean hasMoreTokens();
+
+    /**
+     * The index in the input of the next character to be lexed.
+     */
+    long getCursor();
+
+}
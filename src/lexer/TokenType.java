@@ -1,9 +1,11 @@
 package lexer;
 
+import java.util.regex.Pattern;
+
 public enum TokenType {
 
-    COMMAND             ("^(rad|deg|grad|reg|sci|eng|clear|cls|exit)"),
-    NUMBER              ("^\\d*\\.?\\d+"),
+    COMMAND             ("^(rad|deg|grad|reg|sci|eng|reactive|snapshot|clear|cls|exit)"),
+    NUMBER              ("^\\d*\\.?\\d+(E-?\\d+(?![\\d.]))?"),
     PLUS                ("^\\+"),
     MINUS               ("^-"),
     EXPONENT            ("^\\^"),
@@ -14,18 +16,29 @@ public enum TokenType {
     CLOSE_BRACKET       ("^\\)"),
     CONSTANT            ("^(e|pi|ans)"),
     ASSIGNMENT          ("^(var)"),
+    DEFINITION          ("^(def)"),
     VARIABLE            ("^[a-z_]+"),
     EQUALS              ("^="),
+    COMMA               ("^,"),
     ;
 
-    private String regex;
+    private final String regex;
+    private final Pattern pattern;
 
     private TokenType(String regex) {
         this.regex = regex;
+        this.pattern = Pattern.compile(regex);
     }
 
     public String regex() {
-        return new String(this.regex);
+        return regex;
+    }
+
+    /**
+     * The compiled form of {@link #regex()}, compiled once when the enum is loaded.
+     */
+    public Pattern pattern() {
+        return pattern;
     }
 
 }
@@ -0,0 +1,257 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import ast_nodes.ASTNode;
+import ast_nodes.CommandNode;
+import ast_nodes.DefinitionNode;
+import lexer.Lexer;
+import lexer.Token;
+import lexer.TokenType;
+import parser.Parser;
+import parser.SyntaxException;
+import session.EvaluationContext;
+
+/**
+ * Evaluates expressions one per line without prompting, writing one line of output
+ * per line of input: the result, an error message, or nothing for blank lines and commands.
+ * 
+ * Lines are read in chunks. Most lines only read variables, so runs of them are
+ * evaluated in slices on a pool of workers, each against its own copy of the context.
+ * Lines that change the session (commands, assignments) or read ans are evaluated
+ * in order on the calling thread between runs, so the results are the same as
+ * evaluating every line in order.
+ */
+class BatchRunner implements AutoCloseable {
+
+    static final int CHUNK_SIZE = 1 << 14;
+    static final int SLICE_SIZE = 512;
+
+    private final EvaluationContext context;
+    private final Parser parser;
+    private final ExecutorService workers;
+    private final LongAdder errors = new LongAdder();
+    // formats the results of lines evaluated in order on the calling thread
+    private final StringBuilder formatted = new StringBuilder();
+
+    private long linesRead;
+
+    BatchRunner(EvaluationContext context, int threads) {
+        this.context = context;
+        this.parser = new Parser(context);
+        this.workers = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Evaluates every line until the end of the input or an exit command.
+     * @return how many lines failed.
+     */
+    long run(BufferedReader reader, Writer writer) throws IOException {
+
+        String[] lines = new String[CHUNK_SIZE];
+        String[] results = new String[CHUNK_SIZE];
+
+        while (true) {
+
+            int count = 0;
+            String line;
+            while (count < CHUNK_SIZE && (line = reader.readLine()) != null) {
+                lines[count++] = line;
+            }
+
+            int evaluated = evaluateChunk(lines, results, count);
+            for (int i = 0; i < evaluated; i++) {
+                writer.write(results[i]);
+                writer.write('\n');
+            }
+            linesRead += evaluated;
+
+            if (evaluated < CHUNK_SIZE) {
+                writer.flush();
+                return errors.sum();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+
+    /**
+     * @return how many lines were evaluated, fewer than count if an exit command was reached.
+     */
+    private int evaluateChunk(String[] lines, String[] results, int count) {
+
+        LINE_KIND[] kinds = new LINE_KIND[count];
+        inSlices(0, count, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                kinds[i] = classify(lines[i]);
+            }
+            return null;
+        });
+
+        int runStart = 0;
+        for (int i = 0; i < count; i++) {
+
+            if (kinds[i] == LINE_KIND.INDEPENDENT) {
+                continue;
+            }
+
+            evaluateRun(lines, results, runStart, i);
+            runStart = i + 1;
+
+            if (kinds[i] == LINE_KIND.EXIT) {
+                return i;
+            }
+            if (kinds[i] == LINE_KIND.CLEAR) {
+                results[i] = "";
+            } else {
+                evaluate(parser, lines, results, i, formatted);
+            }
+        }
+
+        evaluateRun(lines, results, runStart, count);
+        return count;
+    }
+
+    /**
+     * Evaluates lines that do not depend on each other in parallel. Each of them
+     * sets ans, so afterwards ans is the result of the last one that succeeded.
+     */
+    private void evaluateRun(String[] lines, String[] results, int from, int to) {
+
+        if (from == to) {
+            return;
+        }
+
+        List<Number> answers = inSlices(from, to, (sliceFrom, sliceTo) -> {
+            Parser sliceParser = new Parser(context.copy());
+            StringBuilder sliceFormatted = new StringBuilder();
+            Number ans = null;
+            for (int i = sliceFrom; i < sliceTo; i++) {
+                if (evaluate(sliceParser, lines, results, i, sliceFormatted)) {
+                    ans = sliceParser.context().variables().get("ans");
+                }
+            }
+            return ans;
+        });
+
+        for (int i = answers.size() - 1; i >= 0; i--) {
+            if (answers.get(i) != null) {
+                context.setVariable("ans", answers.get(i));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Evaluates lines[i] into results[i].
+     * @param formatted Reused to format the result.
+     * @return true if the line set ans.
+     */
+    private boolean evaluate(Parser parser, String[] lines, String[] results, int i, StringBuilder formatted) {
+
+        if (lines[i].isBlank()) {
+            results[i] = "";
+            return false;
+        }
+
+        try {
+            ASTNode ast = parser.parse(lines[i]);
+            if (ast instanceof CommandNode || ast instanceof DefinitionNode) {
+                results[i] = "";
+                return false;
+            }
+            formatted.setLength(0);
+            parser.context().format(ast.evaluate(), formatted);
+            results[i] = formatted.toString();
+            return true;
+        } catch (SyntaxException e) {
+            results[i] = error(i, e.getMessage());
+        } catch (RuntimeException e) {
+            results[i] = error(i, e.toString());
+        }
+        return false;
+    }
+
+    private String error(int i, String message) {
+        errors.increment();
+        return "Error on line " + (linesRead + i + 1) + ": " + message;
+    }
+
+    /**
+     * Lines are independent unless they run a command, assign a variable, define a function or read ans.
+     * A line that fails to lex is still independent, as long as it could not have
+     * made an assignment before the bad token.
+     */
+    private static LINE_KIND classify(String line) {
+        try {
+            Lexer lexer = new Lexer(line);
+            Token token = lexer.getNextToken();
+            if (token != null && token.tokenType() == TokenType.COMMAND) {
+                return switch (token.value()) {
+                    case "exit" -> LINE_KIND.EXIT;
+                    case "cls", "clear" -> LINE_KIND.CLEAR;
+                    default -> LINE_KIND.SEQUENTIAL;
+                };
+            }
+            for (; token != null; token = lexer.getNextToken()) {
+                if (token.tokenType() == TokenType.ASSIGNMENT
+                        || token.tokenType() == TokenType.DEFINITION
+                        || (token.tokenType() == TokenType.CONSTANT && token.value().equals("ans"))) {
+                    return LINE_KIND.SEQUENTIAL;
+                }
+            }
+        } catch (SyntaxException e) {
+            // reported when the line is evaluated
+        }
+        return LINE_KIND.INDEPENDENT;
+    }
+
+    /**
+     * Runs the task on the workers over slices of [from, to).
+     * @return the result of each slice, in order.
+     */
+    private <T> List<T> inSlices(int from, int to, SliceTask<T> task) {
+
+        List<Future<T>> futures = new ArrayList<>();
+        for (int start = from; start < to; start += SLICE_SIZE) {
+            int sliceFrom = start;
+            int sliceTo = Math.min(start + SLICE_SIZE, to);
+            futures.add(workers.submit(() -> task.run(sliceFrom, sliceTo)));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A worker failed while evaluating.", e.getCause());
+        }
+        return results;
+    }
+
+    @FunctionalInterface
+    private interface SliceTask<T> {
+        T run(int from, int to);
+    }
+
+    private enum LINE_KIND {
+        INDEPENDENT, SEQUENTIAL, CLEAR, EXIT;
+    }
+
+}
@@ -1,13 +1,29 @@
 package main;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 import ast_nodes.ASTNode;
-import ast_nodes.NumberNode;
-import ast_nodes.UnaryOperatorNode;
 import lexer.Lexer;
+import metrics.Metrics;
+import metrics.Metrics.PHASE;
+import metrics.PhaseStats;
 import parser.Parser;
 import parser.SyntaxException;
+import server.EvaluationLimits;
+import server.EvaluationServer;
+import session.EvaluationContext;
+import session.SessionSnapshot;
 
 public class Main {
 
@@ -21,6 +37,9 @@ public class Main {
     public static final String ANSI_CYAN = "\u001B[36m";
     public static final String ANSI_WHITE = "\u001B[37m";
 
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+    private static final int DEFAULT_PORT = 7878;
+
     // TODO: implement a nice refresh / scroll (not sure what feels best)
     public static void main(String[] args) {
 
@@ -30,6 +49,13 @@ public class Main {
                 case "--help":
                 case "help":
                     printHelpMessage();
+                    break;
+                case "--batch":
+                    runBatch(args.length > 1 ? args[1] : "-");
+                    break;
+                case "--serve":
+                    runServer(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+                    break;
                 default:
                     break;
             }
@@ -37,12 +63,13 @@ public class Main {
         }
 
         Scanner scanner = new Scanner(System.in);
-        Parser parser = new Parser();
+        EvaluationContext context = openSession();
+        Parser parser = new Parser(context, Integer.getInteger("calculator.parseCacheSize", 0));
         ASTNode ast;
 
         while(true) {
             
-            System.out.println("Enter your expression to evaluate." + ANSI_BLUE + "\t" + UnaryOperatorNode.angleMode.name() + " | " + NumberNode.decimalMode.name() + ANSI_RESET);
+            System.out.println("Enter your expression to evaluate." + ANSI_BLUE + "\t" + context.angleMode().name() + " | " + context.decimalMode().name() + ANSI_RESET);
 
             String inputString;
             inputString = scanner.nextLine();
@@ -54,7 +81,7 @@ public class Main {
                 if (ast != null) {
                     Number result = ast.evaluate();
                     if (result != null) {
-                        System.out.println("= " + NumberNode.formatNumber(result));
+                        System.out.println("= " + context.format(result));
                     } 
                 } else {
                     break;
@@ -68,6 +95,89 @@ public class Main {
         scanner.close();
     }
 
+    /**
+     * Evaluates every line of the file, or of stdin for "-", and exits with
+     * status 1 if any line failed.
+     * The number of worker threads is set with -Dcalculator.batchThreads.
+     */
+    private static void runBatch(String file) {
+
+        int threads = Integer.getInteger("calculator.batchThreads", Runtime.getRuntime().availableProcessors());
+        long errors;
+
+        try (BufferedReader reader = file.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), IO_BUFFER_SIZE)
+                    : Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+                BatchRunner runner = new BatchRunner(openSession(), Math.max(1, threads))) {
+            errors = runner.run(reader, writer);
+        } catch (IOException e) {
+            System.err.println("Could not read " + file + ": " + e.getMessage());
+            errors = 1;
+        }
+
+        if (Metrics.ENABLED) {
+            printMetrics();
+        }
+
+        if (errors > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The context of the session snapshot set with -Dcalculator.session, or a new
+     * context if the file does not exist yet. The context is saved back to the
+     * file when the process exits.
+     */
+    private static EvaluationContext openSession() {
+
+        String file = System.getProperty("calculator.session");
+        if (file == null) {
+            return new EvaluationContext();
+        }
+
+        Path path = Path.of(file);
+        EvaluationContext context = new EvaluationContext();
+        if (Files.exists(path)) {
+            try {
+                context = SessionSnapshot.load(path);
+            } catch (IOException e) {
+                System.err.println("Could not restore the session from " + file + ": " + e.getMessage());
+            }
+        }
+
+        EvaluationContext session = context;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                SessionSnapshot.save(session, path);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not save the session to " + file + ": " + e.getMessage());
+            }
+        }));
+        return context;
+    }
+
+    /**
+     * Serves sessions on the port until the process is killed.
+     * The limits of each request are set with -Dcalculator.server.* (see EvaluationLimits).
+     */
+    private static void runServer(int port) {
+        try (EvaluationServer server = new EvaluationServer(port, EvaluationLimits.fromProperties())) {
+            System.err.println("Listening on localhost:" + server.port());
+            server.serve();
+        } catch (IOException e) {
+            System.err.println("Could not listen on port " + port + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printMetrics() {
+        for (PHASE phase : PHASE.values()) {
+            System.err.println(phase + ": " + PhaseStats.of(Metrics.histogram(phase)));
+        }
+    }
+
     private static void printHelpMessage() {
         System.out.println("This is an unhelpful help message!");
     }
@@ -0,0 +1,160 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process wide latency histograms for each phase of the calculator, and counters
+ * of tokens, nodes and errors. Turned on with -Dcalculator.metrics=true, which
+ * also registers them over JMX (see {@link MetricsMXBean}) and emits a
+ * {@link PhaseEvent} per measured phase to any flight recording.
+ * 
+ * ENABLED is a constant, so callers guard their timing with it and it costs
+ * nothing when metrics are off: the JIT removes the guarded code.
+ * 
+ * In immediate mode the parser evaluates as it parses, so that evaluation is
+ * part of the parse phase. The evaluate phase measures prepared expressions.
+ */
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("calculator.metrics");
+
+    static final int MAX_EVENT_INPUT = 256;
+
+    private static final Map<PHASE, LatencyHistogram> HISTOGRAMS = new EnumMap<>(PHASE.class);
+    private static final LongAdder TOKENS = new LongAdder();
+    private static final LongAdder NODES = new LongAdder();
+    private static final LongAdder SYNTAX_ERRORS = new LongAdder();
+    private static final LongAdder ERRORS = new LongAdder();
+
+    static {
+        for (PHASE phase : PHASE.values()) {
+            HISTOGRAMS.put(phase, new LatencyHistogram());
+        }
+        if (ENABLED) {
+            register();
+        }
+    }
+
+    private Metrics() {}
+
+    /**
+     * @param start The System.nanoTime() the phase started at.
+     * @param input The input being processed, or null if it is not known.
+     */
+    public static void record(PHASE phase, long start, String input) {
+        recordNanos(phase, System.nanoTime() - start, input);
+    }
+
+    /**
+     * Records a phase that did not run in one piece, e.g. lexing interleaved with parsing.
+     */
+    public static void recordNanos(PHASE phase, long nanos, String input) {
+        HISTOGRAMS.get(phase).record(nanos);
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.elapsed = nanos;
+            event.input = input == null || input.length() <= MAX_EVENT_INPUT ? input : input.substring(0, MAX_EVENT_INPUT);
+            event.commit();
+        }
+    }
+
+    public static void countTokens(long tokens) {
+        TOKENS.add(tokens);
+    }
+
+    public static void countNodes(long nodes) {
+        NODES.add(nodes);
+    }
+
+    public static void countSyntaxError() {
+        SYNTAX_ERRORS.increment();
+    }
+
+    /**
+     * Counts a failure that is not a SyntaxException.
+     */
+    public static void countError() {
+        ERRORS.increment();
+    }
+
+    public static LatencyHistogram histogram(PHASE phase) {
+        return HISTOGRAMS.get(phase);
+    }
+
+    public static void reset() {
+        HISTOGRAMS.values().forEach(LatencyHistogram::reset);
+        TOKENS.reset();
+        NODES.reset();
+        SYNTAX_ERRORS.reset();
+        ERRORS.reset();
+    }
+
+    private static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), new ObjectName("calculator:type=Metrics"));
+        } catch (JMException e) {
+            // already registered, e.g. by another class loader
+        }
+    }
+
+    public enum PHASE {
+        LEX, PARSE, EVALUATE, FORMAT;
+    }
+
+    private static class MetricsBean implements MetricsMXBean {
+
+        @Override
+        public PhaseStats getLex() {
+            return PhaseStats.of(HISTOGRAMS.get(PHASE.LEX));
+        }
+
+        @Override
+        public PhaseStats getParse() {
+            return PhaseStats.of(HISTOGRAMS.get(PHASE.PARSE));
+        }
+
+        @Override
+        public PhaseStats getEvaluate() {
+            return PhaseStats.of(HISTOGRAMS.get(PHASE.EVALUATE));
+        }
+
+        @Override
+        public PhaseStats getFormat() {
+            return PhaseStats.of(HISTOGRAMS.get(PHASE.FORMAT));
+        }
+
+        @Override
+        public long getTokens() {
+            return TOKENS.sum();
+        }
+
+        @Override
+        public long getNodes() {
+            return NODES.sum();
+        }
+
+        @Override
+        public long getSyntaxErrors() {
+            return SYNTAX_ERRORS.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return ERRORS.sum();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+
+    }
+
+}
@@ -0,0 +1,26 @@
+package metrics;
+
+/**
+ * The metrics as registered with the platform MBean server, under calculator:type=Metrics.
+ */
+public interface MetricsMXBean {
+
+    PhaseStats getLex();
+
+    PhaseStats getParse();
+
+    PhaseStats getEvaluate();
+
+    PhaseStats getFormat();
+
+    long getTokens();
+
+    long getNodes();
+
+    long getSyntaxErrors();
+
+    long getErrors();
+
+    void reset();
+
+}
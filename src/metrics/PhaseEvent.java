@@ -0,0 +1,33 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emitted for every measured phase while a flight recording has it enabled,
+ * e.g. with -XX:StartFlightRecording and the default settings. Phases are timed
+ * by the caller, so the time is in elapsed rather than the event's own duration.
+ */
+@Name("calculator.Phase")
+@Label("Calculator Phase")
+@Category("Calculator")
+@Description("The time one input spent in a phase of the calculator.")
+@StackTrace(false)
+class PhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Input")
+    @Description("The input, cut off after " + Metrics.MAX_EVENT_INPUT + " characters, if it is known.")
+    String input;
+
+}
@@ -0,0 +1,58 @@
+package metrics;
+
+/**
+ * A snapshot of one phase's latency histogram, in nanoseconds.
+ */
+public class PhaseStats {
+
+    private final long count;
+    private final double meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    public PhaseStats(long count, double meanNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public static PhaseStats of(LatencyHistogram histogram) {
+        return new PhaseStats(histogram.count(), histogram.meanNanos(), histogram.valueAtQuantile(0.5),
+            histogram.valueAtQuantile(0.99), histogram.valueAtQuantile(0.999), histogram.maxNanos());
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns p50=%dns p99=%dns p99.9=%dns max=%dns", count, meanNanos, p50Nanos, p99Nanos, p999Nanos, maxNanos);
+    }
+
+}
@@ -0,0 +1,153 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ast_nodes.ASTNode;
+import ast_nodes.BinaryOperatorNode;
+import ast_nodes.FunctionNode;
+import ast_nodes.NumberNode;
+import ast_nodes.SharedNode;
+import ast_nodes.SlotNode;
+import ast_nodes.UnaryOperatorNode;
+import ast_nodes.VariableNode;
+
+/**
+ * Hash conses a tree into a DAG: structurally identical subtrees become a single
+ * instance, and every such subtree that is used more than once, other than a
+ * leaf, is wrapped in a SharedNode so it is only computed once per evaluation.
+ * 
+ * Calls to impure functions are never merged, and neither is anything containing one.
+ */
+public class CommonSubexpressions {
+
+    private final Map<Key, ASTNode> interned = new HashMap<>();
+    private final Map<ASTNode, Integer> uses = new IdentityHashMap<>();
+    private final Map<ASTNode, ASTNode> shared = new IdentityHashMap<>();
+    private int sharedCount;
+
+    private CommonSubexpressions() {}
+
+    public static ASTNode eliminate(ASTNode ast) {
+        CommonSubexpressions cse = new CommonSubexpressions();
+        ASTNode dag = cse.intern(ast);
+        cse.countUses(dag);
+        return cse.share(dag);
+    }
+
+    /**
+     * Replaces each subtree with the first structurally identical subtree seen.
+     */
+    private ASTNode intern(ASTNode node) {
+
+        if (node instanceof SharedNode sharedNode) {
+            return intern(sharedNode.node());
+        }
+
+        List<ASTNode> children = new ArrayList<>();
+        boolean changed = false;
+        for (ASTNode child : node.children()) {
+            ASTNode internedChild = intern(child);
+            children.add(internedChild);
+            changed |= internedChild != child;
+        }
+
+        Key key = key(node, children);
+        if (key == null) {
+            return changed ? withChildren(node, children) : node;
+        }
+        ASTNode existing = interned.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        ASTNode internedNode = changed ? withChildren(node, children) : node;
+        interned.put(key, internedNode);
+        return internedNode;
+    }
+
+    /**
+     * Counts the parents of each node in the DAG, visiting each node's children once.
+     */
+    private void countUses(ASTNode node) {
+        if (uses.merge(node, 1, Integer::sum) == 1) {
+            for (ASTNode child : node.children()) {
+                countUses(child);
+            }
+        }
+    }
+
+    private ASTNode share(ASTNode node) {
+
+        ASTNode done = shared.get(node);
+        if (done != null) {
+            return done;
+        }
+
+        List<ASTNode> children = new ArrayList<>();
+        boolean changed = false;
+        for (ASTNode child : node.children()) {
+            ASTNode sharedChild = share(child);
+            children.add(sharedChild);
+            changed |= sharedChild != child;
+        }
+
+        ASTNode result = changed ? withChildren(node, children) : node;
+        if (uses.get(node) > 1 && !children.isEmpty()) {
+            result = new SharedNode(sharedCount++, result);
+        }
+        shared.put(node, result);
+        return result;
+    }
+
+    /**
+     * @return the structure of the node given its interned children, or null if it
+     *         must not be merged with anything else.
+     */
+    private static Key key(ASTNode node, List<ASTNode> children) {
+        if (node instanceof NumberNode number) {
+            return new Key(NumberNode.class, number.value(), null, children);
+        }
+        if (node instanceof VariableNode variable) {
+            return new Key(VariableNode.class, variable.name(), variable.value(), children);
+        }
+        if (node instanceof SlotNode slot) {
+            return new Key(SlotNode.class, slot.slot(), slot.resultType(), children);
+        }
+        if (node instanceof BinaryOperatorNode binary) {
+            return new Key(BinaryOperatorNode.class, binary.opToken(), null, children);
+        }
+        if (node instanceof UnaryOperatorNode unary) {
+            return new Key(UnaryOperatorNode.class, unary.opToken(), unary.angleMode(), children);
+        }
+        if (node instanceof FunctionNode call && call.function().isPure()) {
+            return new Key(FunctionNode.class, call.function(), null, children);
+        }
+        return null;
+    }
+
+    static ASTNode withChildren(ASTNode node, List<ASTNode> children) {
+        if (node instanceof BinaryOperatorNode binary) {
+            return new BinaryOperatorNode(binary.opToken(), children.get(0), children.get(1));
+        }
+        if (node instanceof UnaryOperatorNode unary) {
+            return new UnaryOperatorNode(unary.opToken(), children.get(0), unary.angleMode());
+        }
+        if (node instanceof FunctionNode call) {
+            return new FunctionNode(call.function(), children);
+        }
+        if (node instanceof SharedNode shared) {
+            return new SharedNode(shared.index(), children.get(0));
+        }
+        // other kinds of node keep their own children
+        return node;
+    }
+
+    /**
+     * Children are compared by identity, since they are already interned.
+     */
+    private record Key(Class<?> kind, Object operator, Object modifier, List<ASTNode> children) {}
+
+}
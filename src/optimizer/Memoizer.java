@@ -0,0 +1,162 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ast_nodes.ASTNode;
+import ast_nodes.BinaryOperatorNode;
+import ast_nodes.FunctionNode;
+import ast_nodes.MemoNode;
+import ast_nodes.NumberNode;
+import ast_nodes.ResultCache;
+import ast_nodes.SharedNode;
+import ast_nodes.SlotNode;
+import ast_nodes.UnaryOperatorNode;
+import ast_nodes.VariableNode;
+
+/**
+ * Wraps the expensive pure subtrees of a prepared expression in MemoNodes, so
+ * their results are reused across evaluations while the slots they read keep
+ * their values.
+ *
+ * A subtree is worth memoizing when it costs at least MIN_COST, counting trig,
+ * powers, factorials and function calls as EXPENSIVE and arithmetic as 1 or 2.
+ * Below the root, a subtree is only memoized if it reads fewer slots than its
+ * parent: one that reads the same slots misses exactly when its parent does.
+ * Subtrees containing an impure call, or a node this class does not know, are
+ * never memoized.
+ */
+public final class Memoizer {
+
+    public static final int EXPENSIVE = 8;
+    public static final int MIN_COST = 2 * EXPENSIVE;
+
+    private final ResultCache cache;
+    private final Map<ASTNode, Info> infos = new IdentityHashMap<>();
+    private final Map<ASTNode, ASTNode> memoized = new IdentityHashMap<>();
+
+    private Memoizer(ResultCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param cache The cache the results are kept in, or null to leave the tree as it is.
+     * @return the tree with its expensive subtrees memoized, or ast itself if there are none.
+     */
+    public static ASTNode memoize(ASTNode ast, ResultCache cache) {
+        if (cache == null) {
+            return ast;
+        }
+        return new Memoizer(cache).rewrite(ast, null);
+    }
+
+    /**
+     * Whether at least half of the evaluations of the memoized subtrees of a tree
+     * built by {@link #memoize} were answered from the cache.
+     */
+    public static boolean paysOff(ASTNode memoized) {
+        long[] counts = new long[2];
+        count(memoized, counts, new IdentityHashMap<>());
+        return counts[0] > 0 && counts[0] >= counts[1];
+    }
+
+    private static void count(ASTNode node, long[] counts, Map<ASTNode, Boolean> visited) {
+        if (visited.put(node, true) != null) {
+            return;
+        }
+        if (node instanceof MemoNode memo) {
+            counts[0] += memo.hits();
+            counts[1] += memo.misses();
+        }
+        for (ASTNode child : node.children()) {
+            count(child, counts, visited);
+        }
+    }
+
+    private ASTNode rewrite(ASTNode node, BitSet parentReads) {
+
+        ASTNode done = memoized.get(node);
+        if (done != null) {
+            return done;
+        }
+
+        Info info = info(node);
+        List<ASTNode> children = new ArrayList<>();
+        boolean changed = false;
+        for (ASTNode child : node.children()) {
+            ASTNode memoizedChild = rewrite(child, info.reads());
+            children.add(memoizedChild);
+            changed |= memoizedChild != child;
+        }
+
+        ASTNode result = changed ? CommonSubexpressions.withChildren(node, children) : node;
+        if (info.pure() && info.cost() >= MIN_COST && (parentReads == null || info.reads().cardinality() < parentReads.cardinality())) {
+            result = new MemoNode(result, info.reads().stream().toArray(), cache);
+        }
+        memoized.put(node, result);
+        return result;
+    }
+
+    private Info info(ASTNode node) {
+
+        Info info = infos.get(node);
+        if (info != null) {
+            return info;
+        }
+
+        BitSet reads = new BitSet();
+        int cost = ownCost(node);
+        boolean pure = isKnownPure(node);
+        for (ASTNode child : node.children()) {
+            Info childInfo = info(child);
+            reads.or(childInfo.reads());
+            cost += childInfo.cost();
+            pure &= childInfo.pure();
+        }
+        if (node instanceof SlotNode slot) {
+            reads.set(slot.slot());
+        }
+
+        info = new Info(reads, cost, pure);
+        infos.put(node, info);
+        return info;
+    }
+
+    private static int ownCost(ASTNode node) {
+        if (node instanceof UnaryOperatorNode unary) {
+            return switch (unary.opToken()) {
+                case "-", "~" -> 1;
+                case "sqrt" -> 2;
+                default -> EXPENSIVE;
+            };
+        }
+        if (node instanceof BinaryOperatorNode binary) {
+            return switch (binary.opToken()) {
+                case "^", "E" -> EXPENSIVE;
+                case "/", "%" -> 2;
+                default -> 1;
+            };
+        }
+        if (node instanceof FunctionNode) {
+            return EXPENSIVE;
+        }
+        return 0;
+    }
+
+    private static boolean isKnownPure(ASTNode node) {
+        if (node instanceof FunctionNode call) {
+            return call.function().isPure();
+        }
+        return node instanceof NumberNode || node instanceof VariableNode || node instanceof SlotNode
+            || node instanceof UnaryOperatorNode || node instanceof BinaryOperatorNode || node instanceof SharedNode;
+    }
+
+    /**
+     * @param reads The slots the subtree reads.
+     */
+    private record Info(BitSet reads, int cost, boolean pure) {}
+
+}
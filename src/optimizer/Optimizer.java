@@ -0,0 +1,181 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ast_nodes.ASTNode;
+import ast_nodes.ASTNode.RESULT_TYPE;
+import ast_nodes.BinaryOperatorNode;
+import ast_nodes.Bindings;
+import ast_nodes.FunctionNode;
+import ast_nodes.NumberNode;
+import ast_nodes.SharedNode;
+import ast_nodes.UnaryOperatorNode;
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import ast_nodes.VariableNode;
+
+/**
+ * Simplifies a parsed tree before it is evaluated:
+ * 
+ * - Subtrees without variable slots are folded into a single NumberNode, as
+ *   long as every function they call is pure.
+ * - Identities that hold for every double, including NaN, infinities and
+ *   -0.0, are applied: x*1, 1*x, x/1, x-0, x^1, xE0 and -(-x) become x.
+ *   x+0 is not simplified, because -0.0 + 0 is +0.0.
+ * 
+ * Identities are only applied when x already evaluates to a Double, so the
+ * type of Number the expression returns does not change.
+ */
+public class Optimizer {
+
+    private final ANGLE_MODE angleMode;
+
+    /**
+     * @param angleMode The angle mode to change trig to, or null to keep the
+     *                  angle mode each trig operator was parsed with.
+     */
+    public Optimizer(ANGLE_MODE angleMode) {
+        this.angleMode = angleMode;
+    }
+
+    /**
+     * Subexpressions that are still repeated after simplifying are merged again.
+     */
+    public Result optimize(ASTNode ast) {
+        ASTNode optimized = CommonSubexpressions.eliminate(simplify(ast));
+        return new Result(optimized, countNodes(ast) - countNodes(optimized));
+    }
+
+    /**
+     * Counts each occurrence of a shared subtree, not counting the SharedNode itself.
+     */
+    public static int countNodes(ASTNode ast) {
+        int count = ast instanceof SharedNode ? 0 : 1;
+        for (ASTNode child : ast.children()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+
+    private ASTNode simplify(ASTNode node) {
+        if (node instanceof BinaryOperatorNode binary) {
+            return simplifyBinary(binary);
+        }
+        if (node instanceof UnaryOperatorNode unary) {
+            return simplifyUnary(unary);
+        }
+        if (node instanceof FunctionNode call) {
+            return simplifyCall(call);
+        }
+        if (node instanceof SharedNode shared) {
+            return simplify(shared.node());
+        }
+        return node;
+    }
+
+    private ASTNode simplifyBinary(BinaryOperatorNode node) {
+
+        ASTNode left = simplify(node.left());
+        ASTNode right = simplify(node.right());
+        ASTNode simplified = left == node.left() && right == node.right()
+            ? node
+            : new BinaryOperatorNode(node.opToken(), left, right);
+
+        if (isConstant(left) && isConstant(right)) {
+            return fold(simplified);
+        }
+
+        switch (node.opToken()) {
+            case "*":
+                if (isConstant(right, 1) && isDouble(left)) return left;
+                if (isConstant(left, 1) && isDouble(right)) return right;
+                break;
+            case "/":
+            case "^":
+                if (isConstant(right, 1) && isDouble(left)) return left;
+                break;
+            case "-":
+            case "E":
+                if (isConstant(right, 0) && isDouble(left)) return left;
+                break;
+            default:
+                break;
+        }
+
+        return simplified;
+    }
+
+    private ASTNode simplifyUnary(UnaryOperatorNode node) {
+
+        ASTNode operand = simplify(node.operand());
+        boolean trig = node.isTrigonometric();
+        ANGLE_MODE nodeAngleMode = trig && angleMode != null ? angleMode : node.angleMode();
+        ASTNode simplified = operand == node.operand() && nodeAngleMode == node.angleMode()
+            ? node
+            : new UnaryOperatorNode(node.opToken(), operand, nodeAngleMode);
+
+        if (isConstant(operand)) {
+            return fold(simplified);
+        }
+
+        if (node.opToken().equals("-")
+                && operand instanceof UnaryOperatorNode inner
+                && inner.opToken().equals("-")
+                && isDouble(inner.operand())) {
+            return inner.operand();
+        }
+
+        return simplified;
+    }
+
+    private ASTNode simplifyCall(FunctionNode node) {
+
+        List<ASTNode> arguments = new ArrayList<>();
+        boolean changed = false;
+        boolean constant = true;
+        for (ASTNode argument : node.children()) {
+            ASTNode simplified = simplify(argument);
+            arguments.add(simplified);
+            changed |= simplified != argument;
+            constant &= isConstant(simplified);
+        }
+        ASTNode simplified = changed ? new FunctionNode(node.function(), arguments) : node;
+
+        if (constant && node.function().isPure()) {
+            return fold(simplified);
+        }
+        return simplified;
+    }
+
+    /**
+     * Evaluates a constant subtree now. If it fails or overflows the subtree is
+     * left alone, so the error is still reported, or the overflow still computed
+     * for the whole tree, when the expression is evaluated.
+     */
+    private static ASTNode fold(ASTNode node) {
+        try {
+            return new NumberNode(node.evaluateExact(Bindings.EMPTY));
+        } catch (RuntimeException e) {
+            return node;
+        }
+    }
+
+    private static boolean isConstant(ASTNode node) {
+        // variables are captured when they are parsed, only slots change between evaluations
+        return node instanceof NumberNode || node instanceof VariableNode;
+    }
+
+    private static boolean isConstant(ASTNode node, double value) {
+        return isConstant(node) && Double.compare(node.evaluateDouble(), value) == 0;
+    }
+
+    private static boolean isDouble(ASTNode node) {
+        return node.resultType() == RESULT_TYPE.DOUBLE;
+    }
+
+    /**
+     * @param removedNodes How many fewer nodes the optimized tree has.
+     */
+    public record Result(ASTNode ast, int removedNodes) {}
+
+}
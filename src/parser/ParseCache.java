@@ -0,0 +1,197 @@
+package parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ast_nodes.ASTNode;
+import ast_nodes.ASTNode.RESULT_TYPE;
+import ast_nodes.CommandNode;
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import ast_nodes.VariableNode;
+import session.EvaluationContext;
+import session.EvaluationContext.ASSIGNMENT_MODE;
+
+/**
+ * A bounded LRU cache of parsed inputs, keyed by the input with its whitespace normalized.
+ * 
+ * Parsing captures variable values and runs commands, so trees cannot be reused
+ * as they are. Instead the cache holds:
+ * - for commands, the command, which is run again on every hit.
+ * - for expressions and top level assignments, a prepared expression whose
+ *   variables (and ans) are slots, bound to the current values on every hit.
+ * 
+ * Inputs with nested assignments are never cached, and defining a function
+ * clears the cache, since it can change what a cached input calls.
+ */
+public class ParseCache {
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ParseCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The cache capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ParseCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Strips the input and collapses each run of whitespace to one space. An
+     * input that is already normalized is returned as it is.
+     */
+    public static String normalize(String input) {
+
+        String stripped = input.strip();
+        int length = stripped.length();
+        int i = 0;
+        while (i < length && !startsRun(stripped, i)) {
+            i++;
+        }
+        if (i == length) {
+            return stripped;
+        }
+
+        StringBuilder normalized = new StringBuilder(length).append(stripped, 0, i);
+        boolean inRun = false;
+        for (; i < length; i++) {
+            char c = stripped.charAt(i);
+            if (!isSpace(c)) {
+                normalized.append(c);
+                inRun = false;
+            } else if (!inRun) {
+                normalized.append(' ');
+                inRun = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Whether the whitespace at i, if any, would not be kept as it is.
+     */
+    private static boolean startsRun(String input, int i) {
+        char c = input.charAt(i);
+        return isSpace(c) && (c != ' ' || (i + 1 < input.length() && isSpace(input.charAt(i + 1))));
+    }
+
+    /**
+     * The characters matched by \s in a regex.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * @return the entry for the key, or null if there is none or it no longer
+     *         matches the variable types or angle mode of the context.
+     */
+    Entry lookup(String key, EvaluationContext context) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isCurrent(context)) {
+            hits++;
+            return entry;
+        }
+        misses++;
+        return null;
+    }
+
+    void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), capacity);
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size, int capacity) {
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+    }
+
+    /**
+     * @param command          The command to run, or null for an expression.
+     * @param assignedVariable The variable a top level assignment stores into, or null.
+     * @param expression       The expression with its variables as slots.
+     * @param slotNames        The variable of each slot.
+     * @param slotTypes        The type each slot was parsed with.
+     * @param angleMode        The angle mode trig was parsed with.
+     */
+    record Entry(String command, String assignedVariable, PreparedExpression expression, String[] slotNames, RESULT_TYPE[] slotTypes, ANGLE_MODE angleMode) {
+
+        static Entry command(String command) {
+            return new Entry(command, null, null, new String[0], new RESULT_TYPE[0], null);
+        }
+
+        /**
+         * Does the same as Parser.parse would for the input this entry was made from.
+         */
+        ASTNode execute(EvaluationContext context) {
+            if (command != null) {
+                return new CommandNode(command, context);
+            }
+            Number value = expression.evaluate(expression.newBindings());
+            if (assignedVariable != null) {
+                context.setVariable(assignedVariable, value);
+            }
+            context.setVariable("ans", value);
+            return new VariableNode("ans", value);
+        }
+
+        /**
+         * Trig is fixed to the angle mode at the time of parsing, and the slot
+         * nodes were built for the variable types at the time of parsing,
+         * which decide how bitwise operators convert them and how results are boxed.
+         * Undefined variables are left to fail when the expression is evaluated.
+         */
+        boolean isCurrent(EvaluationContext context) {
+            if (expression == null) {
+                return true;
+            }
+            if (angleMode != context.angleMode()) {
+                return false;
+            }
+            // a reactive assignment keeps its expression instead
+            if (assignedVariable != null && context.assignmentMode() == ASSIGNMENT_MODE.REACTIVE) {
+                return false;
+            }
+            for (int slot = 0; slot < slotNames.length; slot++) {
+                Number value = context.lookup(slotNames[slot]);
+                if (value != null && (RESULT_TYPE.of(value) != slotTypes[slot] || !isExactDouble(value))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isExactDouble(Number value) {
+            if (value instanceof Long longValue) {
+                return (long) longValue.doubleValue() == longValue;
+            }
+            return value instanceof Integer || value instanceof Double;
+        }
+
+    }
+
+}
@@ -1,59 +1,417 @@
 package parser;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
 import ast_nodes.ASTNode;
+import ast_nodes.ASTNode.RESULT_TYPE;
 import ast_nodes.BinaryOperatorNode;
+import ast_nodes.Bindings;
 import ast_nodes.CommandNode;
+import ast_nodes.DefinitionNode;
+import ast_nodes.FunctionNode;
 import ast_nodes.NumberNode;
+import ast_nodes.SlotNode;
 import ast_nodes.UnaryOperatorNode;
 import ast_nodes.VariableNode;
+import functions.Cancellation;
+import functions.MathFunction;
+import functions.UserFunction;
 import lexer.Lexer;
+import lexer.NumberLiteral;
+import lexer.StreamingLexer;
 import lexer.Token;
+import lexer.TokenStream;
 import lexer.TokenType;
+import metrics.Metrics;
+import metrics.Metrics.PHASE;
+import session.EvaluationContext;
+import session.EvaluationContext.ASSIGNMENT_MODE;
 
 /**
  * Takes tokens from the Lexer and produces an Abstract Syntax Tree (AST)
- * using recusrive descent parsing (LL1 parser).
+ * with an operator precedence parser (see parseExpression), which keeps its
+ * pending operands and operators on explicit stacks rather than recursing.
  * 
- * The grammar is roughly as follows (terminals denoted with <>):
+ * Operands are numbers, variables, function calls f(a, b, ...) and bracketed
+ * expressions. The operators, from lowest to highest precedence and all left
+ * associative (terminals denoted with <>):
  * 
- * Expression ::= Term {-|+ Term}
- * Term       ::= Factor {<InfixBinaryOperator> Term} | Factor {<PostfixOperator>} | Factor
- * Factor     ::= <PrefixOperator> Factor | base {^ Exponent} | Base
- * Exponent   ::= (Expression) | <Number>
- * Base       ::= (Expression) | <Number>
+ * var x =                      an assignment, up to ) or the end of the expression
+ * + -
+ * <Infix> and <Postfix>        * / % & | << >> E and !
+ * <Prefix> and -               sqrt sin cos tan ~
+ * ^                            the exponent must be a number or in brackets
  * 
+ * When parsing to evaluate, each node is folded into its value as soon as it is
+ * reduced, so brackets and operators can be nested as deep as the heap allows.
+ * Trees that are kept, for prepared expressions, formulas and function bodies,
+ * are evaluated, optimized, compiled and saved by walking them recursively, so
+ * they are limited to MAX_TREE_DEPTH levels.
  * 
- * More Sinply:
- * E -> E [(-|+) T]*
- * T -> T [(*|/) F]*
- * F -> F ^ X | B
- * B -> i | (E)
- * X -> i | (E)
+ * Variables, functions, ans and the angle mode are read from the parser's
+ * EvaluationContext, and commands, assignments and definitions are applied to it.
  */
 public class Parser {
 
-    private Lexer lexer;
+    /**
+     * Set with -Dcalculator.maxTreeDepth. Every walk of a tree this deep fits in
+     * the default 1 MiB thread stack with room to spare.
+     */
+    public static final int MAX_TREE_DEPTH = Integer.getInteger("calculator.maxTreeDepth", 1000);
+
+    // operator kinds, in order of precedence
+    private static final int BRACKET = 0;
+    private static final int CALL = 1;
+    private static final int ASSIGNMENT = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+    private static final int PREFIX = 5;
+    private static final int POWER = 6;
+
+    private TokenStream lexer;
     private Token nextToken;
-
+    private ASTNode[] operands = new ASTNode[16];
+    // the depth of the tree of each operand
+    private int[] operandDepths = new int[16];
+    private int operandCount;
+    private int[] operatorKinds = new int[16];
+    private String[] operatorTokens = new String[16];
+    private int[] operatorOperands = new int[16];
+    private int operatorCount;
+    private Map<String, Integer> slots;
+    private boolean typedSlots;
+    private boolean definingFunction;
+    private long lexNanos;
+    private int tokenCount;
+    private int nodeCount;
+    private final EvaluationContext context;
+    private final ParseCache cache;
+
+    /**
+     * A parser with a new context of its own.
+     */
     public Parser() {
+        this(new EvaluationContext());
+    }
+
+    public Parser(EvaluationContext context) {
+        this(context, 0);
+    }
+
+    /**
+     * @param cacheSize How many inputs to keep in an LRU parse cache, 0 for no cache.
+     */
+    public Parser(EvaluationContext context, int cacheSize) {
         this.nextToken = null;
         this.lexer = null;
+        this.slots = null;
+        this.context = context;
+        this.cache = cacheSize > 0 ? new ParseCache(cacheSize) : null;
     }
-    
+
     public ASTNode parse(String input) throws SyntaxException {
+        return Metrics.ENABLED ? measure(input, () -> parseString(input)) : parseString(input);
+    }
 
-        lexer = new Lexer(input);
-        nextToken = lexer.getNextToken();
+    private ASTNode parseString(String input) throws SyntaxException {
+
+        context.takeSnapshot();
+
+        if (cache == null) {
+            return parseUncached(input);
+        }
+
+        String key = ParseCache.normalize(input);
+        ParseCache.Entry entry = cache.lookup(key, context);
+        if (entry != null) {
+            return entry.execute(context);
+        }
+
+        // parsed once, into the entry, which runs the same way as on a hit
+        ParseCache.Entry newEntry = cacheEntry(input);
+        if (newEntry == null) {
+            return parseUncached(input);
+        }
+        if (!newEntry.isCurrent(context)) {
+            // slots that cannot hold the current values exactly, so not run this time
+            cache.put(key, newEntry);
+            return parseUncached(input);
+        }
+        ASTNode result = newEntry.execute(context);
+        cache.put(key, newEntry);
+        return result;
+    }
+
+    /**
+     * @return the parse cache, or null if this parser has none.
+     */
+    public ParseCache cache() {
+        return cache;
+    }
+
+    public EvaluationContext context() {
+        return context;
+    }
+
+    /**
+     * Parses input as it is read, without holding all of it in memory.
+     * Inputs parsed this way are not cached.
+     */
+    public ASTNode parse(Reader reader) throws SyntaxException {
+        return parseStream(new StreamingLexer(reader));
+    }
+
+    /**
+     * Parses UTF-8 input as it is read from the channel.
+     */
+    public ASTNode parse(ReadableByteChannel channel) throws SyntaxException {
+        return parse(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a UTF-8 file by memory mapping it.
+     */
+    public ASTNode parse(Path file) throws IOException, SyntaxException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                // too large for a single mapping
+                return parse((ReadableByteChannel) channel);
+            }
+            return parseStream(new StreamingLexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), StandardCharsets.UTF_8));
+        }
+    }
+
+    private ASTNode parseStream(TokenStream tokens) throws SyntaxException {
+        context.takeSnapshot();
+        return Metrics.ENABLED ? measure(null, () -> parse(tokens)) : parse(tokens);
+    }
+
+    private ASTNode parseUncached(String input) throws SyntaxException {
+        return parse(new Lexer(input));
+    }
+
+    /**
+     * Records the time spent lexing and the rest of the time as parsing, and counts
+     * the tokens, nodes and errors.
+     */
+    private <T> T measure(String input, Supplier<T> parse) {
+        long start = System.nanoTime();
+        lexNanos = 0;
+        tokenCount = 0;
+        nodeCount = 0;
+        try {
+            return parse.get();
+        } catch (SyntaxException e) {
+            Metrics.countSyntaxError();
+            throw e;
+        } catch (RuntimeException e) {
+            Metrics.countError();
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            Metrics.recordNanos(PHASE.LEX, lexNanos, input);
+            Metrics.recordNanos(PHASE.PARSE, nanos - lexNanos, input);
+            Metrics.countTokens(tokenCount);
+            Metrics.countNodes(nodeCount);
+        }
+    }
+
+    private ASTNode parse(TokenStream tokens) throws SyntaxException {
+
+        lexer = tokens;
+        nextToken = advance();
 
         // Check if a command is being used
         if (checkNextTokenType(TokenType.COMMAND)) {
             Token commandToken = eat(TokenType.COMMAND);
-            return new CommandNode(commandToken.value());
+            return new CommandNode(commandToken.value(), context);
+        }
+
+        if (checkNextTokenType(TokenType.DEFINITION)) {
+            return parseDefinition();
+        }
+
+        if (context.assignmentMode() == ASSIGNMENT_MODE.REACTIVE && checkNextTokenType(TokenType.ASSIGNMENT)) {
+            return parseFormula();
         }
 
         // build the expression
         // return parseExpression();
-        return new VariableNode("ans", parseExpression().evaluate());
+        Number ans = parseExpression().evaluate();
+        context.setVariable("ans", ans);
+        return new VariableNode("ans", ans);
+    }
+
+    /**
+     * Parses an expression without evaluating it. Variables become slots that are
+     * read from the bindings on each evaluation instead of being captured now.
+     * @throws SyntaxException if the input is a command or contains an assignment.
+     */
+    public PreparedExpression prepare(String input) throws SyntaxException {
+        return Metrics.ENABLED ? measure(input, () -> prepareUnmeasured(input)) : prepareUnmeasured(input);
+    }
+
+    private PreparedExpression prepareUnmeasured(String input) throws SyntaxException {
+
+        context.takeSnapshot();
+        lexer = new Lexer(input);
+        nextToken = advance();
+
+        if (checkNextTokenType(TokenType.COMMAND)) {
+            throw new SyntaxException("Commands cannot be prepared.");
+        }
+
+        slots = new LinkedHashMap<>();
+        try {
+            ASTNode ast = parseExpression();
+            return new PreparedExpression(ast, slots.keySet().toArray(new String[0]), context);
+        } finally {
+            slots = null;
+        }
+    }
+
+    /**
+     * Parses the input as a cache entry: a command, or an expression with an
+     * optional top level assignment whose variables are typed slots.
+     * @return null if the input cannot be cached, or does not parse, in which
+     *         case it is parsed again without the cache to run it or report the error.
+     */
+    private ParseCache.Entry cacheEntry(String input) {
+
+        lexer = new Lexer(input);
+        nextToken = advance();
+
+        if (checkNextTokenType(TokenType.COMMAND)) {
+            return ParseCache.Entry.command(eat(TokenType.COMMAND).value());
+        }
+
+        if (checkNextTokenType(TokenType.DEFINITION)) {
+            return null;
+        }
+
+        if (context.assignmentMode() == ASSIGNMENT_MODE.REACTIVE && checkNextTokenType(TokenType.ASSIGNMENT)) {
+            return null;
+        }
+
+        slots = new LinkedHashMap<>();
+        typedSlots = true;
+        try {
+            String assignedVariable = null;
+            if (checkNextTokenType(TokenType.ASSIGNMENT)) {
+                eat(TokenType.ASSIGNMENT);
+                assignedVariable = eat(TokenType.VARIABLE).value();
+                eat(TokenType.EQUALS);
+            }
+            ASTNode ast = parseExpression();
+            String[] variables = slots.keySet().toArray(new String[0]);
+            RESULT_TYPE[] slotTypes = new RESULT_TYPE[variables.length];
+            for (int slot = 0; slot < variables.length; slot++) {
+                slotTypes[slot] = RESULT_TYPE.of(context.variable(variables[slot]));
+            }
+            return new ParseCache.Entry(null, assignedVariable, new PreparedExpression(ast, variables, context), variables, slotTypes, context.angleMode());
+        } catch (SyntaxException e) {
+            return null;
+        } finally {
+            slots = null;
+            typedSlots = false;
+        }
+    }
+
+    /*
+     * Formula
+     * : var <name> = Expression
+     * 
+     * In reactive mode a top level assignment keeps its expression, with the
+     * variables it reads as slots, so it can be recomputed when they change.
+     */
+    private VariableNode parseFormula() {
+
+        String name = parseAssignmentTarget();
+
+        slots = new LinkedHashMap<>();
+        PreparedExpression formula;
+        try {
+            formula = new PreparedExpression(parseExpression(), slots.keySet().toArray(new String[0]), context).optimize();
+        } finally {
+            slots = null;
+        }
+
+        Number value;
+        if (formula.variables().isEmpty()) {
+            value = formula.evaluate(formula.newBindings());
+            context.setVariable(name, value);
+        } else {
+            value = context.setFormula(name, formula);
+        }
+        context.setVariable("ans", value);
+        return new VariableNode("ans", value);
+    }
+
+    /*
+     * Definition
+     * : def <name>(<parameter> {, <parameter>}) = Expression
+     * : def <name>() = Expression
+     * 
+     * The body is parsed with its parameters as slots. Any other variable in it is
+     * captured with its current value.
+     */
+    private DefinitionNode parseDefinition() {
+
+        eat(TokenType.DEFINITION);
+        String name = eat(TokenType.VARIABLE).value();
+
+        List<String> parameters = new ArrayList<>();
+        if (!checkNextTokenType(TokenType.OPEN_BRACKET)) {
+            throw new SyntaxException("Functions must be defined as: def <name>(<parameters>) = <expression>");
+        }
+        eat(TokenType.OPEN_BRACKET);
+        if (checkNextTokenType(TokenType.VARIABLE)) {
+            parameters.add(eat(TokenType.VARIABLE).value());
+            while (checkNextTokenType(TokenType.COMMA)) {
+                eat(TokenType.COMMA);
+                String parameter = eat(TokenType.VARIABLE).value();
+                if (parameters.contains(parameter)) {
+                    throw new SyntaxException("The parameter " + parameter + " is repeated.");
+                }
+                parameters.add(parameter);
+            }
+        }
+        eat(TokenType.CLOSE_BRACKET);
+        if (!checkNextTokenType(TokenType.EQUALS)) {
+            throw new SyntaxException("Functions must be defined as: def <name>(<parameters>) = <expression>");
+        }
+        eat(TokenType.EQUALS);
+
+        slots = new LinkedHashMap<>();
+        for (String parameter : parameters) {
+            slots.put(parameter, slots.size());
+        }
+        definingFunction = true;
+        try {
+            ASTNode body = parseExpression();
+            UserFunction function = new UserFunction(name, parameters, body);
+            context.defineFunction(function);
+            if (cache != null) {
+                cache.clear();
+            }
+            return new DefinitionNode(function);
+        } finally {
+            slots = null;
+            definingFunction = false;
+        }
     }
 
     /*
@@ -61,29 +419,132 @@ public class Parser {
      * : Variable = Expression
      * : Term {-|+ Term}
      * ;
+     * 
+     * Parsed iteratively with explicit stacks of operands and pending operators
+     * rather than by recursion. Pending
+     * operators are reduced once an operator of the same or lower precedence
+     * follows them. From lowest to highest precedence, all left associative:
+     * 
+     * var x =              reduced at ) or the end of the expression
+     * + -
+     * <Infix> and <Postfix>
+     * <Prefix> and -
+     * ^                    the exponent must be a number or in brackets
+     * 
+     * A function call is pending like a bracket until its ), and each comma
+     * reduces the argument before it.
+     * 
+     * Unless an expression is being prepared, each reduced node is folded into
+     * its value straight away, so the tree never has to be evaluated recursively.
+     * Otherwise the depth of each operand's tree is tracked, and limited to MAX_TREE_DEPTH.
      */
     private ASTNode parseExpression() {
 
-        if (checkNextTokenType(TokenType.ASSIGNMENT)) {
-            return parseVariableAssignment();
-        }
+        // left over from a parse that failed
+        Arrays.fill(operands, 0, operandCount, null);
+        Arrays.fill(operatorTokens, 0, operatorCount, null);
+        operandCount = 0;
+        operatorCount = 0;
 
-        ASTNode term = parseTerm();
+        boolean expressionStart = true; // an assignment can start here
+        boolean primaryOnly = false; // an exponent is next
 
-        while(true) {
+        while (true) {
 
-            if (checkNextTokenType(TokenType.PLUS)) {
-                Token plusToken = eat(TokenType.PLUS);
-                ASTNode rightTerm = parseTerm();
-                term = new BinaryOperatorNode(plusToken.value(), term, rightTerm); // case 1 and 2
-            } else if (checkNextTokenType(TokenType.MINUS)) {
-                Token minusToken = eat(TokenType.MINUS);
-                ASTNode rightTerm = parseTerm();
-                term = new BinaryOperatorNode(minusToken.value(), term, rightTerm); // case 1 and 2
-            } else {
-                return term; // case 3
+            // expecting an operand
+            if (checkNextTokenType(TokenType.OPEN_BRACKET)) {
+                eat(TokenType.OPEN_BRACKET);
+                pushOperator(BRACKET, null);
+                expressionStart = true;
+                primaryOnly = false;
+                continue;
             }
 
+            if (expressionStart && checkNextTokenType(TokenType.ASSIGNMENT)) {
+                pushOperator(ASSIGNMENT, parseAssignmentTarget());
+                continue;
+            }
+
+            // MINUS is also a prefix operator
+            if (!primaryOnly && (checkNextTokenType(TokenType.PREFIX_OPERATOR) || checkNextTokenType(TokenType.MINUS))) {
+                pushOperator(PREFIX, eat(nextToken.tokenType()).value());
+                expressionStart = false;
+                continue;
+            }
+
+            if (checkNextTokenType(TokenType.VARIABLE)) {
+                String name = eat(TokenType.VARIABLE).value();
+                if (checkNextTokenType(TokenType.OPEN_BRACKET) && context.functions().get(name) != null) {
+                    eat(TokenType.OPEN_BRACKET);
+                    pushOperator(CALL, name);
+                    expressionStart = false;
+                    primaryOnly = false;
+                    if (!checkNextTokenType(TokenType.CLOSE_BRACKET)) {
+                        continue;
+                    }
+                    // no arguments
+                    closeBracket();
+                    eat(TokenType.CLOSE_BRACKET);
+                } else {
+                    pushOperand(variableNode(name));
+                }
+            } else {
+                pushOperand(parseNumber());
+            }
+            expressionStart = false;
+            primaryOnly = false;
+
+            // expecting an operator
+            boolean afterPostfix = false;
+            while (true) {
+
+                if (checkNextTokenType(TokenType.PLUS) || checkNextTokenType(TokenType.MINUS)) {
+                    reduce(ADDITIVE);
+                    pushOperator(ADDITIVE, eat(nextToken.tokenType()).value());
+                    break;
+                }
+
+                if (checkNextTokenType(TokenType.INFIX_OPERATOR)) {
+                    reduce(MULTIPLICATIVE);
+                    pushOperator(MULTIPLICATIVE, eat(TokenType.INFIX_OPERATOR).value());
+                    break;
+                }
+
+                if (checkNextTokenType(TokenType.POSTFIX_OPERATOR)) {
+                    reduce(MULTIPLICATIVE);
+                    String opToken = eat(TokenType.POSTFIX_OPERATOR).value();
+                    int depth = operandDepths[operandCount - 1] + 1;
+                    pushOperand(fold(new UnaryOperatorNode(opToken, popOperand())), depth);
+                    afterPostfix = true;
+                    continue;
+                }
+
+                // a postfix operator ends the term, so ^ can't follow it
+                if (checkNextTokenType(TokenType.EXPONENT) && !afterPostfix) {
+                    reduce(POWER);
+                    pushOperator(POWER, eat(TokenType.EXPONENT).value());
+                    primaryOnly = true;
+                    break;
+                }
+
+                if (checkNextTokenType(TokenType.CLOSE_BRACKET) && reduceToBracket()) {
+                    closeBracket();
+                    eat(TokenType.CLOSE_BRACKET);
+                    afterPostfix = false;
+                    continue;
+                }
+
+                if (checkNextTokenType(TokenType.COMMA) && reduceToBracket() && operatorKinds[operatorCount - 1] == CALL) {
+                    eat(TokenType.COMMA);
+                    break;
+                }
+
+                // any other token ends the expression, it is ignored at the top level
+                if (reduceToBracket()) {
+                    throw new SyntaxException("Missing token: )");
+                }
+                return popOperand();
+            }
         }
     }
 
@@ -91,137 +552,198 @@ public class Parser {
      * Variable
      * : variable literal = 
      */
-    private ASTNode parseVariableAssignment() {
+    private String parseAssignmentTarget() {
+        if (definingFunction) {
+            throw new SyntaxException("Assignments cannot be used in a function.");
+        }
+        if (slots != null) {
+            throw new SyntaxException("Assignments cannot be used in a prepared expression.");
+        }
         eat(TokenType.ASSIGNMENT);
         Token variableToken = eat(TokenType.VARIABLE);
-        String name = variableToken.value();
-        if (checkNextTokenType(TokenType.EQUALS)) {
-            eat(TokenType.EQUALS);
-            return new VariableNode(name, parseExpression().evaluate());
-        } else {
+        if (!checkNextTokenType(TokenType.EQUALS)) {
             throw new SyntaxException("Assignments must be of the form: ver <var_name> = <expression>");
         }
+        eat(TokenType.EQUALS);
+        return variableToken.value();
     }
 
-    /*
-     * Term
-     * : Factor {<InfixBinaryOperator> Factor} 
-     * | Factor {<PostfixOperator>} 
-     * | Factor
+    /**
+     * Reduces the pending operators down to the innermost open bracket or function call.
+     * @return false if there is none, in which case every operator was reduced.
      */
-    private ASTNode parseTerm() {
-        
-        ASTNode factor = parseFactor();
-
-        while (true) {
-
-            if (checkNextTokenType(TokenType.INFIX_OPERATOR)) {
-                Token binaryOperatorToken = eat(TokenType.INFIX_OPERATOR);
-                ASTNode rightFactor = parseFactor();
-                factor = new BinaryOperatorNode(binaryOperatorToken.value(), factor, rightFactor); // case 1
-            } else if (checkNextTokenType(TokenType.POSTFIX_OPERATOR)) {
-                Token postfixOperatorToken = eat(TokenType.POSTFIX_OPERATOR);
-                factor = new UnaryOperatorNode(postfixOperatorToken.value(), factor); // case 2
-            } else {
-                return factor; // case 3
-            }
+    private boolean reduceToBracket() {
+        while (operatorCount > 0 && operatorKinds[operatorCount - 1] > CALL) {
+            reduceOperator();
         }
+        return operatorCount > 0;
     }
 
-    /*
-     * Factor 
-     * : <PrefixOperator> Factor 
-     * | Base {^ Exponent} 
-     * | Base
+    /**
+     * Removes the innermost open bracket, or replaces the innermost function call
+     * and the arguments above it with a FunctionNode.
      */
-    private ASTNode parseFactor() {
+    private void closeBracket() {
 
-        if (checkNextTokenType(TokenType.PREFIX_OPERATOR)) {
-            Token prefixOperatorToken = eat(TokenType.PREFIX_OPERATOR);
-            ASTNode factor = parseFactor();
-            return new UnaryOperatorNode(prefixOperatorToken.value(), factor); // case 1
-        }
+        int kind = operatorKinds[--operatorCount];
+        String name = operatorTokens[operatorCount];
+        operatorTokens[operatorCount] = null;
 
-        // MINUS is also a prefix operator
-        if (checkNextTokenType(TokenType.MINUS)) {
-            Token prefixOperatorToken = eat(TokenType.MINUS);
-            ASTNode factor = parseFactor();
-            return new UnaryOperatorNode(prefixOperatorToken.value(), factor); // case 1
-        }
-        
-        ASTNode base = parseBase();
-
-        while (true) {
-            if (checkNextTokenType(TokenType.EXPONENT)) {
-                Token exponentToken = eat(TokenType.EXPONENT);
-                ASTNode exponent = parseExponent();
-                base = new BinaryOperatorNode(exponentToken.value(), base, exponent); // case 2
-            } else {
-                return base; // case 3
+        if (kind == CALL) {
+            int firstArgument = operatorOperands[operatorCount];
+            int depth = 1;
+            for (int i = firstArgument; i < operandCount; i++) {
+                depth = Math.max(depth, operandDepths[i] + 1);
             }
+            List<ASTNode> arguments = new ArrayList<>(Arrays.asList(operands).subList(firstArgument, operandCount));
+            Arrays.fill(operands, firstArgument, operandCount, null);
+            operandCount = firstArgument;
+            pushOperand(fold(new FunctionNode(context.functions().get(name), arguments)), depth);
         }
-
     }
 
-    /*
-     * Exponent
-     * : (Expression) 
-     * | <Number>
+    /**
+     * Reduces the pending operators with at least the given precedence.
      */
-    private ASTNode parseExponent() {
+    private void reduce(int precedence) {
+        while (operatorCount > 0 && operatorKinds[operatorCount - 1] >= precedence) {
+            reduceOperator();
+        }
+    }
+
+    private void reduceOperator() {
 
-        if (checkNextTokenType(TokenType.OPEN_BRACKET)) {
-            
-            eat(TokenType.OPEN_BRACKET);
+        Cancellation.check();
 
-            ASTNode expression = parseExpression();
+        int kind = operatorKinds[--operatorCount];
+        String opToken = operatorTokens[operatorCount];
+        operatorTokens[operatorCount] = null;
 
-            if (!checkNextTokenType(TokenType.CLOSE_BRACKET)) {
-                throw new SyntaxException("Missing token: )");
+        switch (kind) {
+            case ASSIGNMENT -> {
+                Number value = popOperand().evaluate();
+                context.setVariable(opToken, value);
+                pushOperand(new VariableNode(opToken, value));
+            }
+            case PREFIX -> {
+                int depth = operandDepths[operandCount - 1] + 1;
+                pushOperand(fold(new UnaryOperatorNode(opToken, popOperand(), context.angleMode())), depth);
+            }
+            default -> {
+                int depth = Math.max(operandDepths[operandCount - 2], operandDepths[operandCount - 1]) + 1;
+                ASTNode right = popOperand();
+                ASTNode left = popOperand();
+                pushOperand(fold(new BinaryOperatorNode(opToken, left, right)), depth);
             }
-            
-            eat(TokenType.CLOSE_BRACKET);
-            return expression; // case 1
+        }
+    }
 
+    /**
+     * Replaces a node with its value when parsing to evaluate straight away.
+     * A node that fails to evaluate, or overflows, is kept, so the error is
+     * reported, or the overflow computed in double arithmetic, when the whole
+     * expression is evaluated, after the rest of it has been parsed. A node with
+     * an operand that was kept is kept too, without evaluating it, so a subtree
+     * that fails is evaluated once, not again at every enclosing reduction.
+     */
+    private ASTNode fold(ASTNode node) {
+        if (slots != null) {
+            return node;
+        }
+        for (ASTNode child : node.children()) {
+            if (!(child instanceof NumberNode || child instanceof VariableNode)) {
+                return node;
+            }
         }
+        try {
+            return new NumberNode(node.evaluateExact(Bindings.EMPTY));
+        } catch (RuntimeException e) {
+            return node;
+        }
+    }
 
-        return parseNumber(); // case 2   
+    private void pushOperand(ASTNode operand) {
+        pushOperand(operand, 1);
     }
 
-    /*
-     * Exponent
-     * : (Expression) 
-     * | <Number> 
-     * | <Constant>
+    /**
+     * @param depth The depth of the operand's tree, which is 1 once it has been folded.
+     * @throws SyntaxException if the tree is deeper than MAX_TREE_DEPTH.
      */
-    private ASTNode parseBase() {
-        return parseExponent();
+    private void pushOperand(ASTNode operand, int depth) {
+        if (Metrics.ENABLED) {
+            nodeCount++;
+        }
+        if (operand instanceof NumberNode) {
+            depth = 1;
+        } else if (depth > MAX_TREE_DEPTH) {
+            throw new SyntaxException("The expression is nested more than " + MAX_TREE_DEPTH + " operators deep.");
+        }
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+            operandDepths = Arrays.copyOf(operandDepths, operandCount * 2);
+        }
+        operandDepths[operandCount] = depth;
+        operands[operandCount++] = operand;
+    }
+
+    private ASTNode popOperand() {
+        ASTNode operand = operands[--operandCount];
+        operands[operandCount] = null;
+        return operand;
+    }
+
+    private void pushOperator(int kind, String opToken) {
+        if (operatorCount == operatorKinds.length) {
+            operatorKinds = Arrays.copyOf(operatorKinds, operatorCount * 2);
+            operatorTokens = Arrays.copyOf(operatorTokens, operatorCount * 2);
+            operatorOperands = Arrays.copyOf(operatorOperands, operatorCount * 2);
+        }
+        operatorKinds[operatorCount] = kind;
+        operatorOperands[operatorCount] = operandCount;
+        operatorTokens[operatorCount++] = opToken;
     }
 
     /*
      * Number
-     * : number literal
-     * : variable
+     * : number literal, e.g. 5, 1.2 or 2E-3
      * | Constant i.e. pi or e
      */
     private ASTNode parseNumber() {
 
         if (checkNextTokenType(TokenType.NUMBER)) {
             Token numberToken = eat(TokenType.NUMBER);
-            return new NumberNode(numberToken.value());
+            return new NumberNode(NumberLiteral.parse(numberToken.source(), numberToken.offset(), numberToken.length()));
         }
 
         if (checkNextTokenType(TokenType.CONSTANT)) {
             Token constantToken = eat(TokenType.CONSTANT);
+            if (constantToken.value().equals("ans")) {
+                return typedSlots ? slotNode("ans") : new NumberNode(context.variable("ans"));
+            }
             return new NumberNode(constantToken.value());
         }
 
-        if (checkNextTokenType(TokenType.VARIABLE)) {
-            Token varToken = eat(TokenType.VARIABLE);
-            return new VariableNode(varToken.value());
+        throw new SyntaxException("Expected a number like 5 or 1.2 or a constant like pi or e.");
+    }
+
+    /**
+     * A variable is read from a slot when preparing, and captured otherwise. Only
+     * the parameters of a function being defined are slots.
+     */
+    private ASTNode variableNode(String name) {
+        if (slots != null && (!definingFunction || slots.containsKey(name))) {
+            return slotNode(name);
         }
+        return new VariableNode(name, context.variable(name));
+    }
 
-        throw new SyntaxException("Expected a number like 5 or 1.2 or a constant like pi or e.");
+    private SlotNode slotNode(String name) {
+        int slot = slots.computeIfAbsent(name, n -> slots.size());
+        if (!typedSlots) {
+            return new SlotNode(name, slot);
+        }
+        return new SlotNode(name, slot, RESULT_TYPE.of(context.variable(name)));
     }
 
     private Token eat(TokenType tokenType) {
@@ -235,11 +757,24 @@ public class Parser {
         }
 
         Token token = nextToken;
-        nextToken = lexer.getNextToken();
+        nextToken = advance();
         return token;
 
     }
 
+    private Token advance() {
+        if (!Metrics.ENABLED) {
+            return lexer.getNextToken();
+        }
+        long start = System.nanoTime();
+        Token token = lexer.getNextToken();
+        lexNanos += System.nanoTime() - start;
+        if (token != null) {
+            tokenCount++;
+        }
+        return token;
+    }
+
     private boolean checkNextTokenType(TokenType tokenType) {
         return nextToken != null && nextToken.tokenType() == tokenType;
     }
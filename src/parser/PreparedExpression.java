@@ -0,0 +1,257 @@
+package parser;
+
+import java.util.List;
+
+import ast_nodes.ASTNode;
+import ast_nodes.ASTNode.RESULT_TYPE;
+import ast_nodes.Bindings;
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import compiler.CompiledExpression;
+import compiler.ExpressionCompiler;
+import metrics.Metrics;
+import metrics.Metrics.PHASE;
+import optimizer.CommonSubexpressions;
+import optimizer.Memoizer;
+import optimizer.Optimizer;
+import session.EvaluationContext;
+
+/**
+ * An expression that is parsed once and evaluated many times. Its variables are
+ * slots, bound per evaluation through a {@link Bindings} created by {@link #newBindings()}.
+ * 
+ * PreparedExpression expression = PreparedExpression.prepare("2*pi*r");
+ * Bindings bindings = expression.newBindings();
+ * bindings.set("r", 1.5);
+ * expression.evaluate(bindings);
+ * 
+ * Trig uses the angle mode of the context at the time the expression was prepared.
+ * Repeated subexpressions are merged when the expression is prepared, so each
+ * is only computed once per evaluation (see {@link CommonSubexpressions}).
+ * 
+ * Expensive pure subtrees keep their results in the context's result cache
+ * across evaluations, until a variable they read is bound to a new value (see
+ * {@link Memoizer}).
+ * 
+ * Evaluation starts out walking the tree. Once an expression has been evaluated
+ * COMPILE_THRESHOLD times it is compiled to bytecode, and later evaluations run
+ * the compiled code instead, unless its memoized subtrees are mostly answered
+ * from the cache, which the compiled code does not use.
+ */
+public class PreparedExpression {
+
+    /**
+     * Set with -Dcalculator.compileThreshold, a negative threshold never compiles.
+     */
+    public static final int COMPILE_THRESHOLD = Integer.getInteger("calculator.compileThreshold", 1000);
+
+    private final ASTNode ast;
+    private final ASTNode memoized;
+    private final String[] variables;
+    private final EvaluationContext context;
+    private final int removedNodes;
+
+    private int evaluations;
+    private volatile CompiledExpression compiled;
+    private volatile boolean compilable = true;
+
+    PreparedExpression(ASTNode ast, String[] variables, EvaluationContext context) {
+        this(CommonSubexpressions.eliminate(ast), variables, context, 0);
+    }
+
+    private PreparedExpression(ASTNode ast, String[] variables, EvaluationContext context, int removedNodes) {
+        this.ast = ast;
+        this.memoized = Memoizer.memoize(ast, context.resultCache());
+        this.variables = variables;
+        this.context = context;
+        this.removedNodes = removedNodes;
+    }
+
+    /**
+     * Prepares the input in a new context, in radians and with no variables defined.
+     */
+    public static PreparedExpression prepare(String input) throws SyntaxException {
+        return new Parser().prepare(input);
+    }
+
+    public static PreparedExpression prepare(String input, EvaluationContext context) throws SyntaxException {
+        return new Parser(context).prepare(input);
+    }
+
+    /**
+     * Prepares an expression that has already been parsed, such as one read back
+     * from a {@link session.SessionSnapshot}. Its variables are the names of its slots, in order.
+     */
+    public static PreparedExpression of(ASTNode ast, List<String> variables, EvaluationContext context) {
+        return new PreparedExpression(ast, variables.toArray(new String[0]), context);
+    }
+
+    /**
+     * Returns a copy of this expression with constant subtrees folded and identities
+     * simplified. Trig keeps the angle mode it was prepared with.
+     */
+    public PreparedExpression optimize() {
+        return optimize(null);
+    }
+
+    /**
+     * Returns a copy of this expression with constant subtrees folded and identities
+     * simplified, with trig changed to the given angle mode.
+     */
+    public PreparedExpression optimize(ANGLE_MODE angleMode) {
+        Optimizer.Result result = new Optimizer(angleMode).optimize(ast);
+        return new PreparedExpression(result.ast(), variables, context, removedNodes + result.removedNodes());
+    }
+
+    /**
+     * How many nodes optimizing removed from the parsed tree.
+     */
+    public int removedNodes() {
+        return removedNodes;
+    }
+
+    /**
+     * The variable names in slot order.
+     */
+    public List<String> variables() {
+        return List.of(variables);
+    }
+
+    /**
+     * Creates bindings for this expression. Slots of variables that are currently
+     * defined in the context it was prepared in, or shared with it, start out
+     * bound to that value.
+     */
+    public Bindings newBindings() {
+        Bindings bindings = new Bindings(variables);
+        context.takeSnapshot();
+        for (int slot = 0; slot < variables.length; slot++) {
+            Number value = context.lookup(variables[slot]);
+            if (value != null) {
+                bindings.set(slot, value.doubleValue());
+            }
+        }
+        return bindings;
+    }
+
+    public Number evaluate(Bindings bindings) throws SyntaxException {
+        if (!Metrics.ENABLED) {
+            return evaluateUnmeasured(bindings);
+        }
+        long start = System.nanoTime();
+        try {
+            return evaluateUnmeasured(bindings);
+        } catch (RuntimeException e) {
+            countError(e);
+            throw e;
+        } finally {
+            Metrics.record(PHASE.EVALUATE, start, null);
+        }
+    }
+
+    /**
+     * Evaluates without boxing the intermediate or final results.
+     */
+    public double evaluateDouble(Bindings bindings) throws SyntaxException {
+        if (!Metrics.ENABLED) {
+            return evaluateDoubleUnmeasured(bindings);
+        }
+        long start = System.nanoTime();
+        try {
+            return evaluateDoubleUnmeasured(bindings);
+        } catch (RuntimeException e) {
+            countError(e);
+            throw e;
+        } finally {
+            Metrics.record(PHASE.EVALUATE, start, null);
+        }
+    }
+
+    private Number evaluateUnmeasured(Bindings bindings) {
+        checkBindings(bindings);
+        CompiledExpression compiledExpression = tierUp();
+        if (compiledExpression != null) {
+            RESULT_TYPE resultType = ast.resultType();
+            try {
+                return resultType.isIntegral()
+                    ? resultType.box(compiledExpression.evalLong(bindings.boundValues()))
+                    : resultType.box(compiledExpression.eval(bindings.boundValues()));
+            } catch (ArithmeticException e) {
+                // an integer overflowed, so the whole tree is computed in double arithmetic, as the tree does
+                bindings.startEvaluation();
+                return memoized.evaluateOverflowed(bindings);
+            }
+        }
+        bindings.startEvaluation();
+        return memoized.evaluate(bindings);
+    }
+
+    private double evaluateDoubleUnmeasured(Bindings bindings) {
+        checkBindings(bindings);
+        CompiledExpression compiledExpression = tierUp();
+        if (compiledExpression != null) {
+            try {
+                return compiledExpression.eval(bindings.boundValues());
+            } catch (ArithmeticException e) {
+                // integer overflow, see evaluateUnmeasured
+                bindings.startEvaluation();
+                return memoized.evaluateOverflowed(bindings);
+            }
+        }
+        bindings.startEvaluation();
+        return memoized.evaluateRoot(bindings);
+    }
+
+    private static void countError(RuntimeException e) {
+        if (e instanceof SyntaxException) {
+            Metrics.countSyntaxError();
+        } else {
+            Metrics.countError();
+        }
+    }
+
+    /**
+     * Compiles this expression now instead of waiting for COMPILE_THRESHOLD evaluations.
+     * If the tree cannot be compiled it is not tried again. Trees are at most
+     * Parser.MAX_TREE_DEPTH deep, which the compiler's recursion handles.
+     * @return false if the expression cannot be compiled and will keep being interpreted.
+     */
+    public boolean compile() {
+        if (compiled == null && compilable) {
+            try {
+                compiled = ExpressionCompiler.compile(ast);
+            } catch (UnsupportedOperationException e) {
+                compilable = false;
+            }
+        }
+        return compiled != null;
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    public ASTNode ast() {
+        return ast;
+    }
+
+    private CompiledExpression tierUp() {
+        CompiledExpression compiledExpression = compiled;
+        if (compiledExpression == null && compilable && COMPILE_THRESHOLD >= 0 && ++evaluations >= COMPILE_THRESHOLD) {
+            if (memoized != ast && Memoizer.paysOff(memoized)) {
+                // look again after another COMPILE_THRESHOLD evaluations
+                evaluations = 0;
+                return null;
+            }
+            compile();
+            compiledExpression = compiled;
+        }
+        return compiledExpression;
+    }
+
+    private void checkBindings(Bindings bindings) {
+        if (bindings.size() != variables.length) {
+            throw new IllegalArgumentException("The bindings were not created for this expression.");
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package server;
+
+/**
+ * The budget of one request to the {@link EvaluationServer}.
+ * @param maxLength The longest line, in characters. Longer lines are rejected without being parsed.
+ * @param maxNodes The most tokens in a line. Every node of the tree comes from at
+ *                 least one token, so this bounds the size of the tree before it is parsed.
+ * @param maxDepth The deepest nesting of brackets.
+ * @param timeoutMillis How long a line may take to parse and evaluate, 0 for no limit.
+ */
+public record EvaluationLimits(int maxLength, int maxNodes, int maxDepth, long timeoutMillis) {
+
+    /**
+     * The limits set with -Dcalculator.server.maxLength, maxNodes, maxDepth and timeoutMillis.
+     */
+    public static EvaluationLimits fromProperties() {
+        return new EvaluationLimits(
+            Integer.getInteger("calculator.server.maxLength", 1 << 16),
+            Integer.getInteger("calculator.server.maxNodes", 10_000),
+            Integer.getInteger("calculator.server.maxDepth", 256),
+            Long.getLong("calculator.server.timeoutMillis", 1000));
+    }
+
+}
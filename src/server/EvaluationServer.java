@@ -0,0 +1,101 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import session.SharedVariables;
+
+/**
+ * A local TCP evaluation service. Each connection is a session with its own
+ * variables, functions and modes, served on its own virtual thread.
+ *
+ * The protocol is the same as batch mode: the client sends one expression per
+ * line and gets back one line per line, in order: the result, "Error: ...", or
+ * a blank line for blank lines, commands and definitions. Requests can be
+ * pipelined, replies are flushed whenever the server has caught up with the
+ * input. "exit" closes the connection.
+ *
+ * Every line is checked against the {@link EvaluationLimits} before it is
+ * parsed, and is cut off when it runs past its time limit, so one large
+ * expression cannot hold up the other sessions for longer than that.
+ */
+public class EvaluationServer implements AutoCloseable {
+
+    private static final int BACKLOG = 1024;
+
+    private final ServerSocket serverSocket;
+    private final EvaluationLimits limits;
+    private final SharedVariables sharedVariables;
+    private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("calculator-watchdog").daemon().factory());
+
+    /**
+     * Listens on the loopback address.
+     * @param port The port to listen on, 0 for any free port.
+     */
+    public EvaluationServer(int port, EvaluationLimits limits) throws IOException {
+        this(port, limits, new SharedVariables());
+    }
+
+    /**
+     * @param sharedVariables Variables every session can read, see {@link #sharedVariables()}.
+     */
+    public EvaluationServer(int port, EvaluationLimits limits, SharedVariables sharedVariables) throws IOException {
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.limits = limits;
+        this.sharedVariables = sharedVariables;
+        watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Variables that every session reads when it has not defined its own of the
+     * same name. Updates are seen from the next line each session evaluates.
+     */
+    public SharedVariables sharedVariables() {
+        return sharedVariables;
+    }
+
+    /**
+     * Accepts connections on the calling thread until the server is closed.
+     */
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sessions.execute(new Session(socket, limits, watchdog, sharedVariables));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Could not accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts connections on a background thread.
+     */
+    public void start() {
+        Thread.ofPlatform().name("calculator-server").daemon().start(this::serve);
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+}
@@ -0,0 +1,245 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import ast_nodes.ASTNode;
+import ast_nodes.CommandNode;
+import ast_nodes.DefinitionNode;
+import lexer.Lexer;
+import lexer.Token;
+import lexer.TokenType;
+import parser.Parser;
+import parser.SyntaxException;
+import session.EvaluationContext;
+import session.SharedVariables;
+
+/**
+ * One connection to the {@link EvaluationServer}, with its own context.
+ *
+ * Lines are read from a buffer, and replies are only flushed once the buffer is
+ * empty, so a client that pipelines its requests gets its replies in batches.
+ * Lines are parsed and evaluated on the session's own virtual thread. Virtual
+ * threads are not preempted, so the time limit is kept by the server's watchdog,
+ * a platform thread, which interrupts the session's thread when the time is up.
+ * Evaluation notices the interrupt at its next step (see {@link functions.Cancellation}):
+ * the next operator it reduces, function it calls, block of a large factorial it
+ * multiplies or formula it recomputes. Until then the line holds on to its
+ * carrier thread, so a slow line delays the sessions that share the carrier by
+ * about the time limit.
+ *
+ * The changes a line makes to the session, such as assignments and definitions,
+ * are only kept if it succeeds within the time limit.
+ */
+final class Session implements Runnable {
+
+    private static final int IO_BUFFER_SIZE = 1 << 13;
+
+    private final Socket socket;
+    private final EvaluationLimits limits;
+    private final ScheduledExecutorService watchdog;
+    private final EvaluationContext context;
+    private final Parser parser;
+    private final StringBuilder formatted = new StringBuilder();
+
+    private final char[] buffer = new char[IO_BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private final StringBuilder line = new StringBuilder();
+    private boolean lineTooLong;
+
+    // guarded by this
+    private boolean evaluating;
+    private boolean timedOut;
+
+    Session(Socket socket, EvaluationLimits limits, ScheduledExecutorService watchdog, SharedVariables sharedVariables) {
+        this.socket = socket;
+        this.limits = limits;
+        this.watchdog = watchdog;
+        this.context = new EvaluationContext(sharedVariables);
+        this.parser = new Parser(context, Integer.getInteger("calculator.parseCacheSize", 0));
+    }
+
+    @Override
+    public void run() {
+        try (socket;
+                Reader reader = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), IO_BUFFER_SIZE)) {
+
+            while (readLine(reader)) {
+                String reply = lineTooLong ? error("The line is longer than " + limits.maxLength() + " characters.") : reply(line.toString());
+                if (reply == null) {
+                    break;
+                }
+                writer.write(reply);
+                writer.write('\n');
+                if (position == limit) {
+                    writer.flush();
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    /**
+     * @return the reply to the line, or null if it closes the session.
+     */
+    private String reply(String input) {
+
+        if (input.isBlank()) {
+            return "";
+        }
+
+        try {
+            Lexer lexer = new Lexer(input);
+            Token token = lexer.getNextToken();
+            // commands that would act on the server's console
+            String command = token.tokenType() == TokenType.COMMAND ? token.value() : "";
+            if (command.equals("exit")) {
+                return null;
+            }
+            if (command.equals("cls") || command.equals("clear")) {
+                return "";
+            }
+
+            int tokens = 0;
+            int depth = 0;
+            for (; token != null; token = lexer.getNextToken()) {
+                if (++tokens > limits.maxNodes()) {
+                    return error("The expression has more than " + limits.maxNodes() + " nodes.");
+                }
+                if (token.tokenType() == TokenType.OPEN_BRACKET && ++depth > limits.maxDepth()) {
+                    return error("The expression is nested more than " + limits.maxDepth() + " deep.");
+                }
+                if (token.tokenType() == TokenType.CLOSE_BRACKET) {
+                    depth--;
+                }
+            }
+        } catch (SyntaxException e) {
+            return error(e.getMessage());
+        }
+
+        return limits.timeoutMillis() > 0 ? evaluateWithin(input, limits.timeoutMillis()) : evaluate(input);
+    }
+
+    private String evaluateWithin(String input, long timeoutMillis) {
+        Thread thread = Thread.currentThread();
+        synchronized (this) {
+            evaluating = true;
+            timedOut = false;
+        }
+        ScheduledFuture<?> timer = watchdog.schedule(() -> timeOut(thread), timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            String reply = evaluate(input);
+            return timedOut() ? error("The expression took longer than " + timeoutMillis + " ms to evaluate.") : reply;
+        } finally {
+            timer.cancel(false);
+            synchronized (this) {
+                evaluating = false;
+            }
+            // an interrupt that was not noticed would close the socket on the next read
+            Thread.interrupted();
+        }
+    }
+
+    private synchronized void timeOut(Thread thread) {
+        if (evaluating) {
+            timedOut = true;
+            thread.interrupt();
+        }
+    }
+
+    private synchronized boolean timedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Stops the time limit of the line being evaluated, if it has one.
+     * @return false if it had already run out.
+     */
+    private synchronized boolean stopClock() {
+        evaluating = false;
+        return !timedOut;
+    }
+
+    private String evaluate(String input) {
+        context.beginChanges();
+        try {
+            ASTNode ast = parser.parse(input);
+            formatted.setLength(0);
+            if (!(ast instanceof CommandNode || ast instanceof DefinitionNode)) {
+                context.format(ast.evaluate(), formatted);
+            }
+            if (stopClock()) {
+                context.commitChanges();
+            }
+            return formatted.toString();
+        } catch (SyntaxException e) {
+            return error(e.getMessage());
+        } catch (RuntimeException e) {
+            return error(e.toString());
+        } finally {
+            // does nothing once the changes are committed
+            context.discardChanges();
+        }
+    }
+
+    /**
+     * Reads the next line, without its line terminator, into line. Characters past
+     * the length limit are read but dropped, and set lineTooLong.
+     * @return false at the end of the input.
+     */
+    private boolean readLine(Reader reader) throws IOException {
+
+        line.setLength(0);
+        lineTooLong = false;
+
+        while (true) {
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return !line.isEmpty() || lineTooLong;
+                }
+            }
+
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            int end = position;
+            int room = limits.maxLength() - line.length();
+            if (end - start > room) {
+                lineTooLong = true;
+                end = start + Math.max(room, 0);
+            }
+            line.append(buffer, start, end - start);
+
+            if (position < limit) {
+                // skip the '\n'
+                position++;
+                if (!line.isEmpty() && line.charAt(line.length() - 1) == '\r') {
+                    line.setLength(line.length() - 1);
+                }
+                return true;
+            }
+        }
+    }
+
+    private static String error(String message) {
+        return "Error: " + message;
+    }
+
+}
@@ -0,0 +1,130 @@
+package session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import parser.PreparedExpression;
+import parser.SyntaxException;
+
+/**
+ * The formulas of a session's reactive variables, and the variables each formula reads.
+ * Formulas can only be added if they keep the graph acyclic, so the variables
+ * downstream of a change can always be put in topological order.
+ */
+final class DependencyGraph {
+
+    private final Map<String, PreparedExpression> formulas = new HashMap<>();
+    // variable -> the variables whose formulas read it
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+
+    DependencyGraph() {}
+
+    private DependencyGraph(DependencyGraph graph) {
+        this.formulas.putAll(graph.formulas);
+        for (Map.Entry<String, Set<String>> entry : graph.dependents.entrySet()) {
+            this.dependents.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+    }
+
+    DependencyGraph copy() {
+        return new DependencyGraph(this);
+    }
+
+    boolean isEmpty() {
+        return formulas.isEmpty();
+    }
+
+    PreparedExpression formula(String name) {
+        return formulas.get(name);
+    }
+
+    Map<String, PreparedExpression> formulas() {
+        return Collections.unmodifiableMap(formulas);
+    }
+
+    /**
+     * @throws SyntaxException if the formula reads name, directly or through other formulas.
+     */
+    void checkAcyclic(String name, PreparedExpression formula) throws SyntaxException {
+        List<String> reads = formula.variables();
+        if (reads.contains(name) || !Collections.disjoint(reads, new HashSet<>(downstream(name)))) {
+            throw new SyntaxException("Circular reference: the formula for " + name + " depends on " + name + ".");
+        }
+    }
+
+    /**
+     * Replaces the formula of a variable. The caller checks that it is acyclic first.
+     */
+    void define(String name, PreparedExpression formula) {
+        remove(name);
+        formulas.put(name, formula);
+        for (String variable : formula.variables()) {
+            dependents.computeIfAbsent(variable, v -> new HashSet<>()).add(name);
+        }
+    }
+
+    /**
+     * Removes the formula of a variable, if it has one, leaving it a plain value.
+     */
+    void remove(String name) {
+        PreparedExpression formula = formulas.remove(name);
+        if (formula == null) {
+            return;
+        }
+        for (String variable : formula.variables()) {
+            Set<String> readers = dependents.get(variable);
+            readers.remove(name);
+            if (readers.isEmpty()) {
+                dependents.remove(variable);
+            }
+        }
+    }
+
+    /**
+     * The variables whose formulas read name, directly or indirectly, in an order
+     * where every formula comes after the formulas it reads. Only the affected
+     * part of the graph is visited.
+     */
+    List<String> downstream(String name) {
+
+        if (!dependents.containsKey(name)) {
+            return List.of();
+        }
+
+        // iterative depth first search, a variable is finished once all of its dependents are
+        List<String> finished = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> path = new ArrayDeque<>();
+        Deque<Iterator<String>> pending = new ArrayDeque<>();
+        path.push(name);
+        pending.push(dependents.getOrDefault(name, Set.of()).iterator());
+
+        while (!pending.isEmpty()) {
+            Iterator<String> next = pending.peek();
+            if (next.hasNext()) {
+                String dependent = next.next();
+                if (visited.add(dependent)) {
+                    path.push(dependent);
+                    pending.push(dependents.getOrDefault(dependent, Set.of()).iterator());
+                }
+            } else {
+                pending.pop();
+                finished.add(path.pop());
+            }
+        }
+
+        // reverse post order, without name itself
+        finished.remove(finished.size() - 1);
+        Collections.reverse(finished);
+        return finished;
+    }
+
+}
@@ -0,0 +1,370 @@
+package session;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ast_nodes.Bindings;
+import ast_nodes.NumberNode;
+import ast_nodes.NumberNode.DECIMAL_MODE;
+import ast_nodes.ResultCache;
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import functions.Cancellation;
+import functions.FunctionRegistry;
+import functions.MathFunction;
+import metrics.Metrics;
+import metrics.Metrics.PHASE;
+import parser.PreparedExpression;
+import parser.SyntaxException;
+
+/**
+ * The state of one calculator session: its variables (including ans), functions,
+ * angle mode, decimal mode and assignment mode. Commands, assignments and parsing all read and write the
+ * context of the parser they go through, so sessions with separate contexts
+ * share nothing and can run on different threads at the same time.
+ * 
+ * In REACTIVE assignment mode a top level assignment keeps its expression as a
+ * formula. Whenever a variable changes, the formulas that read it, directly or
+ * through other formulas, are recomputed in topological order.
+ * 
+ * Variables that are not defined in the context are read from its
+ * {@link SharedVariables}, which copies of the context share with it. The shared
+ * variables are read from a snapshot taken with {@link #takeSnapshot()}, which
+ * the parser takes once per input, so every read in one evaluation sees the
+ * same version of them.
+ * 
+ * Changes made between {@link #beginChanges()} and {@link #commitChanges()} can
+ * be undone with {@link #discardChanges()}, so a line that fails or runs out of
+ * time can leave the session as it was before.
+ * 
+ * A context is not thread safe, it should only be used by one thread at a time.
+ */
+public class EvaluationContext {
+
+    private final Map<String, Number> variables = new HashMap<>(Map.of("ans", 0));
+    private ANGLE_MODE angleMode = ANGLE_MODE.RAD;
+    private DECIMAL_MODE decimalMode = DECIMAL_MODE.REG;
+    private ASSIGNMENT_MODE assignmentMode = ASSIGNMENT_MODE.SNAPSHOT;
+    private final FunctionRegistry functions;
+    private final DependencyGraph formulas;
+    private final SharedVariables sharedVariables;
+    private SharedVariables.Snapshot snapshot;
+    private ResultCache resultCache = ResultCache.DEFAULT_CAPACITY > 0 ? new ResultCache(ResultCache.DEFAULT_CAPACITY) : null;
+    // undoes the changes since beginChanges, most recent first, or null outside of one
+    private Deque<Runnable> undo;
+
+    public EvaluationContext() {
+        this(new SharedVariables());
+    }
+
+    public EvaluationContext(SharedVariables sharedVariables) {
+        this.functions = new FunctionRegistry();
+        this.formulas = new DependencyGraph();
+        this.sharedVariables = sharedVariables;
+        this.snapshot = sharedVariables.snapshot();
+    }
+
+    private EvaluationContext(EvaluationContext context) {
+        this.variables.putAll(context.variables);
+        this.functions = context.functions.copy();
+        this.formulas = context.formulas.copy();
+        this.angleMode = context.angleMode;
+        this.decimalMode = context.decimalMode;
+        this.assignmentMode = context.assignmentMode;
+        this.sharedVariables = context.sharedVariables;
+        this.snapshot = context.snapshot;
+        this.resultCache = context.resultCache == null ? null : new ResultCache(context.resultCache.capacity());
+    }
+
+    /**
+     * An independent copy of this context, e.g. to evaluate on another thread.
+     */
+    public EvaluationContext copy() {
+        return new EvaluationContext(this);
+    }
+
+    /**
+     * @throws SyntaxException if the variable has not been defined.
+     */
+    public Number variable(String name) throws SyntaxException {
+        Number value = lookup(name);
+        if (value == null) {
+            throw new SyntaxException("The variable " + name + " is undefined.");
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of the variable, from this context or else from the
+     *         shared snapshot, or null if it is not defined.
+     */
+    public Number lookup(String name) {
+        Number value = variables.get(name);
+        if (value == null) {
+            int slot = snapshot.slot(name);
+            if (slot >= 0) {
+                value = snapshot.number(slot);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Sets a variable to a plain value, replacing its formula if it had one, and
+     * recomputes the formulas downstream of it.
+     */
+    public void setVariable(String name, Number value) {
+        putVariable(name, value);
+        if (!formulas.isEmpty()) {
+            replaceFormula(name, null);
+            recompute(name);
+        }
+    }
+
+    /**
+     * Sets a variable to the value of a formula, which is recomputed whenever a
+     * variable it reads changes, and recomputes the formulas downstream of it.
+     * @return the value of the formula.
+     * @throws SyntaxException if the formula would depend on itself, or reads an undefined variable.
+     */
+    public Number setFormula(String name, PreparedExpression formula) throws SyntaxException {
+        formulas.checkAcyclic(name, formula);
+        Number value = evaluate(formula);
+        putVariable(name, value);
+        replaceFormula(name, formula);
+        recompute(name);
+        return value;
+    }
+
+    /**
+     * @return the formula of the variable, or null if it holds a plain value.
+     */
+    public PreparedExpression formula(String name) {
+        return formulas.formula(name);
+    }
+
+    /**
+     * Sets a variable without touching the formulas, for {@link SessionSnapshot}.
+     */
+    void restoreVariable(String name, Number value) {
+        variables.put(name, value);
+    }
+
+    DependencyGraph formulas() {
+        return formulas;
+    }
+
+    public boolean isDefined(String name) {
+        return variables.containsKey(name) || snapshot.contains(name);
+    }
+
+    /**
+     * A read only view of the variables of this context, including ans, but not
+     * the shared variables.
+     */
+    public Map<String, Number> variables() {
+        return Collections.unmodifiableMap(variables);
+    }
+
+    public SharedVariables sharedVariables() {
+        return sharedVariables;
+    }
+
+    /**
+     * Reads the shared variables from their latest version until the next call.
+     */
+    public void takeSnapshot() {
+        snapshot = sharedVariables.snapshot();
+    }
+
+    /**
+     * The cache of memoized subtree results of the expressions prepared in this
+     * context, or null if memoization is turned off. A copy of the context has its own.
+     */
+    public ResultCache resultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Turns memoization on, with a new cache of this capacity, or off with 0. Only
+     * expressions prepared from now on use it: memoizing pays off for expressions
+     * re-run while most of their variables keep their values, but costs a hash of
+     * the inputs on every evaluation of an expression whose variables all change.
+     */
+    public void setResultCacheSize(int capacity) {
+        resultCache = capacity > 0 ? new ResultCache(capacity) : null;
+    }
+
+    /**
+     * The built in functions and the functions defined in this session.
+     */
+    public FunctionRegistry functions() {
+        return functions;
+    }
+
+    /**
+     * Adds a function to this session, replacing any function with the same name.
+     */
+    public void defineFunction(MathFunction function) {
+        MathFunction previous = functions.get(function.name());
+        functions.define(function);
+        if (undo != null) {
+            undo.push(previous == null ? () -> functions.remove(function.name()) : () -> functions.define(previous));
+        }
+    }
+
+    /**
+     * Starts recording changes to the variables, formulas, functions and modes,
+     * until they are committed or discarded.
+     */
+    public void beginChanges() {
+        undo = new ArrayDeque<>();
+    }
+
+    /**
+     * Keeps the changes since beginChanges.
+     */
+    public void commitChanges() {
+        undo = null;
+    }
+
+    /**
+     * Undoes the changes since beginChanges, if they have not been committed.
+     */
+    public void discardChanges() {
+        Deque<Runnable> changes = undo;
+        undo = null;
+        while (changes != null && !changes.isEmpty()) {
+            changes.pop().run();
+        }
+    }
+
+    public ANGLE_MODE angleMode() {
+        return angleMode;
+    }
+
+    public void setAngleMode(ANGLE_MODE angleMode) {
+        ANGLE_MODE previous = this.angleMode;
+        this.angleMode = angleMode;
+        if (undo != null) {
+            undo.push(() -> this.angleMode = previous);
+        }
+    }
+
+    public DECIMAL_MODE decimalMode() {
+        return decimalMode;
+    }
+
+    public void setDecimalMode(DECIMAL_MODE decimalMode) {
+        DECIMAL_MODE previous = this.decimalMode;
+        this.decimalMode = decimalMode;
+        if (undo != null) {
+            undo.push(() -> this.decimalMode = previous);
+        }
+    }
+
+    public ASSIGNMENT_MODE assignmentMode() {
+        return assignmentMode;
+    }
+
+    public void setAssignmentMode(ASSIGNMENT_MODE assignmentMode) {
+        ASSIGNMENT_MODE previous = this.assignmentMode;
+        this.assignmentMode = assignmentMode;
+        if (undo != null) {
+            undo.push(() -> this.assignmentMode = previous);
+        }
+    }
+
+    /**
+     * Formats a result in this session's decimal mode.
+     */
+    public String format(Number number) {
+        if (!Metrics.ENABLED) {
+            return NumberNode.formatNumber(number, decimalMode);
+        }
+        long start = System.nanoTime();
+        String formatted = NumberNode.formatNumber(number, decimalMode);
+        Metrics.record(PHASE.FORMAT, start, null);
+        return formatted;
+    }
+
+    /**
+     * Appends a result to out in this session's decimal mode.
+     */
+    public void format(Number number, StringBuilder out) {
+        if (!Metrics.ENABLED) {
+            NumberNode.formatNumber(number, decimalMode, out);
+            return;
+        }
+        long start = System.nanoTime();
+        NumberNode.formatNumber(number, decimalMode, out);
+        Metrics.record(PHASE.FORMAT, start, null);
+    }
+
+    /**
+     * Recomputes every formula downstream of name. A formula that fails keeps its
+     * old value, and the first failure is thrown once the rest are recomputed.
+     */
+    private void recompute(String name) {
+        RuntimeException failure = null;
+        for (String dependent : formulas.downstream(name)) {
+            Cancellation.check();
+            try {
+                putVariable(dependent, evaluate(formulas.formula(dependent)));
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Sets a variable, or removes it for null, recording how to undo it.
+     */
+    private void putVariable(String name, Number value) {
+        Number previous = value == null ? variables.remove(name) : variables.put(name, value);
+        if (undo != null) {
+            undo.push(() -> putVariable(name, previous));
+        }
+    }
+
+    /**
+     * Replaces the formula of a variable, or removes it for null, recording how to undo it.
+     */
+    private void replaceFormula(String name, PreparedExpression formula) {
+        PreparedExpression previous = formulas.formula(name);
+        if (formula == null) {
+            formulas.remove(name);
+        } else {
+            formulas.define(name, formula);
+        }
+        if (undo != null && previous != formula) {
+            undo.push(() -> replaceFormula(name, previous));
+        }
+    }
+
+    private Number evaluate(PreparedExpression formula) {
+        List<String> reads = formula.variables();
+        Bindings bindings = new Bindings(reads.toArray(new String[0]));
+        for (int slot = 0; slot < reads.size(); slot++) {
+            bindings.set(slot, variable(reads.get(slot)).doubleValue());
+        }
+        return formula.evaluate(bindings);
+    }
+
+    /**
+     * SNAPSHOT assignments store the value of their expression, REACTIVE
+     * assignments store the expression itself as a formula.
+     */
+    public enum ASSIGNMENT_MODE {
+        SNAPSHOT, REACTIVE;
+    }
+
+}
@@ -0,0 +1,356 @@
+package session;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ast_nodes.ASTNode;
+import ast_nodes.ASTNode.RESULT_TYPE;
+import ast_nodes.BinaryOperatorNode;
+import ast_nodes.FunctionNode;
+import ast_nodes.NumberNode;
+import ast_nodes.NumberNode.DECIMAL_MODE;
+import ast_nodes.SharedNode;
+import ast_nodes.SlotNode;
+import ast_nodes.UnaryOperatorNode;
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import ast_nodes.VariableNode;
+import functions.FunctionRegistry;
+import functions.MathFunction;
+import functions.UserFunction;
+import parser.PreparedExpression;
+import session.EvaluationContext.ASSIGNMENT_MODE;
+
+/**
+ * Saves the state of a session to a compact binary file, and loads it back, so a
+ * restarted process picks up where it left off without running its definitions again.
+ *
+ * The file holds the modes, the variables, the user functions and the formulas
+ * of reactive variables. Function bodies and formulas are stored as trees, so
+ * loading does not parse anything. User functions are numbered and written
+ * before the functions that call them, and a call refers to the exact function
+ * it was parsed against, even if that name has since been redefined.
+ *
+ * Saving writes a temporary file next to the target, forces it to disk and moves
+ * it over the target, so the file is always either the old or the new snapshot.
+ * Loading reads the file through a memory mapping.
+ *
+ * Shared variables are not part of a session, and are not saved.
+ */
+public final class SessionSnapshot {
+
+    private static final int MAGIC = 0x43414C43; // "CALC"
+    private static final int VERSION = 1;
+
+    private static final byte NUMBER = 0;
+    private static final byte VARIABLE = 1;
+    private static final byte SLOT = 2;
+    private static final byte UNARY = 3;
+    private static final byte BINARY = 4;
+    private static final byte BUILT_IN_CALL = 5;
+    private static final byte USER_CALL = 6;
+
+    private static final byte NO_ANGLE_MODE = -1;
+
+    private SessionSnapshot() {}
+
+    /**
+     * Writes the context to file, replacing it atomically.
+     */
+    public static void save(EvaluationContext context, Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                new Writer(out).write(context);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public static EvaluationContext load(Path file) throws IOException {
+        return load(file, new SharedVariables());
+    }
+
+    /**
+     * Reads a context written by {@link #save}.
+     * @param sharedVariables The shared variables of the new context.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public static EvaluationContext load(Path file, SharedVariables sharedVariables) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Reader(in).read(new EvaluationContext(sharedVariables));
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("The session snapshot " + file + " is damaged.", e);
+        }
+    }
+
+    private static final class Writer {
+
+        private final DataOutputStream out;
+        private final Map<UserFunction, Integer> functionIds = new IdentityHashMap<>();
+        private final List<UserFunction> functions = new ArrayList<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void write(EvaluationContext context) throws IOException {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(context.angleMode().ordinal());
+            out.writeByte(context.decimalMode().ordinal());
+            out.writeByte(context.assignmentMode().ordinal());
+
+            Map<String, Number> variables = context.variables();
+            out.writeInt(variables.size());
+            for (Map.Entry<String, Number> variable : variables.entrySet()) {
+                writeString(variable.getKey());
+                writeNumber(variable.getValue());
+            }
+
+            // every user function reachable from the registry or a formula, callees first
+            List<String> defined = new ArrayList<>();
+            for (String name : context.functions().names()) {
+                if (context.functions().get(name) instanceof UserFunction function) {
+                    defined.add(name);
+                    number(function);
+                }
+            }
+            Map<String, PreparedExpression> formulas = context.formulas().formulas();
+            for (PreparedExpression formula : formulas.values()) {
+                numberCallees(formula.ast());
+            }
+
+            out.writeInt(functions.size());
+            for (UserFunction function : functions) {
+                writeString(function.name());
+                out.writeInt(function.parameters().size());
+                for (String parameter : function.parameters()) {
+                    writeString(parameter);
+                }
+                writeTree(function.body());
+            }
+            out.writeInt(defined.size());
+            for (String name : defined) {
+                out.writeInt(functionIds.get((UserFunction) context.functions().get(name)));
+            }
+
+            out.writeInt(formulas.size());
+            for (Map.Entry<String, PreparedExpression> formula : formulas.entrySet()) {
+                writeString(formula.getKey());
+                List<String> reads = formula.getValue().variables();
+                out.writeInt(reads.size());
+                for (String read : reads) {
+                    writeString(read);
+                }
+                writeTree(formula.getValue().ast());
+            }
+        }
+
+        private void number(UserFunction function) {
+            if (!functionIds.containsKey(function)) {
+                numberCallees(function.body());
+                functionIds.put(function, functions.size());
+                functions.add(function);
+            }
+        }
+
+        private void numberCallees(ASTNode node) {
+            if (node instanceof FunctionNode call && call.function() instanceof UserFunction function) {
+                number(function);
+            }
+            for (ASTNode child : node.children()) {
+                numberCallees(child);
+            }
+        }
+
+        private void writeTree(ASTNode node) throws IOException {
+            if (node instanceof SharedNode shared) {
+                // merged again when the formula is prepared
+                writeTree(shared.node());
+            } else if (node instanceof NumberNode number) {
+                out.writeByte(NUMBER);
+                writeNumber(number.value());
+            } else if (node instanceof VariableNode variable) {
+                out.writeByte(VARIABLE);
+                writeString(variable.name());
+                writeNumber(variable.value());
+            } else if (node instanceof SlotNode slot) {
+                out.writeByte(SLOT);
+                writeString(slot.name());
+                out.writeInt(slot.slot());
+                out.writeByte(slot.resultType().ordinal());
+            } else if (node instanceof UnaryOperatorNode unary) {
+                out.writeByte(UNARY);
+                writeString(unary.opToken());
+                out.writeByte(unary.angleMode() == null ? NO_ANGLE_MODE : unary.angleMode().ordinal());
+                writeTree(unary.operand());
+            } else if (node instanceof BinaryOperatorNode binary) {
+                out.writeByte(BINARY);
+                writeString(binary.opToken());
+                writeTree(binary.left());
+                writeTree(binary.right());
+            } else if (node instanceof FunctionNode call) {
+                if (call.function() instanceof UserFunction function) {
+                    out.writeByte(USER_CALL);
+                    out.writeInt(functionIds.get(function));
+                } else {
+                    out.writeByte(BUILT_IN_CALL);
+                    writeString(call.function().name());
+                }
+                List<ASTNode> arguments = call.children();
+                out.writeInt(arguments.size());
+                for (ASTNode argument : arguments) {
+                    writeTree(argument);
+                }
+            } else {
+                throw new IllegalArgumentException("A " + node.getClass().getSimpleName() + " cannot be saved.");
+            }
+        }
+
+        private void writeNumber(Number number) throws IOException {
+            RESULT_TYPE type = RESULT_TYPE.of(number);
+            out.writeByte(type.ordinal());
+            switch (type) {
+                case INT -> out.writeInt(number.intValue());
+                case LONG -> out.writeLong(number.longValue());
+                case DOUBLE -> out.writeDouble(number.doubleValue());
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+
+    }
+
+    private static final class Reader {
+
+        private static final ANGLE_MODE[] ANGLE_MODES = ANGLE_MODE.values();
+        private static final DECIMAL_MODE[] DECIMAL_MODES = DECIMAL_MODE.values();
+        private static final ASSIGNMENT_MODE[] ASSIGNMENT_MODES = ASSIGNMENT_MODE.values();
+        private static final RESULT_TYPE[] RESULT_TYPES = RESULT_TYPE.values();
+
+        private final ByteBuffer in;
+        private final List<UserFunction> functions = new ArrayList<>();
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        EvaluationContext read(EvaluationContext context) throws IOException {
+
+            if (in.remaining() < 8 || in.getInt() != MAGIC) {
+                throw new IOException("Not a session snapshot.");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported session snapshot version " + version + ".");
+            }
+            context.setAngleMode(ANGLE_MODES[in.get()]);
+            context.setDecimalMode(DECIMAL_MODES[in.get()]);
+            context.setAssignmentMode(ASSIGNMENT_MODES[in.get()]);
+
+            int variables = in.getInt();
+            for (int i = 0; i < variables; i++) {
+                context.restoreVariable(readString(), readNumber());
+            }
+
+            int functionCount = in.getInt();
+            for (int i = 0; i < functionCount; i++) {
+                String name = readString();
+                List<String> parameters = new ArrayList<>();
+                int parameterCount = in.getInt();
+                for (int p = 0; p < parameterCount; p++) {
+                    parameters.add(readString());
+                }
+                functions.add(new UserFunction(name, parameters, readTree()));
+            }
+            int defined = in.getInt();
+            for (int i = 0; i < defined; i++) {
+                context.functions().define(functions.get(in.getInt()));
+            }
+
+            int formulas = in.getInt();
+            for (int i = 0; i < formulas; i++) {
+                String name = readString();
+                String[] reads = new String[in.getInt()];
+                for (int r = 0; r < reads.length; r++) {
+                    reads[r] = readString();
+                }
+                context.formulas().define(name, PreparedExpression.of(readTree(), List.of(reads), context));
+            }
+
+            return context;
+        }
+
+        private ASTNode readTree() throws IOException {
+            byte tag = in.get();
+            return switch (tag) {
+                case NUMBER -> new NumberNode(readNumber());
+                case VARIABLE -> new VariableNode(readString(), readNumber());
+                case SLOT -> new SlotNode(readString(), in.getInt(), RESULT_TYPES[in.get()]);
+                case UNARY -> {
+                    String opToken = readString();
+                    byte angleMode = in.get();
+                    yield new UnaryOperatorNode(opToken, readTree(), angleMode == NO_ANGLE_MODE ? null : ANGLE_MODES[angleMode]);
+                }
+                case BINARY -> {
+                    String opToken = readString();
+                    ASTNode left = readTree();
+                    yield new BinaryOperatorNode(opToken, left, readTree());
+                }
+                case BUILT_IN_CALL, USER_CALL -> {
+                    MathFunction function = tag == USER_CALL ? functions.get(in.getInt()) : FunctionRegistry.builtIn(readString());
+                    List<ASTNode> arguments = new ArrayList<>();
+                    int count = in.getInt();
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(readTree());
+                    }
+                    yield new FunctionNode(function, arguments);
+                }
+                default -> throw new IOException("Unknown node " + tag + " in session snapshot.");
+            };
+        }
+
+        private Number readNumber() {
+            return switch (RESULT_TYPES[in.get()]) {
+                case INT -> in.getInt();
+                case LONG -> in.getLong();
+                case DOUBLE -> in.getDouble();
+            };
+        }
+
+        private String readString() {
+            byte[] bytes = new byte[in.getShort() & 0xFFFF];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+package session;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Variables shared by many contexts, such as rates and coefficients that every
+ * session and worker thread reads.
+ *
+ * The store is copy on write: every update publishes a new immutable
+ * {@link Snapshot}, so readers never lock, and a reader that holds on to one
+ * snapshot sees every variable at the same version. Updates to several
+ * variables are applied together, a snapshot has all of them or none.
+ * Writers retry on contention, which suits a store that is written rarely.
+ *
+ * Values are kept as doubles, and also boxed once when they are written, so
+ * reading them never allocates.
+ */
+public class SharedVariables {
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+
+    /**
+     * The latest version of the variables.
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    public void set(String name, double value) {
+        update(Map.of(name, value));
+    }
+
+    /**
+     * Sets all of the variables in one update.
+     * @return the snapshot the update published.
+     */
+    public Snapshot update(Map<String, Double> values) {
+        while (true) {
+            Snapshot snapshot = current.get();
+            Snapshot updated = snapshot.with(values);
+            if (current.compareAndSet(snapshot, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * One immutable version of the shared variables. Each variable has a slot,
+     * which stays the same in every later snapshot, and the version at which it
+     * was last written.
+     */
+    public static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(0, Map.of(), new double[0], new Number[0], new long[0]);
+
+        private final long version;
+        private final Map<String, Integer> slots;
+        private final double[] values;
+        private final Number[] boxed;
+        private final long[] versions;
+
+        private Snapshot(long version, Map<String, Integer> slots, double[] values, Number[] boxed, long[] versions) {
+            this.version = version;
+            this.slots = slots;
+            this.values = values;
+            this.boxed = boxed;
+            this.versions = versions;
+        }
+
+        /**
+         * Increases with every update.
+         */
+        public long version() {
+            return version;
+        }
+
+        /**
+         * @return the slot of the variable, or -1 if it is not defined.
+         */
+        public int slot(String name) {
+            Integer slot = slots.get(name);
+            return slot == null ? -1 : slot;
+        }
+
+        public boolean contains(String name) {
+            return slots.containsKey(name);
+        }
+
+        public double value(int slot) {
+            return values[slot];
+        }
+
+        /**
+         * The value of the slot, boxed when it was written.
+         */
+        public Number number(int slot) {
+            return boxed[slot];
+        }
+
+        /**
+         * The version at which the slot was last written.
+         */
+        public long version(int slot) {
+            return versions[slot];
+        }
+
+        public Set<String> names() {
+            return slots.keySet();
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        private Snapshot with(Map<String, Double> updates) {
+
+            long nextVersion = version + 1;
+            Map<String, Integer> nextSlots = slots;
+            int size = values.length;
+            for (String name : updates.keySet()) {
+                if (!slots.containsKey(name)) {
+                    if (nextSlots == slots) {
+                        nextSlots = new HashMap<>(slots);
+                    }
+                    nextSlots.put(name, size++);
+                }
+            }
+
+            double[] nextValues = Arrays.copyOf(values, size);
+            Number[] nextBoxed = Arrays.copyOf(boxed, size);
+            long[] nextVersions = Arrays.copyOf(versions, size);
+            for (Map.Entry<String, Double> update : updates.entrySet()) {
+                int slot = nextSlots.get(update.getKey());
+                nextValues[slot] = update.getValue();
+                nextBoxed[slot] = update.getValue();
+                nextVersions[slot] = nextVersion;
+            }
+
+            return new Snapshot(nextVersion, nextSlots == slots ? slots : Collections.unmodifiableMap(nextSlots), nextValues, nextBoxed, nextVersions);
+        }
+
+    }
+
+}
@@ -0,0 +1,121 @@
+package ast_nodes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ast_nodes.NumberNode.DECIMAL_MODE;
+
+/**
+ * Differential test of the allocation free formatting against the JDK: REG must
+ * print doubles like Double.toString, and NumberFormatter must print like
+ * String.format("%w.pf").
+ */
+class NumberFormatterTest {
+
+    private static final double[] CORPUS = {
+        0.0,
+        -0.0,
+        1,
+        -1,
+        0.5,
+        0.0005,
+        0.0004999,
+        0.00049999999999999999,
+        1.0005,
+        2.5,
+        9.9995,
+        9.9994999,
+        999.9995,
+        123456.789,
+        1E7,
+        1.5E-7,
+        Math.PI,
+        -Math.E,
+        1E22,
+        1E23,
+        9007199254740993.0,
+        Long.MAX_VALUE,
+        Double.MAX_VALUE,
+        Double.MIN_VALUE,
+        Double.MIN_NORMAL,
+        Double.NaN,
+        Double.POSITIVE_INFINITY,
+        Double.NEGATIVE_INFINITY,
+    };
+
+    @Test
+    void regularMatchesDoubleToString() {
+        for (double value : CORPUS) {
+            assertEquals(Double.toString(value), format(value, DECIMAL_MODE.REG), () -> "REG of " + value);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            assertEquals(Double.toString(value), format(value, DECIMAL_MODE.REG), () -> "REG of " + value);
+        }
+    }
+
+    @Test
+    void regularPrintsIntegersWithoutDecimals() {
+        assertEquals("8", NumberNode.formatNumber(8L, DECIMAL_MODE.REG));
+        assertEquals("-9223372036854775808", NumberNode.formatNumber(Long.MIN_VALUE, DECIMAL_MODE.REG));
+    }
+
+    @Test
+    void fixedMatchesStringFormat() {
+        for (double value : CORPUS) {
+            assertSameFixed(value);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // mostly values that print in a few digits, where rounding matters
+            double value = random.nextBoolean()
+                ? Math.round(random.nextGaussian() * 1E6) / Math.pow(10, random.nextInt(10))
+                : Double.longBitsToDouble(random.nextLong());
+            assertSameFixed(value);
+        }
+    }
+
+    @Test
+    void signedExponent() {
+        for (int exponent : new int[] {0, 3, -3, 12, -12, 300, -324}) {
+            StringBuilder out = new StringBuilder();
+            NumberFormatter.appendSignedExponent(out, exponent);
+            assertEquals(String.format(Locale.ROOT, "%+03d", exponent), out.toString());
+        }
+    }
+
+    @Test
+    void scientificAndEngineering() {
+        if (!NumberFormatter.SUPPORTED_LOCALE) {
+            return;
+        }
+        assertEquals(" 1.500 e", format(1.5, DECIMAL_MODE.SCI));
+        assertEquals("12345.679 e", format(12345.6789, DECIMAL_MODE.SCI));
+        assertEquals("12.346 E+03", format(12345.6789, DECIMAL_MODE.ENG));
+        assertEquals("-1.500 E-06", format(-0.0000015, DECIMAL_MODE.ENG));
+        assertEquals("0.000 E0", format(0.0, DECIMAL_MODE.ENG));
+    }
+
+    private static void assertSameFixed(double value) {
+        for (int decimals : new int[] {0, 1, 3, 6}) {
+            for (int width : new int[] {0, 6, 12}) {
+                StringBuilder out = new StringBuilder();
+                NumberFormatter.appendFixed(out, value, decimals, width);
+                String pattern = "%" + (width == 0 ? "" : width) + "." + decimals + "f";
+                assertEquals(String.format(Locale.ROOT, pattern, value), out.toString(), () -> pattern + " of " + value);
+            }
+        }
+    }
+
+    private static String format(double value, DECIMAL_MODE decimalMode) {
+        StringBuilder out = new StringBuilder();
+        NumberNode.formatNumber(value, decimalMode, out);
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,103 @@
+package ast_nodes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import parser.PreparedExpression;
+import session.EvaluationContext;
+
+/**
+ * Memoization is off until it is turned on, and once on, reuses the result of
+ * an expensive subtree while the variables it reads keep their values, without
+ * changing any result, even with many threads sharing the cache.
+ */
+class ResultCacheTest {
+
+    private static final String INPUT = "(sin(a))^2 * (cos(a))^3 + b";
+
+    @Test
+    void offByDefault() {
+        EvaluationContext context = new EvaluationContext();
+        assertNull(context.resultCache());
+        context.setResultCacheSize(100);
+        assertEquals(128, context.resultCache().capacity());
+        context.setResultCacheSize(0);
+        assertNull(context.resultCache());
+    }
+
+    @Test
+    void hitsWhileTheReadsKeepTheirValues() {
+        EvaluationContext context = new EvaluationContext();
+        context.setResultCacheSize(64);
+        PreparedExpression expression = PreparedExpression.prepare(INPUT, context);
+        Bindings bindings = expression.newBindings();
+        for (int b = 0; b < 10; b++) {
+            bindings.set("a", 0.5).set("b", b);
+            assertEquals(expected(0.5, b), expression.evaluate(bindings));
+        }
+        // the whole expression reads b, so it misses every time, and the trig that only reads a misses once
+        ResultCache.Stats stats = context.resultCache().stats();
+        assertEquals(11, stats.misses());
+        assertEquals(9, stats.hits());
+
+        bindings.set("a", 0.25);
+        assertEquals(expected(0.25, 1), expression.evaluate(bindings.set("b", 1)));
+        assertEquals(13, context.resultCache().stats().misses());
+        assertEquals(expected(0.25, 1), expression.evaluate(bindings));
+        assertEquals(10, context.resultCache().stats().hits());
+    }
+
+    @Test
+    void copiesHaveTheirOwnCache() {
+        EvaluationContext context = new EvaluationContext();
+        context.setResultCacheSize(64);
+        EvaluationContext copy = context.copy();
+        assertNotNull(copy.resultCache());
+        assertNotSame(context.resultCache(), copy.resultCache());
+        assertEquals(context.resultCache().capacity(), copy.resultCache().capacity());
+    }
+
+    @Test
+    void sharedBetweenThreads() throws InterruptedException, ExecutionException {
+        EvaluationContext context = new EvaluationContext();
+        // small enough that the threads keep evicting each other's entries
+        context.setResultCacheSize(4);
+        PreparedExpression expression = PreparedExpression.prepare(INPUT, context);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(threads.submit(() -> {
+                    Bindings bindings = expression.newBindings();
+                    for (int i = 0; i < 20_000; i++) {
+                        double a = (i + thread) % 7;
+                        bindings.set("a", a).set("b", i);
+                        assertEquals(expected(a, i), expression.evaluateDouble(bindings));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static double expected(double a, double b) {
+        return Math.pow(Math.sin(a), 2) * Math.pow(Math.cos(a), 3) + b;
+    }
+
+}
@@ -0,0 +1,70 @@
+package batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.function.IntToDoubleFunction;
+
+import org.junit.jupiter.api.Test;
+
+import ast_nodes.Bindings;
+import parser.PreparedExpression;
+
+/**
+ * Evaluating a column of rows at once gives, row for row, the same doubles as
+ * evaluating each row on its own, across block boundaries and in blocks where
+ * an integer overflows.
+ */
+class BatchEvaluatorTest {
+
+    private static final int ROWS = BatchEvaluator.BLOCK_SIZE * 2 + 37;
+
+    @Test
+    void sameAsEachRow() {
+        for (String input : new String[] {"x*y + sin(x)/2", "(x&y)+(x|1)", "sqrt(x*x+y*y)", "max(x, y)^2", "(x+y)*(x+y)-x", "(x+3)!"}) {
+            PreparedExpression expression = PreparedExpression.prepare(input);
+            double[][] columns = columns(expression, row -> row % 13 - 3.0, row -> row % 7);
+            double[] out = BatchEvaluator.evaluate(expression, columns);
+            assertEquals(ROWS, out.length);
+            for (int row = 0; row < ROWS; row++) {
+                Bindings bindings = expression.newBindings();
+                for (int slot = 0; slot < columns.length; slot++) {
+                    bindings.set(slot, columns[slot][row]);
+                }
+                assertEquals(expression.evaluateDouble(bindings), out[row], input + " row " + row);
+            }
+        }
+    }
+
+    @Test
+    void overflowOnlyChangesItsRow() {
+        // shifts are integral, so the sum is computed in a long kernel, and overflows in one row of the second block
+        PreparedExpression expression = PreparedExpression.prepare("(1<<x)+(1<<x)");
+        double[][] columns = columns(expression, row -> row == BatchEvaluator.BLOCK_SIZE + 5 ? 62 : row % 60, row -> 0);
+        double[] out = BatchEvaluator.evaluate(expression, columns);
+        for (int row = 0; row < ROWS; row++) {
+            double x = columns[0][row];
+            assertEquals(2.0 * Math.pow(2, x), out[row], "row " + row);
+        }
+    }
+
+    @Test
+    void columnsAreChecked() {
+        PreparedExpression expression = PreparedExpression.prepare("x+y");
+        BatchEvaluator evaluator = new BatchEvaluator(expression);
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(new double[1][], new double[4]));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(new double[][] {new double[4], new double[3]}, new double[4]));
+    }
+
+    private static double[][] columns(PreparedExpression expression, IntToDoubleFunction x, IntToDoubleFunction y) {
+        double[][] columns = new double[expression.variables().size()][ROWS];
+        for (int slot = 0; slot < columns.length; slot++) {
+            IntToDoubleFunction values = expression.variables().get(slot).equals("x") ? x : y;
+            for (int row = 0; row < ROWS; row++) {
+                columns[slot][row] = values.applyAsDouble(row);
+            }
+        }
+        return columns;
+    }
+
+}
@@ -0,0 +1,54 @@
+package compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import parser.PreparedExpression;
+
+/**
+ * Compiled code computes the same values as the tree it was compiled from,
+ * including integral results that are not exact as doubles and overflows.
+ */
+class ExpressionCompilerTest {
+
+    @Test
+    void sameAsTheTree() {
+        PreparedExpression expression = PreparedExpression.prepare("x*x + sin(y)/(x+y) - 2E(y) + (x+y)^2");
+        CompiledExpression compiled = ExpressionCompiler.compile(expression.ast());
+        for (double x = -3; x <= 3; x += 0.25) {
+            double y = 1.5 - x;
+            double expected = expression.ast().evaluateDouble(expression.newBindings().set("x", x).set("y", y));
+            assertEquals(expected, compiled.eval(new double[] {x, y}));
+        }
+    }
+
+    @Test
+    void integralResultsAreExact() {
+        CompiledExpression compiled = ExpressionCompiler.compile(PreparedExpression.prepare("(1<<62)+(1<<2)+(3&1)").ast());
+        assertEquals((1L << 62) + 5, compiled.evalLong(new double[0]));
+        assertEquals((double) ((1L << 62) + 5), compiled.eval(new double[0]));
+    }
+
+    @Test
+    void overflowThrows() {
+        CompiledExpression compiled = ExpressionCompiler.compile(PreparedExpression.prepare("(1<<62)*(1<<2)").ast());
+        assertThrows(ArithmeticException.class, () -> compiled.evalLong(new double[0]));
+        assertThrows(ArithmeticException.class, () -> compiled.eval(new double[0]));
+    }
+
+    @Test
+    void functionCallsAreInterpreted() {
+        PreparedExpression expression = PreparedExpression.prepare("max(x, 1)");
+        assertFalse(expression.compile());
+        assertFalse(expression.isCompiled());
+        assertEquals(2.0, expression.evaluate(expression.newBindings().set("x", 2)));
+        PreparedExpression compilable = PreparedExpression.prepare("x + 1");
+        assertTrue(compilable.compile());
+        assertEquals(3.0, compilable.evaluate(compilable.newBindings().set("x", 2)));
+    }
+
+}
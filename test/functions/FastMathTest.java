@@ -0,0 +1,93 @@
+package functions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+
+/**
+ * FastMath stays within the error bounds its documentation gives: against Math
+ * for radians, exact at every multiple of a right angle in degrees and
+ * gradians, and within |n| ulps of the exact value for integer powers.
+ */
+class FastMathTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    void radiansAgreeWithMath() {
+        for (int i = 0; i < 100_000; i++) {
+            double x = (random.nextDouble() - 0.5) * 2e5;
+            // 0.75 ulps for sin and cos and 2 for tan, plus Math's own 0.51
+            assertWithin(Math.sin(x), FastMath.sin(x, ANGLE_MODE.RAD), 1.3, x);
+            assertWithin(Math.cos(x), FastMath.cos(x, ANGLE_MODE.RAD), 1.3, x);
+            assertWithin(Math.tan(x), FastMath.tan(x, ANGLE_MODE.RAD), 2.6, x);
+        }
+        // beyond RAD_LIMIT the reduction is left to Math
+        double far = FastMath.RAD_LIMIT * 3;
+        assertWithin(Math.sin(far), FastMath.sin(far, ANGLE_MODE.RAD), 1.3, far);
+    }
+
+    @Test
+    void rightAnglesAreExact() {
+        for (ANGLE_MODE angleMode : new ANGLE_MODE[] {ANGLE_MODE.DEG, ANGLE_MODE.GRAD}) {
+            double quarter = angleMode.quarterTurn;
+            for (int k = -1000; k <= 1000; k++) {
+                double x = k * quarter;
+                double sin = new double[] {0, 1, 0, -1}[Math.floorMod(k, 4)];
+                double cos = new double[] {1, 0, -1, 0}[Math.floorMod(k, 4)];
+                assertEquals(sin, FastMath.sin(x, angleMode), 0, angleMode + " " + x);
+                assertEquals(cos, FastMath.cos(x, angleMode), 0, angleMode + " " + x);
+                double half = x + quarter / 2;
+                assertEquals(Math.floorMod(k, 2) == 0 ? 1 : -1, FastMath.tan(half, angleMode), 0, angleMode + " " + half);
+            }
+        }
+        assertEquals(0.0, FastMath.sin(180, ANGLE_MODE.DEG));
+        assertEquals(0.0, FastMath.sin(1e20 * 360, ANGLE_MODE.DEG), 0);
+    }
+
+    @Test
+    void unitsAgreeWithMathWithinAQuarterTurn() {
+        for (ANGLE_MODE angleMode : new ANGLE_MODE[] {ANGLE_MODE.DEG, ANGLE_MODE.GRAD}) {
+            for (int i = 0; i < 100_000; i++) {
+                double x = (random.nextDouble() - 0.5) * 2 * angleMode.quarterTurn;
+                // away from the zeros of sin, converting to radians first costs Math about an ulp
+                assertWithin(Math.sin(x * angleMode.conversion), FastMath.sin(x, angleMode), 2, x);
+                // whole turns later is the same angle, reduced exactly; sixty-fourths keep the sum exact
+                double angle = Math.rint(x * 64) / 64;
+                double turns = angle + 4 * angleMode.quarterTurn * (1 + random.nextInt(1000));
+                assertEquals(FastMath.sin(angle, angleMode), FastMath.sin(turns, angleMode), 0, angleMode + " " + turns);
+            }
+        }
+    }
+
+    @Test
+    void integerPowersAreWithinNUlps() {
+        MathContext precision = MathContext.DECIMAL128;
+        for (int i = 0; i < 20_000; i++) {
+            double x = (random.nextDouble() + 0.01) * 10;
+            for (int n = 1; n <= FastMath.MAX_INTEGER_POWER; n++) {
+                BigDecimal power = new BigDecimal(x).pow(n, precision);
+                assertWithin(power.doubleValue(), FastMath.pow(x, n), n, x);
+                assertWithin(BigDecimal.ONE.divide(power, precision).doubleValue(), FastMath.pow(x, -n), n + 1, x);
+            }
+            assertEquals(Math.sqrt(x), FastMath.pow(x, 0.5));
+            assertEquals(Math.pow(x, 2.5), FastMath.pow(x, 2.5));
+            assertEquals(Math.pow(x, 17), FastMath.pow(x, 17));
+        }
+        assertEquals(1.0, FastMath.pow(0, 0));
+        assertEquals(Double.POSITIVE_INFINITY, FastMath.pow(0, -2));
+    }
+
+    private static void assertWithin(double expected, double actual, double ulps, double x) {
+        double error = Math.abs(actual - expected) / Math.ulp(expected);
+        assertTrue(error <= ulps, () -> "x = " + x + ": " + actual + " is " + error + " ulps from " + expected);
+    }
+
+}
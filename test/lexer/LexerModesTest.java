@@ -0,0 +1,122 @@
+package lexer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import lexer.Lexer.LEXER_MODE;
+import parser.SyntaxException;
+
+/**
+ * Differential test of the scanner against the regex lexer it replaced: both
+ * modes of Lexer, and the StreamingLexer, must produce the same tokens for
+ * every input, or fail at the same index.
+ */
+class LexerModesTest {
+
+    private static final String[] CORPUS = {
+        "1+2",
+        "2 3",
+        "1 000",
+        " 12 . 5 * x ",
+        "\t(1+2)\n*3\r",
+        "1.",
+        ".5",
+        "1.25E3",
+        "6.02E23",
+        "1.6E-19",
+        "2E",
+        "2E-x",
+        "2E1.5",
+        "2E(3)",
+        "2E x",
+        "2^1E3",
+        "1<<40",
+        "1 < < 40",
+        "(5&3)+(6&2)|1>>2",
+        "~7%3",
+        "5!",
+        "sin(x)*cos(y)/tan(z)",
+        "sqrt(x*x+y*y)",
+        "sinx",
+        "e^pi+ans",
+        "exit",
+        "exp",
+        "rad",
+        "deg",
+        "grad",
+        "reactive",
+        "snapshot",
+        "var x = 5",
+        "def f(x, y) = x * x + y",
+        "max(1, x, 3)",
+        "hypot(a,b)",
+        "log(x, 2)",
+        "under_score",
+        "1 $ 2",
+        "x < 1",
+        "X",
+        "",
+        "   ",
+    };
+
+    private static final String ALPHABET = "0123456789.E-+^~&%|*/<>!(),=esinpaxvrdfgt_ \t";
+
+    @Test
+    void corpus() {
+        for (String input : CORPUS) {
+            assertSameTokens(input);
+        }
+    }
+
+    @Test
+    void randomInputs() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder input = new StringBuilder();
+            int length = random.nextInt(16);
+            for (int j = 0; j < length; j++) {
+                input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            assertSameTokens(input.toString());
+        }
+    }
+
+    @Test
+    void tokensAcrossStreamingWindows() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            input.append(i % 7 == 0 ? "sin( x )" : "12.5E-3").append(i % 3 == 0 ? " +  " : "*");
+        }
+        input.append("1");
+        assertSameTokens(input.toString());
+    }
+
+    private static void assertSameTokens(String input) {
+        List<String> expected = tokens(new Lexer(input, LEXER_MODE.REGEX));
+        assertEquals(expected, tokens(new Lexer(input, LEXER_MODE.SCAN)), () -> "SCAN mode on \"" + input + "\"");
+        assertEquals(expected, tokens(new StreamingLexer(new StringReader(input), null, null, 16)), () -> "streaming on \"" + input + "\"");
+    }
+
+    /**
+     * The types and values of the tokens, ending with the index of the syntax error if there is one.
+     */
+    private static List<String> tokens(TokenStream lexer) {
+        List<String> tokens = new ArrayList<>();
+        try {
+            while (lexer.hasMoreTokens()) {
+                Token token = lexer.getNextToken();
+                tokens.add(token.tokenType() + " " + token.value());
+            }
+        } catch (SyntaxException e) {
+            tokens.add("error at " + lexer.getCursor());
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,136 @@
+package lexer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import parser.Parser;
+
+/**
+ * Differential test of NumberLiteral against Double.parseDouble, which it must
+ * match bit for bit on every literal, through each of its conversion paths.
+ */
+class NumberLiteralTest {
+
+    private static final String[] CORPUS = {
+        "0",
+        "0.0",
+        "1",
+        "1.",
+        ".5",
+        "12",
+        "1.25",
+        "1.25E3",
+        "6.02E23",
+        "1.6E-19",
+        "0.1",
+        "0.3",
+        "123456789012345678",
+        "9007199254740993",
+        "9223372036854775807",
+        "9223372036854775808",
+        "12345678901234567890123",
+        "0.000000000000000000000000000001",
+        "1E22",
+        "1E23",
+        "2E22",
+        "4.9E-324",
+        "2.4703282292062327E-324",
+        "2.4703282292062328E-324",
+        "2.2250738585072011E-308",
+        "2.2250738585072014E-308",
+        "1.7976931348623157E308",
+        "1.7976931348623158E308",
+        "1.7976931348623159E308",
+        "1E309",
+        "1E-400",
+        "1E100000000",
+        "1E-100000000",
+        "0E100000000",
+        "00000000000000000000000000001.5",
+        "1.00000000000000000000000000001",
+        "7.038531E-26",
+    };
+
+    @Test
+    void corpus() {
+        for (String input : CORPUS) {
+            assertSameValue(input);
+        }
+    }
+
+    @Test
+    void randomLiterals() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder input = new StringBuilder();
+            appendDigits(input, random, 1 + random.nextInt(24));
+            if (random.nextBoolean()) {
+                input.append('.');
+                appendDigits(input, random, random.nextInt(20));
+            }
+            if (random.nextBoolean()) {
+                input.append('E');
+                if (random.nextBoolean()) {
+                    input.append('-');
+                }
+                input.append(random.nextInt(330));
+            }
+            assertSameValue(input.toString());
+        }
+    }
+
+    @Test
+    void randomDoubles() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong() & Long.MAX_VALUE);
+            if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                assertSameValue(Double.toString(value));
+            }
+        }
+    }
+
+    @Test
+    void literalInsideInput() {
+        assertEquals(1.25E3, NumberLiteral.parse("x+1.25E3*y", 2, 6));
+    }
+
+    @Test
+    void exponentIsPartOfTheLiteral() {
+        assertEquals(5.0E-4, evaluate("1/2E3"));
+        assertEquals(4000000.0, evaluate("2E3^2"));
+        assertEquals(Double.POSITIVE_INFINITY, evaluate("2E3!"));
+        // the E operator keeps its old meaning
+        assertEquals(500.0, evaluate("1/2E(3)"));
+        assertEquals(2.0E9, evaluate("2E(3)^2"));
+    }
+
+    @Test
+    void rejectsWhatIsNotALiteral() {
+        for (String input : new String[] {"", ".", "E5", "1E", "1E-", "1.2.3", "1e5", "-1", "1 2"}) {
+            assertThrows(NumberFormatException.class, () -> NumberLiteral.parse(input), () -> "\"" + input + "\"");
+        }
+    }
+
+    private static void appendDigits(StringBuilder input, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            input.append((char) ('0' + random.nextInt(10)));
+        }
+    }
+
+    private static Number evaluate(String input) {
+        return new Parser().parse(input).evaluate();
+    }
+
+    private static void assertSameValue(String input) {
+        double expected = Double.parseDouble(input);
+        double actual = NumberLiteral.parse(input);
+        assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual),
+            () -> "\"" + input + "\" gave " + actual + " instead of " + expected);
+    }
+
+}
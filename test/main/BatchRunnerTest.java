@@ -0,0 +1,107 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import ast_nodes.ASTNode;
+import ast_nodes.CommandNode;
+import ast_nodes.DefinitionNode;
+import parser.Parser;
+import parser.SyntaxException;
+import session.EvaluationContext;
+
+/**
+ * Evaluating lines in parallel must write exactly what evaluating them one
+ * after another would: the results in input order, errors with their line
+ * numbers, and ans as left by the last line before it.
+ */
+class BatchRunnerTest {
+
+    @Test
+    void sameAsEvaluatingInOrder() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < BatchRunner.CHUNK_SIZE + 3 * BatchRunner.SLICE_SIZE; i++) {
+            if (i % 1000 == 999) {
+                lines.add("ans * 2");
+            } else if (i % 777 == 5) {
+                lines.add("undefined + " + i);
+            } else if (i % 3001 == 10) {
+                lines.add("var x = " + i);
+            } else if (i % 501 == 7) {
+                lines.add("");
+            } else {
+                lines.add(i + " * 1.5 + (" + (i % 10) + "&3)");
+            }
+        }
+        lines.add(0, "var x = 1");
+        lines.add("x + ans");
+
+        String expected = inOrder(lines);
+        for (int threads : new int[] {1, 4}) {
+            assertEquals(expected, run(lines, threads), threads + " threads");
+        }
+    }
+
+    @Test
+    void errorsHaveTheirLineNumbers() throws IOException {
+        String output = run(List.of("1 + 1", "2 *", "", "zz", "3"), 2);
+        assertEquals(List.of("2.0", "Error on line 2: ", "", "Error on line 4: ", "3.0"), prefixes(output));
+    }
+
+    @Test
+    void exitStopsTheRun() throws IOException {
+        assertEquals("1.0\n", run(List.of("1", "exit", "2"), 2));
+    }
+
+    private static String run(List<String> lines, int threads) throws IOException {
+        StringWriter out = new StringWriter();
+        try (BatchRunner runner = new BatchRunner(new EvaluationContext(), threads)) {
+            runner.run(new BufferedReader(new StringReader(String.join("\n", lines))), out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * What one parser evaluating each line in turn writes.
+     */
+    private static String inOrder(List<String> lines) {
+        EvaluationContext context = new EvaluationContext();
+        Parser parser = new Parser(context);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            if (!lines.get(i).isBlank()) {
+                try {
+                    ASTNode ast = parser.parse(lines.get(i));
+                    if (!(ast instanceof CommandNode || ast instanceof DefinitionNode)) {
+                        out.append(context.format(ast.evaluate()));
+                    }
+                } catch (SyntaxException e) {
+                    out.append("Error on line ").append(i + 1).append(": ").append(e.getMessage());
+                }
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Each line of the output, up to and including the ": " of an error.
+     */
+    private static List<String> prefixes(String output) {
+        List<String> prefixes = new ArrayList<>();
+        for (String line : output.split("\n", -1)) {
+            int colon = line.indexOf(": ");
+            prefixes.add(line.startsWith("Error") ? line.substring(0, colon + 2) : line);
+        }
+        return prefixes.subList(0, prefixes.size() - 1);
+    }
+
+}
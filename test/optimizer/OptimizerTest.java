@@ -0,0 +1,56 @@
+package optimizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import ast_nodes.NumberNode;
+import ast_nodes.SlotNode;
+import parser.PreparedExpression;
+import parser.SyntaxException;
+
+/**
+ * Constant subtrees are folded and identities are applied, but only where the
+ * result is the same for every value of the variables.
+ */
+class OptimizerTest {
+
+    @Test
+    void identities() {
+        assertRemoved(2, "x*1");
+        assertRemoved(2, "x/1");
+        assertRemoved(2, "-(-x)");
+        assertRemoved(2, "(x+1)*1");
+        assertInstanceOf(SlotNode.class, optimize("x^1").ast());
+        // -0.0 + 0 is +0.0
+        assertRemoved(0, "x+0");
+    }
+
+    @Test
+    void constantsAreFolded() {
+        assertRemoved(2, "2*3+x");
+        assertRemoved(1, "sqrt(4)*x");
+        assertInstanceOf(NumberNode.class, optimize("max(1, 2, 3)^2").ast());
+        // rand is not pure
+        assertRemoved(0, "rand()+x");
+    }
+
+    @Test
+    void failuresAreLeftForEvaluation() {
+        PreparedExpression optimized = optimize("(-1)!+x");
+        // -1 is folded, its factorial is not
+        assertEquals(1, optimized.removedNodes());
+        assertThrows(SyntaxException.class, () -> optimized.evaluate(optimized.newBindings().set("x", 1)));
+    }
+
+    private static void assertRemoved(int removed, String input) {
+        assertEquals(removed, optimize(input).removedNodes(), input);
+    }
+
+    private static PreparedExpression optimize(String input) {
+        return PreparedExpression.prepare(input).optimize();
+    }
+
+}
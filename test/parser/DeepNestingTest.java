@@ -0,0 +1,54 @@
+package parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import session.EvaluationContext;
+
+/**
+ * Expressions evaluated straight away are folded as they are parsed, so they
+ * can be nested as deep as the heap allows. Trees that are kept are limited to
+ * MAX_TREE_DEPTH levels, and a deeper one is a syntax error, not a
+ * StackOverflowError.
+ */
+class DeepNestingTest {
+
+    private final EvaluationContext context = new EvaluationContext();
+
+    @Test
+    void immediateExpressionsNestWithoutLimit() {
+        assertEquals(1.0, evaluate("(".repeat(100_000) + "1" + ")".repeat(100_000)));
+        assertEquals(-1.0, evaluate("-".repeat(100_001) + "1"));
+        assertEquals(100_001.0, evaluate("1" + "+1".repeat(100_000)));
+    }
+
+    @Test
+    void keptTreesAreLimited() {
+        context.setVariable("x", 1.0);
+        PreparedExpression deepest = PreparedExpression.prepare(chain(Parser.MAX_TREE_DEPTH - 1), context);
+        assertEquals(1000.0, deepest.evaluate(deepest.newBindings().set("x", 1.0)));
+        SyntaxException e = assertThrows(SyntaxException.class, () -> PreparedExpression.prepare(chain(Parser.MAX_TREE_DEPTH), context));
+        assertEquals("The expression is nested more than " + Parser.MAX_TREE_DEPTH + " operators deep.", e.getMessage());
+    }
+
+    @Test
+    void aSubtreeThatIsKeptIsEvaluatedWithTheWholeExpression() {
+        // the overflow is not folded, so every enclosing node is kept and computed as a double
+        assertEquals(Math.pow(2, 64) + 990, evaluate("(1<<62)*(1<<2)" + "+1".repeat(990)));
+        assertThrows(SyntaxException.class, () -> evaluate("(1<<62)*(1<<2)" + "+1".repeat(Parser.MAX_TREE_DEPTH)));
+    }
+
+    /**
+     * x + x + ... with the given number of +, one level deep each.
+     */
+    private static String chain(int operators) {
+        return "x" + "+x".repeat(operators);
+    }
+
+    private Number evaluate(String input) {
+        return new Parser(context).parse(input).evaluate();
+    }
+
+}
@@ -0,0 +1,159 @@
+package parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import ast_nodes.Bindings;
+import batch.BatchEvaluator;
+import session.EvaluationContext;
+
+/**
+ * Differential test of the ways an expression can be evaluated: parsing it
+ * with its variables folded in, interpreting it prepared, running it compiled,
+ * and evaluating it in batch must all give the same result, or all fail, and
+ * evaluateDouble must give the same value without boxing it. Optimizing a
+ * prepared expression must not change it.
+ */
+class EvaluationAgreementTest {
+
+    private static final String[] CORPUS = {
+        "1+2*3",
+        "x+y",
+        "x-y*2",
+        "x/y",
+        "x%y",
+        "x^2+y^2",
+        "x^(y)",
+        "2^0.5",
+        "-x",
+        "-(x*y)",
+        "~x",
+        "x&3",
+        "x|y",
+        "x<<2",
+        "x>>1",
+        "xE3",
+        "2E(y)",
+        "sqrt(x*x+y*y)",
+        "sin(x)*cos(y)/tan(x+y)",
+        "max(x, y, 3)",
+        "min(x, y)",
+        "hypot(x, y)",
+        "log(x*x+1, 2)",
+        "(x+y)*(x+y)-(x+y)",
+        "3!*4!/(2!*5)",
+        "3!+2!",
+        "x!",
+        "(x+1)!",
+        "20!",
+        "21!",
+        "25!",
+        "(20!)*(20!)",
+        "2.5!",
+        "(x/2)!",
+        "(1<<62)+(1<<62)",
+        "(1<<62)*4",
+        "-(1<<62)*2-(1<<62)*2",
+        "((1<<62)+(1<<62))&7",
+        "1/0",
+        "0/0",
+    };
+
+    // x, y
+    private static final double[][] ROWS = {
+        {0.5, 2},
+        {5, 3},
+        {25, -1},
+        {-3, 7.5},
+        {0, 0},
+    };
+
+    @Test
+    void corpus() {
+        for (String input : CORPUS) {
+            for (double[] row : ROWS) {
+                assertAgree(input, row[0], row[1]);
+            }
+        }
+    }
+
+    @Test
+    void optimizedAgrees() {
+        for (String input : CORPUS) {
+            for (double[] row : ROWS) {
+                EvaluationContext context = context(row[0], row[1]);
+                PreparedExpression prepared = PreparedExpression.prepare(input, context);
+                String expected = result(() -> prepared.evaluate(bind(prepared, row[0], row[1])));
+                PreparedExpression optimized = prepared.optimize();
+                assertEquals(expected, result(() -> optimized.evaluate(bind(optimized, row[0], row[1]))),
+                    () -> "optimized " + input + " at " + row[0] + ", " + row[1]);
+            }
+        }
+    }
+
+    private static void assertAgree(String input, double x, double y) {
+
+        String message = input + " at x = " + x + ", y = " + y;
+        EvaluationContext context = context(x, y);
+
+        String parsed = result(() -> new Parser(context.copy()).parse(input).evaluate());
+
+        PreparedExpression prepared = PreparedExpression.prepare(input, context);
+        assertEquals(parsed, result(() -> prepared.evaluate(bind(prepared, x, y))), () -> "prepared " + message);
+
+        // the unboxed result is the boxed one as a double
+        if (!parsed.startsWith("error")) {
+            double expected = prepared.evaluate(bind(prepared, x, y)).doubleValue();
+            assertEquals(expected, prepared.evaluateDouble(bind(prepared, x, y)), () -> "evaluateDouble " + message);
+        }
+
+        PreparedExpression compiled = PreparedExpression.prepare(input, context);
+        compiled.compile();
+        assertEquals(parsed, result(() -> compiled.evaluate(bind(compiled, x, y))), () -> "compiled " + message);
+
+        // batch evaluation gives doubles
+        String expected = parsed.startsWith("error") ? parsed : result(() -> prepared.evaluateDouble(bind(prepared, x, y)));
+        assertEquals(expected, result(() -> batch(prepared, x, y)), () -> "batch " + message);
+    }
+
+    private static EvaluationContext context(double x, double y) {
+        EvaluationContext context = new EvaluationContext();
+        context.setVariable("x", x);
+        context.setVariable("y", y);
+        return context;
+    }
+
+    private static Bindings bind(PreparedExpression expression, double x, double y) {
+        Bindings bindings = expression.newBindings();
+        for (String variable : expression.variables()) {
+            bindings.set(variable, variable.equals("x") ? x : y);
+        }
+        return bindings;
+    }
+
+    private static double batch(PreparedExpression expression, double x, double y) {
+        double[][] columns = new double[expression.variables().size()][];
+        for (int slot = 0; slot < columns.length; slot++) {
+            columns[slot] = new double[] {expression.variables().get(slot).equals("x") ? x : y};
+        }
+        double[] out = new double[1];
+        new BatchEvaluator(expression).evaluate(columns, out);
+        return out[0];
+    }
+
+    /**
+     * The type and value of the result, or the error.
+     */
+    private static String result(Supplier<Number> evaluation) {
+        try {
+            Number value = evaluation.get();
+            return value.getClass().getSimpleName() + " " + value;
+        } catch (SyntaxException | ArithmeticException e) {
+            return "error " + e.getMessage();
+        }
+    }
+
+}
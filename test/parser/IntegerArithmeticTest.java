@@ -0,0 +1,81 @@
+package parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import batch.BatchEvaluator;
+import session.EvaluationContext;
+
+/**
+ * Integral results are Longs and print without a decimal point, and an
+ * expression in which an integer overflows is computed in double arithmetic
+ * as a whole, the same way whether it is parsed, prepared, compiled or
+ * evaluated in batch.
+ */
+class IntegerArithmeticTest {
+
+    private final EvaluationContext context = new EvaluationContext();
+
+    @Test
+    void integralResultsPrintAsIntegers() {
+        assertEquals("8", print("3!+2!"));
+        assertEquals("1099511627776", print("1<<40"));
+        assertEquals("3", print("(5&3)+(6&2)"));
+        // number literals are decimals
+        assertEquals("3.0", print("1+2"));
+    }
+
+    @Test
+    void overflowComputesTheWholeExpressionAsDoubles() {
+        assertEquals(5.919012181389928E36, evaluate("(20!)*(20!)"));
+        assertEquals(1.8446744073709552E19, evaluate("(1<<62)*(1<<2)"));
+        // the bitwise operator truncates the decimal sum, and the result is a Double
+        assertEquals(7.0, evaluate("((1<<62)+(1<<62))&7"));
+        assertEquals(7.0, evaluate("((20!)*(20!))&7"));
+        assertEquals(1.0, evaluate("2.5!&1"));
+        assertEquals(3L, evaluate("(5&3)+(6&2)"));
+    }
+
+    @Test
+    void overflowAtTheBottomOfADeepTree() {
+        StringBuilder input = new StringBuilder("(1<<1)");
+        for (int i = 1; i < 500; i++) {
+            input.append("*(1<<1)");
+        }
+        double expected = Math.pow(2, 500);
+        assertEquals(expected, evaluate(input.toString()));
+        PreparedExpression prepared = PreparedExpression.prepare(input.toString(), context);
+        assertEquals(expected, prepared.evaluate(prepared.newBindings()));
+        assertEquals(expected, prepared.evaluateDouble(prepared.newBindings()));
+        prepared.compile();
+        assertEquals(expected, prepared.evaluate(prepared.newBindings()));
+        double[] out = new double[1];
+        new BatchEvaluator(prepared).evaluate(new double[0][], out);
+        assertEquals(expected, out[0]);
+    }
+
+    @Test
+    void waysOfEvaluatingAgree() {
+        context.setVariable("x", 62L);
+        for (String input : new String[] {"(1<<x)+(1<<x)", "((1<<x)*4)|1", "-(1<<x)*2-(1<<x)*2", "(1<<x)+1"}) {
+            Number parsed = evaluate(input);
+            PreparedExpression prepared = PreparedExpression.prepare(input, context);
+            assertEquals(parsed, prepared.evaluate(prepared.newBindings().set("x", 62)), input);
+            prepared.compile();
+            assertEquals(parsed, prepared.evaluate(prepared.newBindings().set("x", 62)), input);
+            double[] out = new double[1];
+            new BatchEvaluator(prepared).evaluate(new double[][] {{62}}, out);
+            assertEquals(parsed.doubleValue(), out[0], input);
+        }
+    }
+
+    private Number evaluate(String input) {
+        return new Parser(context).parse(input).evaluate();
+    }
+
+    private String print(String input) {
+        return context.format(evaluate(input));
+    }
+
+}
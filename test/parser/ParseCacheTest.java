@@ -0,0 +1,101 @@
+package parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import session.EvaluationContext;
+
+/**
+ * A parser with a cache must give the same results as one without, whatever
+ * changed since an input was cached: variable values and types, the angle
+ * mode, the assignment mode or the functions.
+ */
+class ParseCacheTest {
+
+    private final EvaluationContext context = new EvaluationContext();
+    private final Parser parser = new Parser(context, 16);
+
+    @Test
+    void hitsBindCurrentValues() {
+        run("var x = 3");
+        assertEquals(6.0, run("x * 2"));
+        run("var x = 4");
+        assertEquals(8.0, run("x  *  2"));
+        assertEquals(1, parser.cache().stats().hits());
+    }
+
+    @Test
+    void assignmentsAndAnsAreRunOnHits() {
+        run("var x = 1");
+        run("var x = x + 1");
+        run("var x = x + 1");
+        assertEquals(3.0, context.variable("x"));
+        assertEquals(6.0, run("ans * 2"));
+        assertEquals(12.0, run("ans * 2"));
+    }
+
+    @Test
+    void variableTypeChangeMisses() {
+        context.setVariable("x", 5L);
+        assertEquals(25L, run("x * x"));
+        context.setVariable("x", 5.0);
+        assertEquals(25.0, run("x * x"));
+        context.setVariable("x", 5L);
+        assertEquals(25L, run("x * x"));
+        context.setVariable("x", 1L << 60);
+        assertEquals((1L << 60) + 1, run("x | 1"));
+        // not exact as a double, so never bound to a slot
+        context.setVariable("x", (1L << 60) + 1);
+        assertEquals((1L << 60) + 1, run("x | 1"));
+    }
+
+    @Test
+    void angleModeChangeMisses() {
+        double radians = Math.sin(90);
+        assertEquals(radians, run("sin(90)"));
+        run("deg");
+        assertEquals(1.0, run("sin(90)"));
+        run("rad");
+        assertEquals(radians, run("sin(90)"));
+    }
+
+    @Test
+    void reactiveAssignmentsKeepTheirFormula() {
+        run("var x = 1");
+        run("var y = x * 2");
+        run("reactive");
+        run("var y = x * 2");
+        run("var x = 5");
+        assertEquals(10.0, context.variable("y"));
+    }
+
+    @Test
+    void definingAFunctionClearsTheCache() {
+        run("def f(x) = x + 1");
+        assertEquals(3.0, run("f(2)"));
+        run("def f(x) = x * 10");
+        assertEquals(20.0, run("f(2)"));
+    }
+
+    @Test
+    void errorsAreReportedOnEveryLookup() {
+        assertThrows(SyntaxException.class, () -> run("z + 1"));
+        assertThrows(SyntaxException.class, () -> run("z + 1"));
+        run("var z = 1");
+        assertEquals(2.0, run("z + 1"));
+    }
+
+    @Test
+    void normalize() {
+        assertEquals("x * 2", ParseCache.normalize("  x \t*\n\n2 "));
+        String normalized = "x * 2";
+        assertEquals(normalized, ParseCache.normalize(normalized));
+    }
+
+    private Number run(String input) {
+        return parser.parse(input).evaluate();
+    }
+
+}
@@ -0,0 +1,50 @@
+package parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import ast_nodes.Bindings;
+import session.EvaluationContext;
+
+/**
+ * A prepared expression is parsed once and reads its variables from the
+ * bindings of each evaluation.
+ */
+class PreparedExpressionTest {
+
+    @Test
+    void variablesAreBoundPerEvaluation() {
+        PreparedExpression expression = PreparedExpression.prepare("2*r + r*h");
+        assertEquals(List.of("r", "h"), expression.variables());
+        Bindings bindings = expression.newBindings();
+        for (int r = 0; r < 10; r++) {
+            bindings.set("r", r).set("h", 3);
+            assertEquals(5.0 * r, expression.evaluate(bindings));
+            assertEquals(5.0 * r, expression.evaluateDouble(bindings));
+        }
+    }
+
+    @Test
+    void unboundVariables() {
+        PreparedExpression expression = PreparedExpression.prepare("x + y");
+        Bindings bindings = expression.newBindings().set("x", 1);
+        SyntaxException e = assertThrows(SyntaxException.class, () -> expression.evaluate(bindings));
+        assertEquals("The variable y is undefined.", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> bindings.set("z", 1));
+    }
+
+    @Test
+    void angleModeIsTakenWhenPrepared() {
+        EvaluationContext context = new EvaluationContext();
+        Parser parser = new Parser(context);
+        parser.parse("deg");
+        PreparedExpression expression = parser.prepare("sin(a)");
+        parser.parse("rad");
+        assertEquals(1.0, expression.evaluate(expression.newBindings().set("a", 90)));
+    }
+
+}
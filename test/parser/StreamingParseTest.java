@@ -0,0 +1,99 @@
+package parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import lexer.StreamingLexer;
+import session.EvaluationContext;
+
+/**
+ * Parsing input as it is read must give the same result as parsing it from a
+ * string, however the input is split into reads.
+ */
+class StreamingParseTest {
+
+    @TempDir
+    Path directory;
+
+    private final EvaluationContext context = new EvaluationContext();
+    private final Parser parser = new Parser(context);
+
+    @Test
+    void sameAsParsingAString() {
+        context.setVariable("x", 3L);
+        for (String input : new String[] {"1+2*3", "x * x", "sin(x)^2 + cos(x)^2", "max(1, x, 2.5E-1)", "(5&3)+(6&2)", "2^1E3", "3!+2!"}) {
+            assertEquals(parser.parse(input).evaluate(), parser.parse(new StringReader(input)).evaluate(), input);
+            assertEquals(parser.parse(input).evaluate(), parser.parse(new TrickleReader(input)).evaluate(), input);
+        }
+    }
+
+    @Test
+    void inputLargerThanTheWindow() throws IOException {
+        StringBuilder input = new StringBuilder();
+        double expected = 0;
+        for (int i = 0; i < 200_000; i++) {
+            input.append(i % 10).append(".5 * 2 + ");
+            expected += (i % 10 + 0.5) * 2;
+        }
+        input.append('0');
+        String text = input.toString();
+
+        assertEquals(expected, parser.parse(new TrickleReader(text)).evaluate());
+        Path file = directory.resolve("large.calc");
+        Files.writeString(file, text);
+        assertEquals(expected, parser.parse(file).evaluate());
+        assertEquals(expected, parser.parse(Channels.newChannel(Files.newInputStream(file))).evaluate());
+    }
+
+    @Test
+    void errors() throws IOException {
+        SyntaxException e = assertThrows(SyntaxException.class, () -> parser.parse(new StringReader("1 + $")));
+        assertEquals(assertThrows(SyntaxException.class, () -> parser.parse("1 + $")).getMessage(), e.getMessage());
+        String literal = "1".repeat(StreamingLexer.DEFAULT_WINDOW_SIZE * 2);
+        assertThrows(SyntaxException.class, () -> parser.parse(new StringReader(literal)));
+        Path file = directory.resolve("utf8.calc");
+        Files.write(file, "1 + é".getBytes(StandardCharsets.UTF_8));
+        assertThrows(SyntaxException.class, () -> parser.parse(file));
+    }
+
+    /**
+     * Hands out at most 3 characters per read.
+     */
+    private static class TrickleReader extends Reader {
+
+        private final String input;
+        private int position;
+
+        TrickleReader(String input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == input.length()) {
+                return -1;
+            }
+            int count = Math.min(Math.min(length, 3), input.length() - position);
+            input.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
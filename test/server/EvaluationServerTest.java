@@ -0,0 +1,122 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Every line sent to the server is checked against its limits, and a line that
+ * runs out of time is cut off without changing the session.
+ */
+class EvaluationServerTest {
+
+    @Test
+    void repliesInOrder() throws IOException {
+        try (EvaluationServer server = start(new EvaluationLimits(1000, 1000, 100, 0));
+                Client client = new Client(server)) {
+            assertEquals("3.0", client.send("1+2"));
+            assertEquals("4.0", client.send("var x = 4"));
+            assertEquals("8", client.send("(x&6)+(x|0)"));
+            assertEquals("Error: The variable zz is undefined.", client.send("zz"));
+            assertEquals("", client.send(""));
+            assertNull(client.send("exit"));
+        }
+    }
+
+    @Test
+    void limits() throws IOException {
+        try (EvaluationServer server = start(new EvaluationLimits(100, 20, 3, 0));
+                Client client = new Client(server)) {
+            assertEquals("Error: The line is longer than 100 characters.", client.send("1+".repeat(60) + "1"));
+            assertEquals("Error: The expression has more than 20 nodes.", client.send("1+".repeat(10) + "1"));
+            assertEquals("19.0", client.send("1+".repeat(9) + "10"));
+            assertEquals("Error: The expression is nested more than 3 deep.", client.send("((((1))))"));
+            assertEquals("1.0", client.send("(((1)))"));
+        }
+    }
+
+    @Test
+    void timedOutLinesAreDiscarded() throws IOException {
+        try (EvaluationServer server = start(new EvaluationLimits(1 << 16, 10_000, 100, 100));
+                Client client = new Client(server)) {
+
+            // fe makes 10^4 calls of fa, and fi 10^8, and fa is not pure, so none of them are memoized
+            client.send("def fa(x) = x + rand()*0");
+            String previous = "fa";
+            for (String name : new String[] {"fb", "fc", "fd", "fe", "ff", "fg", "fh", "fi"}) {
+                client.send("def " + name + "(x) = " + String.join(" + ", Collections.nCopies(10, previous + "(x)")));
+                previous = name;
+            }
+            assertEquals("Error: The expression took longer than 100 ms to evaluate.", client.send("fi(1)"));
+
+            // each formula is quick to define, but recomputing all of them is not
+            client.send("reactive");
+            client.send("var n = 1");
+            for (int i = 0; i < 500; i++) {
+                assertEquals("10000.0", client.send("var " + name(i) + " = fe(n) + 0*n"));
+            }
+            assertEquals("Error: The expression took longer than 100 ms to evaluate.", client.send("var n = 2"));
+            assertEquals("1.0", client.send("n"));
+            assertEquals("10000.0", client.send(name(499)));
+            assertEquals("2.0", client.send("1 + 1"));
+        }
+    }
+
+    private static EvaluationServer start(EvaluationLimits limits) throws IOException {
+        EvaluationServer server = new EvaluationServer(0, limits);
+        server.start();
+        return server;
+    }
+
+    /**
+     * Names without digits, which are not allowed in variable names.
+     */
+    private static String name(int i) {
+        StringBuilder name = new StringBuilder("q");
+        for (char digit : Integer.toString(i, 26).toCharArray()) {
+            name.append((char) ('a' + Character.digit(digit, 26)));
+        }
+        return name.toString();
+    }
+
+    private static class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final Writer writer;
+
+        Client(EvaluationServer server) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.port());
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the reply, or null once the server has closed the connection.
+         */
+        String send(String line) throws IOException {
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+            return reader.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import parser.PreparedExpression;
+import parser.SyntaxException;
+
+/**
+ * The graph must list exactly the formulas downstream of a variable, each after
+ * the formulas it reads, and refuse formulas that would make a cycle.
+ */
+class DependencyGraphTest {
+
+    private final DependencyGraph graph = new DependencyGraph();
+
+    @Test
+    void downstreamInTopologicalOrder() {
+        define("b", "a * 2");
+        define("d", "c * b");
+        define("c", "b + a");
+        define("e", "x");
+
+        List<String> downstream = graph.downstream("a");
+        assertEquals(3, downstream.size());
+        assertTrue(downstream.indexOf("b") < downstream.indexOf("c"));
+        assertTrue(downstream.indexOf("c") < downstream.indexOf("d"));
+
+        assertEquals(List.of("d"), graph.downstream("c"));
+        assertEquals(List.of(), graph.downstream("d"));
+        assertEquals(List.of(), graph.downstream("y"));
+    }
+
+    @Test
+    void diamondIsVisitedOnce() {
+        define("b", "a + 1");
+        define("c", "a + 2");
+        define("d", "b * c");
+        List<String> downstream = graph.downstream("a");
+        assertEquals(3, downstream.size());
+        assertEquals("d", downstream.get(2));
+    }
+
+    @Test
+    void cyclesAreRejected() {
+        define("b", "a * 2");
+        define("c", "b + 1");
+        assertThrows(SyntaxException.class, () -> graph.checkAcyclic("a", formula("c + 1")));
+        assertThrows(SyntaxException.class, () -> graph.checkAcyclic("a", formula("a + 1")));
+        graph.checkAcyclic("a", formula("x + 1"));
+    }
+
+    @Test
+    void replacingAndRemovingFormulas() {
+        define("b", "a * 2");
+        define("c", "b + 1");
+        define("b", "x * 2");
+        assertEquals(List.of(), graph.downstream("a"));
+        assertEquals(List.of("b", "c"), graph.downstream("x"));
+
+        graph.remove("b");
+        assertEquals(List.of(), graph.downstream("x"));
+        assertEquals(List.of("c"), graph.downstream("b"));
+        assertEquals(1, graph.formulas().size());
+    }
+
+    @Test
+    void copiesAreIndependent() {
+        define("b", "a * 2");
+        DependencyGraph copy = graph.copy();
+        copy.remove("b");
+        assertEquals(List.of("b"), graph.downstream("a"));
+        assertEquals(List.of(), copy.downstream("a"));
+    }
+
+    @Test
+    void longChain() {
+        // deeper than any recursive search would manage
+        define(name(0), "a + 1");
+        for (int i = 1; i < 20_000; i++) {
+            define(name(i), name(i - 1) + " + 1");
+        }
+        List<String> downstream = graph.downstream("a");
+        assertEquals(20_000, downstream.size());
+        assertEquals(name(19_999), downstream.get(downstream.size() - 1));
+    }
+
+    /**
+     * Variable names cannot contain digits, so i is written in base 26 with the letters a to z.
+     */
+    private static String name(int i) {
+        StringBuilder name = new StringBuilder("q");
+        for (char digit : Integer.toString(i, 26).toCharArray()) {
+            name.append((char) ('a' + Character.digit(digit, 26)));
+        }
+        return name.toString();
+    }
+
+    private void define(String name, String formula) {
+        graph.define(name, formula(formula));
+    }
+
+    private static PreparedExpression formula(String input) {
+        return PreparedExpression.prepare(input);
+    }
+
+}
@@ -0,0 +1,93 @@
+package session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import parser.Parser;
+import parser.SyntaxException;
+
+/**
+ * Reactive formulas must be recomputed whenever a variable they read changes,
+ * and changes that are discarded must leave the context as it was.
+ */
+class EvaluationContextTest {
+
+    private final EvaluationContext context = new EvaluationContext();
+    private final Parser parser = new Parser(context);
+
+    @Test
+    void formulasAreRecomputed() {
+        run("reactive");
+        run("var price = 10");
+        run("var tax = price * 0.2");
+        run("var total = price + tax");
+        assertEquals(12.0, context.variable("total"));
+
+        run("var price = 20");
+        assertEquals(4.0, context.variable("tax"));
+        assertEquals(24.0, context.variable("total"));
+
+        // a plain value replaces the formula
+        run("snapshot");
+        run("var tax = 1");
+        run("var price = 30");
+        assertNull(context.formula("tax"));
+        assertEquals(31.0, context.variable("total"));
+    }
+
+    @Test
+    void circularFormulasAreRejected() {
+        run("reactive");
+        run("var a = 1");
+        run("var b = a + 1");
+        assertThrows(SyntaxException.class, () -> run("var a = b + 1"));
+        assertNull(context.formula("a"));
+        run("var a = 5");
+        assertEquals(6.0, context.variable("b"));
+    }
+
+    @Test
+    void discardedChangesAreUndone() {
+        run("reactive");
+        run("var a = 1");
+        run("var b = a * 2");
+        run("def f(x) = x + 1");
+
+        context.beginChanges();
+        run("deg");
+        run("var a = 10");
+        run("var c = 3");
+        run("var b = a * 3");
+        run("def f(x) = x + 100");
+        run("def g(x) = x");
+        context.discardChanges();
+
+        assertEquals(ANGLE_MODE.RAD, context.angleMode());
+        assertEquals(1.0, context.variable("a"));
+        assertEquals(2.0, context.variable("b"));
+        assertFalse(context.isDefined("c"));
+        assertEquals(3.0, run("f(2)"));
+        assertNull(context.functions().get("g"));
+        run("var a = 4");
+        assertEquals(8.0, context.variable("b"));
+    }
+
+    @Test
+    void committedChangesAreKept() {
+        context.beginChanges();
+        run("var a = 10");
+        context.commitChanges();
+        context.discardChanges();
+        assertEquals(10.0, context.variable("a"));
+    }
+
+    private Number run(String input) {
+        return parser.parse(input).evaluate();
+    }
+
+}
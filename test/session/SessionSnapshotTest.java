@@ -0,0 +1,92 @@
+package session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ast_nodes.NumberNode.DECIMAL_MODE;
+import ast_nodes.UnaryOperatorNode.ANGLE_MODE;
+import parser.Parser;
+import session.EvaluationContext.ASSIGNMENT_MODE;
+
+/**
+ * A session saved and loaded again must behave like the session it was saved
+ * from: the same modes, variables of the same types, and functions and formulas
+ * that give the same results.
+ */
+class SessionSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTrip() throws IOException {
+
+        EvaluationContext context = new EvaluationContext();
+        Parser parser = new Parser(context);
+        run(parser, "deg");
+        run(parser, "sci");
+        run(parser, "var a = 2.5");
+        run(parser, "var n = 3!");
+        run(parser, "def sq(x) = x * x");
+        run(parser, "def f(x, y) = sq(x) + sin(y) + max(x, y, 1)");
+        run(parser, "reactive");
+        run(parser, "var total = f(a, 90) * n");
+        run(parser, "var big = (20!) * (20!) + n");
+
+        Path file = directory.resolve("session.calc");
+        SessionSnapshot.save(context, file);
+        EvaluationContext loaded = SessionSnapshot.load(file);
+
+        assertEquals(ANGLE_MODE.DEG, loaded.angleMode());
+        assertEquals(DECIMAL_MODE.SCI, loaded.decimalMode());
+        assertEquals(ASSIGNMENT_MODE.REACTIVE, loaded.assignmentMode());
+        assertEquals(context.variables(), loaded.variables());
+        assertNotNull(loaded.formula("total"));
+        assertNull(loaded.formula("a"));
+
+        // the restored formulas and functions still work, in the restored angle mode
+        Parser restored = new Parser(loaded);
+        run(parser, "var a = 4");
+        run(restored, "var a = 4");
+        assertEquals(context.variable("total"), loaded.variable("total"));
+        assertEquals(run(parser, "f(3, 30)"), run(restored, "f(3, 30)"));
+        run(parser, "var n = 5!");
+        run(restored, "var n = 5!");
+        assertEquals(context.variable("big"), loaded.variable("big"));
+    }
+
+    @Test
+    void emptySession() throws IOException {
+        Path file = directory.resolve("empty.calc");
+        SessionSnapshot.save(new EvaluationContext(), file);
+        EvaluationContext loaded = SessionSnapshot.load(file);
+        assertEquals(ANGLE_MODE.RAD, loaded.angleMode());
+        assertEquals(new EvaluationContext().variables(), loaded.variables());
+    }
+
+    @Test
+    void damagedFile() throws IOException {
+        Path file = directory.resolve("damaged.calc");
+        SessionSnapshot.save(new EvaluationContext(), file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> SessionSnapshot.load(file));
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> SessionSnapshot.load(file));
+    }
+
+    private static Number run(Parser parser, String input) {
+        return parser.parse(input).evaluate();
+    }
+
+}
@@ -0,0 +1,108 @@
+package session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import parser.Parser;
+
+/**
+ * An update to several shared variables is seen by readers all at once, and
+ * every read in one evaluation sees the same version.
+ */
+class SharedVariablesTest {
+
+    @Test
+    void snapshots() {
+        SharedVariables shared = new SharedVariables();
+        SharedVariables.Snapshot before = shared.snapshot();
+        shared.set("a", 1);
+        SharedVariables.Snapshot after = shared.update(Map.of("a", 2.0, "b", 3.0));
+
+        assertFalse(before.contains("a"));
+        assertEquals(2, after.version());
+        int slot = after.slot("a");
+        assertEquals(slot, shared.snapshot().slot("a"));
+        assertEquals(2.0, after.value(slot));
+        assertEquals(2.0, after.number(slot));
+        assertEquals(2, after.version(slot));
+        assertEquals(-1, after.slot("c"));
+
+        shared.set("b", 4);
+        assertEquals(3.0, after.value(after.slot("b")));
+        assertEquals(2, shared.snapshot().version(slot));
+    }
+
+    @Test
+    void contextsReadSharedVariables() {
+        SharedVariables shared = new SharedVariables();
+        EvaluationContext context = new EvaluationContext(shared);
+        Parser parser = new Parser(context);
+        shared.set("rate", 0.5);
+        assertEquals(5.0, parser.parse("rate * 10").evaluate());
+        shared.set("rate", 0.25);
+        assertEquals(2.5, parser.parse("rate * 10").evaluate());
+
+        // a variable of the context hides the shared one
+        parser.parse("var rate = 2");
+        assertEquals(20.0, parser.parse("rate * 10").evaluate());
+        assertSame(shared, context.copy().sharedVariables());
+    }
+
+    @Test
+    void updatesAreAtomic() throws InterruptedException, ExecutionException {
+        SharedVariables shared = new SharedVariables();
+        shared.update(Map.of("a", 0.0, "b", 0.0));
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService threads = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < 2; w++) {
+                int writer = w;
+                writers.add(threads.submit(() -> {
+                    for (int i = 1; i <= 20_000; i++) {
+                        double value = writer * 1_000_000 + i;
+                        shared.update(Map.of("a", value, "b", -value));
+                    }
+                }));
+            }
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                readers.add(threads.submit(() -> {
+                    Parser parser = new Parser(new EvaluationContext(shared));
+                    int reads = 0;
+                    while (running.get()) {
+                        SharedVariables.Snapshot snapshot = shared.snapshot();
+                        assertEquals(0.0, snapshot.value(snapshot.slot("a")) + snapshot.value(snapshot.slot("b")));
+                        assertEquals(0.0, parser.parse("a + b").evaluate());
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            running.set(false);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get() > 0);
+            }
+            assertEquals(40_001, shared.snapshot().version());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+}